@@ -1,18 +1,32 @@
+import java.io.IOException; // Import IOException
 import java.util.Random; // Import Random
 import java.util.Scanner; // Import Scanner
 
 public class RockPaperScissors {
+    // Plays against a computer that learns the player's habits, or one that
+    // plays at random when started with the argument "random". With the
+    // argument "batch" it replays a file of moves instead (see RpsBatch).
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("batch")) {
+            try {
+                RpsBatch.main(args);
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("Cannot replay the moves: " + e.getMessage());
+            }
+            return;
+        }
 
         Scanner scanner = new Scanner(System.in);
 
-        while (true) {
-            // Define the list of moves as a string array
-            String[] rps = {"r", "p", "s"};
+        // Define the list of moves as a string array
+        String[] rps = {"r", "p", "s"};
+        IRpsOpponent opponent = args.length > 0 && args[0].equals("random")
+            ? new RpsRandomOpponent(new Random())
+            : new RpsContextTreeOpponent(System.nanoTime());
 
-            // Generate a random move
-            Random random = new Random();
-            String computerMove = rps[random.nextInt(rps.length)];
+        while (true) {
+            // Choose the computer's move before seeing the player's
+            String computerMove = rps[opponent.move()];
 
             String playerMove;
 
@@ -28,6 +42,7 @@ public class RockPaperScissors {
             }
 
             System.out.println("Computer played: " + computerMove);
+            opponent.observe("rps".indexOf(playerMove));
 
             // Determine the result
             if (playerMove.equals(computerMove)) {
@@ -1,89 +1,395 @@
-import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
 import tester.*;
 import javalib.impworld.*;
 import java.awt.Color;
 import javalib.worldimages.*;
 
-class Cell {
-  Color color;
-  Cell top, bottom, left, right; // Neighbors
-  boolean isEdge; // True if the cell is on the edge of the board
+// Precomputed bit masks shared by every BridgIt board of the same size
+class BridgItMasks {
+  final int n; // Size of the grid
+  final int cells; // n * n
+  final int words; // Number of longs needed to hold one bit per cell
+  final long[] full; // Every cell on the board
+  final long[] notFirstCol; // Every cell except the leftmost column
+  final long[] notLastCol; // Every cell except the rightmost column
+  final long[] firstCol, lastCol, firstRow, lastRow;
+  final long[] playable; // White cells that are not on the edges
+  final long[] pinkStart; // Pink cells of the starting pattern
+  final long[] magentaStart; // Magenta cells of the starting pattern
+
+  private static final ConcurrentHashMap<Integer, BridgItMasks> CACHE = new ConcurrentHashMap<>();
 
   // Constructor
-  Cell(Color color, boolean isEdge) {
-      this.color = color;
-      this.isEdge = isEdge;
-      this.top = null;
-      this.bottom = null;
-      this.left = null;
-      this.right = null;
+  private BridgItMasks(int n) {
+    this.n = n;
+    this.cells = n * n;
+    this.words = (this.cells + 63) >>> 6;
+    this.full = new long[this.words];
+    this.notFirstCol = new long[this.words];
+    this.notLastCol = new long[this.words];
+    this.firstCol = new long[this.words];
+    this.lastCol = new long[this.words];
+    this.firstRow = new long[this.words];
+    this.lastRow = new long[this.words];
+    this.playable = new long[this.words];
+    this.pinkStart = new long[this.words];
+    this.magentaStart = new long[this.words];
+
+    for (int row = 0; row < n; row++) {
+      for (int col = 0; col < n; col++) {
+        int cell = row * n + col;
+        boolean isEdge = (row == 0 || row == n - 1 || col == 0 || col == n - 1);
+
+        set(this.full, cell);
+        set(col == 0 ? this.firstCol : this.notFirstCol, cell);
+        set(col == n - 1 ? this.lastCol : this.notLastCol, cell);
+        if (row == 0) {
+          set(this.firstRow, cell);
+        }
+        if (row == n - 1) {
+          set(this.lastRow, cell);
+        }
+
+        // Pattern logic: even rows are (White, Magenta), odd rows are (Pink, White)
+        if (row % 2 == 0 && col % 2 == 1) {
+          set(this.magentaStart, cell);
+        } else if (row % 2 == 1 && col % 2 == 0) {
+          set(this.pinkStart, cell);
+        } else if (!isEdge) {
+          set(this.playable, cell);
+        }
+      }
+    }
+  }
+
+  // Returns the shared masks for boards of size n
+  static BridgItMasks of(int n) {
+    return CACHE.computeIfAbsent(n, BridgItMasks::new);
+  }
+
+  // EFFECT: sets the bit for the given cell
+  static void set(long[] bits, int cell) {
+    bits[cell >>> 6] |= 1L << cell;
+  }
+
+  // Is the bit for the given cell set?
+  static boolean get(long[] bits, int cell) {
+    return (bits[cell >>> 6] & (1L << cell)) != 0;
+  }
+
+  // Word i of the bit set shifted k cells toward higher indices
+  static long shiftUpWord(long[] bits, int i, int k) {
+    int j = i - (k >>> 6);
+    int b = k & 63;
+    if (j < 0) {
+      return 0L;
+    }
+    long word = bits[j] << b;
+    if (b != 0 && j > 0) {
+      word |= bits[j - 1] >>> (64 - b);
+    }
+    return word;
+  }
+
+  // Word i of the bit set shifted k cells toward lower indices
+  static long shiftDownWord(long[] bits, int i, int k) {
+    int j = i + (k >>> 6);
+    int b = k & 63;
+    if (j >= bits.length) {
+      return 0L;
+    }
+    long word = bits[j] >>> b;
+    if (b != 0 && j + 1 < bits.length) {
+      word |= bits[j + 1] << (64 - b);
+    }
+    return word;
+  }
+
+  // Word i of the set of cells orthogonally adjacent to the given cells
+  long neighborsWord(long[] bits, int i) {
+    long right = shiftUpWord(bits, i, 1) & this.notFirstCol[i];
+    long left = shiftDownWord(bits, i, 1) & this.notLastCol[i];
+    long below = shiftUpWord(bits, i, this.n);
+    long above = shiftDownWord(bits, i, this.n);
+    return (right | left | below | above) & this.full[i];
+  }
+}
+
+// Represents a BridgIt board as one bitboard per player, indexed by row * n + col
+class BridgItBoard implements IShannonOwners {
+  static final int EMPTY = 0;
+  static final int PINK = 1; // Player 1
+  static final int MAGENTA = 2; // Player 2
+
+  final BridgItMasks masks;
+  final int n; // Size of the grid
+  final long[] pink; // Cells owned by Player 1
+  final long[] magenta; // Cells owned by Player 2
+
+  // Constructor for the starting pattern of an n x n board
+  BridgItBoard(int n) {
+    this.masks = BridgItMasks.of(n);
+    this.n = n;
+    this.pink = this.masks.pinkStart.clone();
+    this.magenta = this.masks.magentaStart.clone();
+  }
+
+  // Constructor used by copy
+  private BridgItBoard(BridgItMasks masks, long[] pink, long[] magenta) {
+    this.masks = masks;
+    this.n = masks.n;
+    this.pink = pink;
+    this.magenta = magenta;
+  }
+
+  // Returns an independent copy of this board
+  BridgItBoard copy() {
+    return new BridgItBoard(this.masks, this.pink.clone(), this.magenta.clone());
+  }
+
+  // EFFECT: overwrites this board with the given board of the same size
+  void copyFrom(BridgItBoard other) {
+    System.arraycopy(other.pink, 0, this.pink, 0, this.pink.length);
+    System.arraycopy(other.magenta, 0, this.magenta, 0, this.magenta.length);
+  }
+
+  // The cell index of the given row and column
+  int index(int row, int col) {
+    return row * this.n + col;
+  }
+
+  // The player who owns the given cell, or EMPTY
+  public int owner(int cell) {
+    if (BridgItMasks.get(this.pink, cell)) {
+      return PINK;
+    }
+    if (BridgItMasks.get(this.magenta, cell)) {
+      return MAGENTA;
+    }
+    return EMPTY;
+  }
+
+  // Is the given cell on the edge of the board?
+  boolean isEdge(int row, int col) {
+    return row == 0 || row == this.n - 1 || col == 0 || col == this.n - 1;
+  }
+
+  // Can the given cell still be claimed? (white and not on the edges)
+  boolean isPlayable(int cell) {
+    int w = cell >>> 6;
+    long bit = 1L << cell;
+    return (this.masks.playable[w] & ~(this.pink[w] | this.magenta[w]) & bit) != 0;
+  }
+
+  // EFFECT: gives the cell to the given player (or clears it for EMPTY)
+  void setOwner(int cell, int player) {
+    int w = cell >>> 6;
+    long bit = 1L << cell;
+    this.pink[w] &= ~bit;
+    this.magenta[w] &= ~bit;
+    if (player == PINK) {
+      this.pink[w] |= bit;
+    } else if (player == MAGENTA) {
+      this.magenta[w] |= bit;
+    }
+  }
+
+  // The bitboard of the given player
+  long[] bitsOf(int player) {
+    return player == PINK ? this.pink : this.magenta;
+  }
+
+  // The number of cells that can still be claimed
+  int emptyCount() {
+    int count = 0;
+    for (int i = 0; i < this.pink.length; i++) {
+      count += Long.bitCount(this.masks.playable[i] & ~(this.pink[i] | this.magenta[i]));
+    }
+    return count;
+  }
+
+  // EFFECT: writes the cells that can still be claimed into moves, in index order
+  // Returns the number of cells written
+  int legalMoves(int[] moves) {
+    int count = 0;
+    for (int i = 0; i < this.pink.length; i++) {
+      long free = this.masks.playable[i] & ~(this.pink[i] | this.magenta[i]);
+      while (free != 0) {
+        moves[count] = (i << 6) + Long.numberOfTrailingZeros(free);
+        count++;
+        free &= free - 1;
+      }
+    }
+    return count;
+  }
+
+  // Does the given player connect their two edges?
+  // Player 1 (Pink) connects left to right, Player 2 (Magenta) connects top to bottom
+  boolean hasConnection(int player) {
+    long[] own = this.bitsOf(player);
+    long[] start = player == PINK ? this.masks.firstCol : this.masks.firstRow;
+    long[] goal = player == PINK ? this.masks.lastCol : this.masks.lastRow;
+    long[] reach = new long[own.length];
+
+    for (int i = 0; i < own.length; i++) {
+      reach[i] = own[i] & start[i];
+    }
+
+    // Flood fill through the player's cells until it stops growing
+    boolean grew = true;
+    while (grew) {
+      grew = false;
+      for (int i = 0; i < own.length; i++) {
+        long next = (reach[i] | this.masks.neighborsWord(reach, i)) & own[i];
+        if (next != reach[i]) {
+          reach[i] = next;
+          grew = true;
+        }
+        if ((next & goal[i]) != 0) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  // The player who has connected their edges, or EMPTY if nobody has yet
+  int winner() {
+    if (this.hasConnection(PINK)) {
+      return PINK;
+    }
+    if (this.hasConnection(MAGENTA)) {
+      return MAGENTA;
+    }
+    return EMPTY;
+  }
+
+  // The opponent of the given player
+  static int other(int player) {
+    return PINK + MAGENTA - player;
+  }
+
+  // The color used to draw the given player's cells
+  static Color colorOf(int player) {
+    if (player == PINK) {
+      return Color.PINK;
+    } else if (player == MAGENTA) {
+      return Color.MAGENTA; // Purple
+    } else {
+      return Color.WHITE;
+    }
   }
 
-  // Draw the cell
-  WorldImage drawCell(int cellSize) {
-      return new RectangleImage(cellSize, cellSize, OutlineMode.SOLID, this.color);
+  // The color of the cell at the given row and column
+  Color colorAt(int row, int col) {
+    return colorOf(this.owner(this.index(row, col)));
   }
 }
 
 
+// Tracks which cells of a BridgIt board are joined, for win detection that can
+// be undone: ShannonConnectivity on the BridgIt grid graph
+class BridgItConnectivity extends ShannonConnectivity {
+  // Constructor for the connections already on the given board
+  BridgItConnectivity(BridgItBoard board) {
+    super(ShannonGraph.bridgIt(board.n), board);
+  }
+}
+
+// A strategy for choosing BridgIt moves
+interface IBridgItPolicy {
+  // Chooses a cell for the given player to claim on the given board
+  int chooseMove(BridgItBoard board, int player);
+}
+
 class BridgItGame extends World {
-  ArrayList<ArrayList<Cell>> board; // 2D grid of cells
+  BridgItBoard board; // Bitboards of the n x n grid
   int n; // Size of the grid
   int cellSize; // Size of each cell in pixels
   boolean isPlayerOneTurn; // true if Player 1 (Pink) is playing, false if Player 2 (Magenta)
   boolean gameOver; // true if the game is over
-
-  // Modify the constructor
+  int winner; // The player who won, or EMPTY while the game is on
+  IBridgItPolicy computer; // The computer opponent, or null for two human players
+  int computerPlayer; // The player the computer plays as
+  WorldImage[] sprites; // One shared cell image per owner (EMPTY, PINK, MAGENTA)
+  WorldScene scene; // The scene drawn last frame, or null if it must be rebuilt
+  long[] drawnPink, drawnMagenta; // The bitboards as of the last frame
+  int overdrawn; // Cells drawn on top of the scene since it was last rebuilt
+  BridgItConnectivity connectivity; // Incremental win detection
+  int[] moves; // Cells claimed so far, in order, followed by any undone moves
+  int moveCount; // Number of moves on the board
+  int redoCount; // Number of moves in the log, including undone ones that can be redone
+  BridgItHSearch hsearch; // Virtual connections, or null unless trackConnections was called
+  BridgItBroadcaster broadcaster; // Spectator stream, or null unless startBroadcast was called
+  ShannonMinCut[] minCuts; // Each player's minimum cut, or null unless the overlay is on
+  WorldImage[] blockSprites; // Empty cell marked for the given player to block
+  long[] drawnCritical; // The marked cells as of the last frame
+  int drawnTurn; // The player to move as of the last frame
+
+  // Constructor for two human players
   BridgItGame(int n) {
+      this(n, null, BridgItBoard.MAGENTA);
+  }
+
+  // Constructor for playing against the computer as the given player
+  BridgItGame(int n, IBridgItPolicy computer, int computerPlayer) {
       if (n < 3 || n % 2 == 0) {
           throw new IllegalArgumentException("Board size must be an odd number >= 3.");
       }
+      if (computerPlayer != BridgItBoard.PINK && computerPlayer != BridgItBoard.MAGENTA) {
+          throw new IllegalArgumentException("The computer must play Pink or Magenta.");
+      }
 
       this.n = n;
       this.cellSize = 40;
-      this.board = new ArrayList<>();
       this.isPlayerOneTurn = true; // Player 1 starts
       this.gameOver = false; // Game starts as not over
+      this.winner = BridgItBoard.EMPTY;
+      this.computer = computer;
+      this.computerPlayer = computerPlayer;
 
       this.initializeBoard();
-      this.linkCells();
+      this.computerMove(); // The computer opens if it plays Pink
   }
 
 
 
+    // EFFECT: resets the board to the starting pattern of White, Pink and Magenta cells
     void initializeBoard() {
-      for (int row = 0; row < n; row++) {
-          ArrayList<Cell> rowList = new ArrayList<>();
-
-          for (int col = 0; col < n; col++) {
-              boolean isEdge = (row == 0 || row == n - 1 || col == 0 || col == n - 1);
-              Color cellColor;
-
-              // Pattern logic
-              if (row % 2 == 0) { // Even rows (White, Purple)
-                  if (col % 2 == 0) {
-                      cellColor = Color.WHITE;
-                  } else {
-                      cellColor = Color.MAGENTA; // Purple
-                  }
-              } else { // Odd rows (Pink, White)
-                  if (col % 2 == 0) {
-                      cellColor = Color.PINK;
-                  } else {
-                      cellColor = Color.WHITE;
-                  }
-              }
-
-              rowList.add(new Cell(cellColor, isEdge));
-          }
-          this.board.add(rowList);
+      this.board = new BridgItBoard(n);
+      this.connectivity = new BridgItConnectivity(board);
+      this.moves = new int[board.emptyCount()];
+      this.moveCount = 0;
+      this.redoCount = 0;
+      if (this.hsearch != null) {
+          this.hsearch = new BridgItHSearch(board);
+      }
+      if (this.minCuts != null) {
+          this.minCuts = null;
+          this.showCriticalCells();
       }
+      this.scene = null; // Redraw everything on the next frame
+      this.drawnPink = new long[board.masks.words];
+      this.drawnMagenta = new long[board.masks.words];
+      this.drawnCritical = new long[board.masks.words];
+      this.sprites = new WorldImage[] {
+          new RectangleImage(cellSize, cellSize, OutlineMode.SOLID, BridgItBoard.colorOf(BridgItBoard.EMPTY)),
+          new RectangleImage(cellSize, cellSize, OutlineMode.SOLID, BridgItBoard.colorOf(BridgItBoard.PINK)),
+          new RectangleImage(cellSize, cellSize, OutlineMode.SOLID, BridgItBoard.colorOf(BridgItBoard.MAGENTA))
+      };
+      this.blockSprites = new WorldImage[] {
+          null,
+          new OverlayImage(new CircleImage(cellSize / 6, OutlineMode.SOLID, BridgItBoard.colorOf(BridgItBoard.PINK)),
+              sprites[BridgItBoard.EMPTY]),
+          new OverlayImage(new CircleImage(cellSize / 6, OutlineMode.SOLID, BridgItBoard.colorOf(BridgItBoard.MAGENTA)),
+              sprites[BridgItBoard.EMPTY])
+      };
   }
     
     @Override
     public void onMouseClicked(Posn pos) {
-        if (gameOver) {
-            return; // Ignore clicks if the game is over
+        if (gameOver || isComputerTurn()) {
+            return; // Ignore clicks if the game is over or the computer is thinking
         }
 
         // Calculate the row and column of the clicked cell
@@ -92,132 +398,278 @@ class BridgItGame extends World {
 
         // Ensure the click is within bounds
         if (row >= 0 && row < n && col >= 0 && col < n) {
-            Cell clickedCell = board.get(row).get(col);
+            int cell = board.index(row, col);
 
             // Only allow changes to white cells that are not on the edges
-            if (!clickedCell.isEdge && clickedCell.color.equals(Color.WHITE)) {
-                // Update the cell's color based on the current player
-                if (isPlayerOneTurn) {
-                    clickedCell.color = Color.PINK;
-                } else {
-                    clickedCell.color = Color.MAGENTA;
-                }
-
-                // Alternate the turn
-                isPlayerOneTurn = !isPlayerOneTurn;
+            if (board.isPlayable(cell)) {
+                playMove(cell);
 
-                // Check if the game is over
-                if (checkWin()) {
-                    gameOver = true; // Stop the game
-                }
+                // Let the computer answer
+                computerMove();
             }
         }
     }
 
+    // The player whose turn it is
+    int currentPlayer() {
+        return isPlayerOneTurn ? BridgItBoard.PINK : BridgItBoard.MAGENTA;
+    }
 
-    boolean hasPath(Cell cell, Color color, ArrayList<Cell> visited) {
-      // Base case: If the cell is null or already visited, return false
-      if (cell == null || visited.contains(cell)) {
-          return false;
-      }
+    // Is the computer the player to move?
+    boolean isComputerTurn() {
+        return computer != null && currentPlayer() == computerPlayer;
+    }
 
-      // Add the current cell to the visited list
-      visited.add(cell);
+    // EFFECT: claims the given playable cell for the current player and passes the turn
+    // Playing a new move forgets any undone moves
+    void playMove(int cell) {
+        redoCount = moveCount;
+        makeMove(cell);
+    }
 
-      // Check if the path is complete:
-      // - For Player 1 (Pink): Path reaches the right edge
-      if (color.equals(Color.PINK) && cell.right == null) {
-          return true; // Reached the right edge
-      }
+    // EFFECT: claims the cell for the current player, logs it and passes the turn
+    void makeMove(int cell) {
+        // Update the cell's owner based on the current player
+        board.setOwner(cell, currentPlayer());
+        connectivity.claim(board, cell);
+        if (hsearch != null) {
+            hsearch.claim(cell, currentPlayer());
+        }
+        if (broadcaster != null) {
+            broadcaster.moved(cell, currentPlayer());
+        }
+        if (minCuts != null) {
+            minCuts[BridgItBoard.PINK].claim(cell, currentPlayer());
+            minCuts[BridgItBoard.MAGENTA].claim(cell, currentPlayer());
+        }
+        moves[moveCount] = cell;
+        moveCount++;
+        if (redoCount < moveCount) {
+            redoCount = moveCount;
+        }
 
-      // - For Player 2 (Magenta): Path reaches the bottom edge
-      if (color.equals(Color.MAGENTA) && cell.bottom == null) {
-          return true; // Reached the bottom edge
-      }
+        // Alternate the turn
+        isPlayerOneTurn = !isPlayerOneTurn;
 
-      // Recursively check all neighbors of the same color
-      return (cell.top != null && cell.top.color.equals(color) && hasPath(cell.top, color, visited)) ||
-             (cell.bottom != null && cell.bottom.color.equals(color) && hasPath(cell.bottom, color, visited)) ||
-             (cell.left != null && cell.left.color.equals(color) && hasPath(cell.left, color, visited)) ||
-             (cell.right != null && cell.right.color.equals(color) && hasPath(cell.right, color, visited));
-  }
+        // Check if the game is over
+        winner = connectivity.winner();
+        if (winner != BridgItBoard.EMPTY) {
+            gameOver = true; // Stop the game
+            this.endOfWorld(winnerMessage());
+        }
+    }
+
+    // EFFECT: takes back the last move, keeping it for redo
+    // Returns false if there is no move to take back
+    boolean undo() {
+        if (moveCount == 0) {
+            return false;
+        }
+        moveCount--;
+        board.setOwner(moves[moveCount], BridgItBoard.EMPTY);
+        connectivity.undo();
+        if (hsearch != null) {
+            hsearch = new BridgItHSearch(board); // Connections only grow forward, so start over
+        }
+        if (broadcaster != null) {
+            broadcaster.undone();
+        }
+        if (minCuts != null) {
+            minCuts = null; // Flows are only kept forward, so start over
+            showCriticalCells();
+        }
+        isPlayerOneTurn = !isPlayerOneTurn;
+        gameOver = false;
+        winner = BridgItBoard.EMPTY;
+        return true;
+    }
+
+    // EFFECT: starts keeping the virtual connections of both players up to date
+    void trackConnections() {
+        if (hsearch == null) {
+            hsearch = new BridgItHSearch(board);
+        }
+    }
+
+    // EFFECT: starts streaming this game's moves to spectators on the given
+    // localhost port (0 for any free port), and returns the stream
+    BridgItBroadcaster startBroadcast(int port) {
+        if (broadcaster == null) {
+            broadcaster = new BridgItBroadcaster(n, moves, moveCount, port, 1024);
+        }
+        return broadcaster;
+    }
+
+    // EFFECT: starts marking the cells the player to move must block
+    void showCriticalCells() {
+        if (minCuts == null) {
+            ShannonGraph graph = ShannonGraph.bridgIt(n);
+            minCuts = new ShannonMinCut[] {
+                null,
+                new ShannonMinCut(graph, board, BridgItBoard.PINK),
+                new ShannonMinCut(graph, board, BridgItBoard.MAGENTA)
+            };
+        }
+    }
+
+    // The opponent's minimum cut: the fewest cells the player to move must claim
+    // to cut the opponent off. null while the overlay is off or the game is over.
+    long[] criticalCells() {
+        if (minCuts == null || gameOver) {
+            return null;
+        }
+        return minCuts[BridgItBoard.other(currentPlayer())].cut;
+    }
 
+    // The cells the player to move must claim to stop the opponent's connections
+    long[] mustPlay() {
+        trackConnections();
+        return hsearch.mustPlay(currentPlayer());
+    }
+
+    // EFFECT: plays the last undone move again
+    // Returns false if there is no move to redo
+    boolean redo() {
+        if (moveCount == redoCount) {
+            return false;
+        }
+        makeMove(moves[moveCount]);
+        return true;
+    }
+
+    // EFFECT: "u" takes back a move and "y" redoes one. Against the computer
+    // both step a full round, so it is the human's turn again afterwards; when
+    // the computer opened as Pink, its opening move is never taken back.
+    // "c" turns the critical cell overlay on and off.
+    public void onKeyEvent(String key) {
+        if (key.equals("u")) {
+            boolean computerOpened = computer != null && computerPlayer == BridgItBoard.PINK;
+            if (computerOpened && moveCount <= 1) {
+                return;
+            }
+            if (undo() && isComputerTurn()) {
+                undo();
+            }
+        } else if (key.equals("y")) {
+            if (redo() && isComputerTurn()) {
+                redo();
+            }
+        } else if (key.equals("c")) {
+            if (minCuts == null) {
+                showCriticalCells();
+            } else {
+                minCuts = null;
+            }
+        }
+    }
+
+    // EFFECT: plays the computer's move if it is the computer's turn
+    void computerMove() {
+        if (!gameOver && isComputerTurn() && board.emptyCount() > 0) {
+            playMove(computer.chooseMove(board.copy(), computerPlayer));
+        }
+    }
 
 
+
+    // EFFECT: records the winner, if any player has connected their edges
+    // Rescans the whole board, so it also sees cells changed outside playMove
     boolean checkWin() {
       // Check for Player 1 (Pink): Left to Right
-      for (int row = 0; row < n; row++) {
-          if (board.get(row).get(0).color.equals(Color.PINK)) { // Start on the left edge
-              if (hasPath(board.get(row).get(0), Color.PINK, new ArrayList<>())) {
-                  System.out.println("Player 1 (Pink) wins!");
-                  return true;
-              }
-          }
+      if (board.hasConnection(BridgItBoard.PINK)) {
+          winner = BridgItBoard.PINK;
+          return true;
       }
 
       // Check for Player 2 (Magenta): Top to Bottom
-      for (int col = 0; col < n; col++) {
-          if (board.get(0).get(col).color.equals(Color.MAGENTA)) { // Start on the top edge
-              if (hasPath(board.get(0).get(col), Color.MAGENTA, new ArrayList<>())) {
-                  System.out.println("Player 2 (Magenta) wins!");
-                  return true;
-              }
-          }
+      if (board.hasConnection(BridgItBoard.MAGENTA)) {
+          winner = BridgItBoard.MAGENTA;
+          return true;
       }
 
       return false; // No winner yet
   }
 
+    // The message announcing the winner
+    String winnerMessage() {
+        if (winner == BridgItBoard.PINK) {
+            return "Player 1 (Pink) wins!";
+        } else {
+            return "Player 2 (Magenta) wins!";
+        }
+    }
 
-    void linkCells() {
-      for (int row = 0; row < n; row++) {
-          for (int col = 0; col < n; col++) {
-              Cell current = board.get(row).get(col);
-
-              // Assign neighbors using if statements
-              if (row > 0) {
-                  current.top = board.get(row - 1).get(col);
-              } else {
-                  current.top = null;
-              }
-
-              if (row < n - 1) {
-                  current.bottom = board.get(row + 1).get(col);
-              } else {
-                  current.bottom = null;
-              }
-
-              if (col > 0) {
-                  current.left = board.get(row).get(col - 1);
-              } else {
-                  current.left = null;
-              }
+    // Shows the final board with the winner's message
+    public WorldScene lastScene(String msg) {
+        WorldScene scene = this.makeScene();
+        this.scene = null; // The message goes on the cached scene, so rebuild it next frame
+        WorldImage winMessage = new OverlayImage(
+            new TextImage(msg, 24, Color.BLACK),
+            new RectangleImage(n * cellSize, 60, OutlineMode.SOLID, Color.WHITE)
+        );
+        scene.placeImageXY(winMessage, n * cellSize / 2, n * cellSize / 2);
+        return scene;
+    }
 
-              if (col < n - 1) {
-                  current.right = board.get(row).get(col + 1);
-              } else {
-                  current.right = null;
-              }
-          }
-      }
-  }
+    // Draw the cell at the given row and column
+    WorldImage drawCell(int row, int col) {
+        int cell = board.index(row, col);
+        long[] critical = criticalCells();
+        if (critical != null && BridgItMasks.get(critical, cell)) {
+            return blockSprites[currentPlayer()];
+        }
+        return sprites[board.owner(cell)];
+    }
 
     // Render the game board
+    // Only cells that changed since the last frame are drawn, on top of the cached scene.
+    // Once the overdrawn cells outnumber the board, the scene is rebuilt from scratch.
     public WorldScene makeScene() {
-        WorldScene scene = new WorldScene(n * cellSize, n * cellSize);
-
-        for (int row = 0; row < n; row++) {
-            for (int col = 0; col < n; col++) {
-                Cell cell = board.get(row).get(col);
-                WorldImage cellImage = cell.drawCell(cellSize);
-
-                // Place the cell at the correct position
-                scene.placeImageXY(cellImage, col * cellSize + cellSize / 2, row * cellSize + cellSize / 2);
+        long[] critical = criticalCells();
+        if (scene == null || overdrawn > board.masks.cells) {
+            scene = new WorldScene(n * cellSize, n * cellSize);
+            overdrawn = 0;
+
+            for (int row = 0; row < n; row++) {
+                for (int col = 0; col < n; col++) {
+                    placeCell(board.index(row, col));
+                }
+            }
+        } else {
+            for (int i = 0; i < drawnPink.length; i++) {
+                long dirty = (board.pink[i] ^ drawnPink[i]) | (board.magenta[i] ^ drawnMagenta[i])
+                    | ((critical == null ? 0L : critical[i]) ^ drawnCritical[i]);
+                if (drawnTurn != currentPlayer()) {
+                    dirty |= drawnCritical[i]; // Marks that stay change color
+                }
+                while (dirty != 0) {
+                    placeCell((i << 6) + Long.numberOfTrailingZeros(dirty));
+                    overdrawn++;
+                    dirty &= dirty - 1;
+                }
             }
         }
 
+        // Remember what is on screen for the next frame
+        System.arraycopy(board.pink, 0, drawnPink, 0, drawnPink.length);
+        System.arraycopy(board.magenta, 0, drawnMagenta, 0, drawnMagenta.length);
+        if (critical == null) {
+            java.util.Arrays.fill(drawnCritical, 0L);
+        } else {
+            System.arraycopy(critical, 0, drawnCritical, 0, drawnCritical.length);
+        }
+        drawnTurn = currentPlayer();
         return scene;
     }
+
+    // EFFECT: places the sprite of the given cell on the cached scene
+    void placeCell(int cell) {
+        int row = cell / n;
+        int col = cell % n;
+
+        // Place the cell at the correct position
+        scene.placeImageXY(drawCell(row, col), col * cellSize + cellSize / 2, row * cellSize + cellSize / 2);
+    }
 }
 
 // Example Tester
@@ -228,38 +680,37 @@ class ExamplesBridgIt {
     }
     void testCellConnections(Tester t) {
       BridgItGame game = new BridgItGame(11); // Create an 11x11 board
+      BridgItMasks masks = game.board.masks;
 
       // Loop through all cells to check their neighbors
       for (int row = 0; row < game.n; row++) {
           for (int col = 0; col < game.n; col++) {
-              Cell cell = game.board.get(row).get(col);
+              long[] single = new long[masks.words];
+              BridgItMasks.set(single, game.board.index(row, col));
+              long[] expected = new long[masks.words];
 
-              // Check the top neighbor
+              // The top neighbor, unless in the top row
               if (row > 0) {
-                  t.checkExpect(cell.top, game.board.get(row - 1).get(col));
-              } else {
-                  t.checkExpect(cell.top, null); // Top row should have no top neighbor
+                  BridgItMasks.set(expected, game.board.index(row - 1, col));
               }
 
-              // Check the bottom neighbor
+              // The bottom neighbor, unless in the bottom row
               if (row < game.n - 1) {
-                  t.checkExpect(cell.bottom, game.board.get(row + 1).get(col));
-              } else {
-                  t.checkExpect(cell.bottom, null); // Bottom row should have no bottom neighbor
+                  BridgItMasks.set(expected, game.board.index(row + 1, col));
               }
 
-              // Check the left neighbor
+              // The left neighbor, unless in the leftmost column
               if (col > 0) {
-                  t.checkExpect(cell.left, game.board.get(row).get(col - 1));
-              } else {
-                  t.checkExpect(cell.left, null); // Leftmost column should have no left neighbor
+                  BridgItMasks.set(expected, game.board.index(row, col - 1));
               }
 
-              // Check the right neighbor
+              // The right neighbor, unless in the rightmost column
               if (col < game.n - 1) {
-                  t.checkExpect(cell.right, game.board.get(row).get(col + 1));
-              } else {
-                  t.checkExpect(cell.right, null); // Rightmost column should have no right neighbor
+                  BridgItMasks.set(expected, game.board.index(row, col + 1));
+              }
+
+              for (int i = 0; i < masks.words; i++) {
+                  t.checkExpect(masks.neighborsWord(single, i), expected[i]);
               }
           }
       }
@@ -274,8 +725,8 @@ class ExamplesBridgIt {
       // Add expected images to the scene
       for (int row = 0; row < game.n; row++) {
           for (int col = 0; col < game.n; col++) {
-              Cell cell = game.board.get(row).get(col);
-              WorldImage cellImage = cell.drawCell(game.cellSize);
+              WorldImage cellImage = new RectangleImage(game.cellSize, game.cellSize, OutlineMode.SOLID,
+                  game.board.colorAt(row, col));
 
               // Place the cell in the expected position
               expectedScene.placeImageXY(cellImage, col * game.cellSize + game.cellSize / 2, row * game.cellSize + game.cellSize / 2);
@@ -284,37 +735,79 @@ class ExamplesBridgIt {
 
       // Check if the rendered scene matches the expected scene
       t.checkExpect(game.makeScene(), expectedScene);
+  }
+    void testMakeSceneRedrawsChangedCells(Tester t) {
+      BridgItGame game = new BridgItGame(5);
+      WorldScene first = game.makeScene();
+
+      // Nothing changed, so the cached scene is reused as is
+      WorldScene expectedScene = new WorldScene(200, 200);
+      for (int row = 0; row < 5; row++) {
+          for (int col = 0; col < 5; col++) {
+              expectedScene.placeImageXY(game.drawCell(row, col), col * 40 + 20, row * 40 + 20);
+          }
+      }
+      t.checkExpect(game.makeScene() == first, true);
+      t.checkExpect(game.makeScene(), expectedScene);
+
+      // A click only draws the claimed cell on top of the cached scene
+      game.onMouseClicked(new Posn(60, 60));
+      expectedScene.placeImageXY(game.sprites[BridgItBoard.PINK], 60, 60);
+      t.checkExpect(game.makeScene(), expectedScene);
+      t.checkExpect(game.overdrawn, 1);
+
+      // Every cell of the same color shares one image
+      t.checkExpect(game.drawCell(1, 1) == game.drawCell(1, 0), true);
+      t.checkExpect(game.drawCell(0, 0) == game.drawCell(2, 2), true);
+  }
+    void testMakeSceneRebuilds(Tester t) {
+      BridgItGame game = new BridgItGame(3);
+      game.makeScene();
+
+      // Flipping the center back and forth overdraws it until the scene is rebuilt
+      for (int i = 0; i < 10; i++) {
+          game.board.setOwner(game.board.index(1, 1), i % 2 == 0 ? BridgItBoard.PINK : BridgItBoard.EMPTY);
+          game.makeScene();
+      }
+      t.checkExpect(game.overdrawn, 10);
+
+      // The next frame rebuilds the scene as a fresh drawing of the board
+      WorldScene expectedScene = new WorldScene(120, 120);
+      for (int row = 0; row < 3; row++) {
+          for (int col = 0; col < 3; col++) {
+              expectedScene.placeImageXY(game.drawCell(row, col), col * 40 + 20, row * 40 + 20);
+          }
+      }
+      t.checkExpect(game.makeScene(), expectedScene);
+      t.checkExpect(game.overdrawn, 0);
   }
     void testInitializeBoard(Tester t) {
       BridgItGame game = new BridgItGame(5); // Create a 5x5 board for testing
 
       // Check the general properties of the board
-      t.checkExpect(game.board.size(), 5); // The board should have 5 rows
-      for (ArrayList<Cell> row : game.board) {
-          t.checkExpect(row.size(), 5); // Each row should have 5 cells
-      }
+      t.checkExpect(game.board.n, 5); // The board should be 5x5
+      t.checkExpect(game.board.masks.words, 1); // 25 cells fit in one long
 
       // Verify colors and edge statuses
       for (int row = 0; row < 5; row++) {
           for (int col = 0; col < 5; col++) {
-              Cell cell = game.board.get(row).get(col);
               boolean isEdge = (row == 0 || row == 4 || col == 0 || col == 4);
 
               // Check the edge status
-              t.checkExpect(cell.isEdge, isEdge);
+              t.checkExpect(game.board.isEdge(row, col), isEdge);
 
               // Check the color logic
               if (row % 2 == 0) { // Even rows (White, Purple)
                   if (col % 2 == 0) {
-                      t.checkExpect(cell.color, Color.WHITE); // White cell
+                      t.checkExpect(game.board.colorAt(row, col), Color.WHITE); // White cell
                   } else {
-                      t.checkExpect(cell.color, Color.MAGENTA); // Purple cell
+                      t.checkExpect(game.board.colorAt(row, col), Color.MAGENTA); // Purple cell
                   }
               } else { // Odd rows (Pink, White)
                   if (col % 2 == 0) {
-                      t.checkExpect(cell.color, Color.PINK); // Pink cell
+                      t.checkExpect(game.board.colorAt(row, col), Color.PINK); // Pink cell
                   } else {
-                      t.checkExpect(cell.color, Color.WHITE); // White cell
+                      t.checkExpect(game.board.colorAt(row, col), Color.WHITE); // White cell
                   }
               }
           }
@@ -324,63 +817,61 @@ class ExamplesBridgIt {
       BridgItGame game = new BridgItGame(5); // Create a 5x5 board
 
       // Top-left corner
-      Cell topLeft = game.board.get(0).get(0);
-      t.checkExpect(topLeft.isEdge, true);
-      t.checkExpect(topLeft.color, Color.WHITE);
+      t.checkExpect(game.board.isEdge(0, 0), true);
+      t.checkExpect(game.board.colorAt(0, 0), Color.WHITE);
 
       // Top-right corner
-      Cell topRight = game.board.get(0).get(4);
-      t.checkExpect(topRight.isEdge, true);
-      t.checkExpect(topRight.color, Color.WHITE);
+      t.checkExpect(game.board.isEdge(0, 4), true);
+      t.checkExpect(game.board.colorAt(0, 4), Color.WHITE);
 
       // Bottom-left corner
-      Cell bottomLeft = game.board.get(4).get(0);
-      t.checkExpect(bottomLeft.isEdge, true);
-      t.checkExpect(bottomLeft.color, Color.WHITE);
+      t.checkExpect(game.board.isEdge(4, 0), true);
+      t.checkExpect(game.board.colorAt(4, 0), Color.WHITE);
 
       // Bottom-right corner
-      Cell bottomRight = game.board.get(4).get(4);
-      t.checkExpect(bottomRight.isEdge, true);
-      t.checkExpect(bottomRight.color, Color.WHITE);
+      t.checkExpect(game.board.isEdge(4, 4), true);
+      t.checkExpect(game.board.colorAt(4, 4), Color.WHITE);
+
+      // Corners are white but can never be claimed
+      t.checkExpect(game.board.isPlayable(game.board.index(0, 0)), false);
+      t.checkExpect(game.board.isPlayable(game.board.index(4, 4)), false);
   }
     void testSpecificRows(Tester t) {
       BridgItGame game = new BridgItGame(5); // Create a 5x5 board
 
       // Test an even row (Row 0)
-      ArrayList<Cell> row0 = game.board.get(0);
-      t.checkExpect(row0.get(0).color, Color.WHITE);
-      t.checkExpect(row0.get(1).color, Color.MAGENTA);
-      t.checkExpect(row0.get(2).color, Color.WHITE);
-      t.checkExpect(row0.get(3).color, Color.MAGENTA);
-      t.checkExpect(row0.get(4).color, Color.WHITE);
+      t.checkExpect(game.board.colorAt(0, 0), Color.WHITE);
+      t.checkExpect(game.board.colorAt(0, 1), Color.MAGENTA);
+      t.checkExpect(game.board.colorAt(0, 2), Color.WHITE);
+      t.checkExpect(game.board.colorAt(0, 3), Color.MAGENTA);
+      t.checkExpect(game.board.colorAt(0, 4), Color.WHITE);
 
       // Test an odd row (Row 1)
-      ArrayList<Cell> row1 = game.board.get(1);
-      t.checkExpect(row1.get(0).color, Color.PINK);
-      t.checkExpect(row1.get(1).color, Color.WHITE);
-      t.checkExpect(row1.get(2).color, Color.PINK);
-      t.checkExpect(row1.get(3).color, Color.WHITE);
-      t.checkExpect(row1.get(4).color, Color.PINK);
+      t.checkExpect(game.board.colorAt(1, 0), Color.PINK);
+      t.checkExpect(game.board.colorAt(1, 1), Color.WHITE);
+      t.checkExpect(game.board.colorAt(1, 2), Color.PINK);
+      t.checkExpect(game.board.colorAt(1, 3), Color.WHITE);
+      t.checkExpect(game.board.colorAt(1, 4), Color.PINK);
   }
     void testEdgeCells(Tester t) {
       BridgItGame game = new BridgItGame(5); // Create a 5x5 board
 
       // Check the top and bottom edges
       for (int col = 0; col < 5; col++) {
-          t.checkExpect(game.board.get(0).get(col).isEdge, true); // Top edge
-          t.checkExpect(game.board.get(4).get(col).isEdge, true); // Bottom edge
+          t.checkExpect(game.board.isEdge(0, col), true); // Top edge
+          t.checkExpect(game.board.isEdge(4, col), true); // Bottom edge
       }
 
       // Check the left and right edges
       for (int row = 0; row < 5; row++) {
-          t.checkExpect(game.board.get(row).get(0).isEdge, true); // Left edge
-          t.checkExpect(game.board.get(row).get(4).isEdge, true); // Right edge
+          t.checkExpect(game.board.isEdge(row, 0), true); // Left edge
+          t.checkExpect(game.board.isEdge(row, 4), true); // Right edge
       }
 
       // Check non-edge cells
       for (int row = 1; row < 4; row++) {
           for (int col = 1; col < 4; col++) {
-              t.checkExpect(game.board.get(row).get(col).isEdge, false); // Non-edge cells
+              t.checkExpect(game.board.isEdge(row, col), false); // Non-edge cells
           }
       }
   }
@@ -388,33 +879,207 @@ class ExamplesBridgIt {
       BridgItGame game = new BridgItGame(3);
 
       // Check rows and edge logic as before
-      t.checkExpect(game.board.size(), 3);
-      for (ArrayList<Cell> row : game.board) {
-          t.checkExpect(row.size(), 3);
+      t.checkExpect(game.board.n, 3);
+      t.checkExpect(game.board.emptyCount(), 1); // Only the center can be claimed
+      t.checkExpect(game.board.isPlayable(game.board.index(1, 1)), true);
+  }
+    void testLargeBoard(Tester t) {
+      // 65 x 65 cells span many longs, so shifts must carry across words
+      BridgItBoard board = new BridgItBoard(65);
+      t.checkExpect(board.masks.words, (65 * 65 + 63) / 64);
+      t.checkExpect(board.colorAt(64, 63), Color.MAGENTA);
+      t.checkExpect(board.colorAt(63, 64), Color.PINK);
+      t.checkExpect(board.hasConnection(BridgItBoard.PINK), false);
+
+      // Claim the white cells of row 33 to connect left and right
+      for (int col = 1; col < 64; col += 2) {
+          board.setOwner(board.index(33, col), BridgItBoard.PINK);
       }
+      t.checkExpect(board.hasConnection(BridgItBoard.PINK), true);
+      t.checkExpect(board.hasConnection(BridgItBoard.MAGENTA), false);
+  }
+    void testCopy(Tester t) {
+      BridgItBoard board = new BridgItBoard(5);
+      BridgItBoard copy = board.copy();
+      copy.setOwner(copy.index(1, 1), BridgItBoard.PINK);
+
+      // The copy does not share state with the original
+      t.checkExpect(board.owner(board.index(1, 1)), BridgItBoard.EMPTY);
+      t.checkExpect(copy.owner(copy.index(1, 1)), BridgItBoard.PINK);
+      t.checkExpect(copy.masks == board.masks, true);
+
+      board.copyFrom(copy);
+      t.checkExpect(board.owner(board.index(1, 1)), BridgItBoard.PINK);
+  }
+    void testLegalMoves(Tester t) {
+      BridgItBoard board = new BridgItBoard(5);
+      int[] moves = new int[25];
+
+      // Interior white cells: (1,1) (1,3) (2,2) (3,1) (3,3)
+      t.checkExpect(board.legalMoves(moves), 5);
+      t.checkExpect(moves[0], board.index(1, 1));
+      t.checkExpect(moves[2], board.index(2, 2));
+      t.checkExpect(moves[4], board.index(3, 3));
+
+      board.setOwner(board.index(2, 2), BridgItBoard.MAGENTA);
+      t.checkExpect(board.legalMoves(moves), 4);
+      t.checkExpect(board.emptyCount(), 4);
+      t.checkExpect(board.isPlayable(board.index(2, 2)), false);
+  }
+    void testOnMouseClicked(Tester t) {
+      BridgItGame game = new BridgItGame(5);
+
+      // Clicking an edge cell does nothing
+      game.onMouseClicked(new Posn(0, 0));
+      t.checkExpect(game.isPlayerOneTurn, true);
+
+      // Player 1 claims (1, 1), then Player 2 claims (2, 2)
+      game.onMouseClicked(new Posn(60, 60));
+      t.checkExpect(game.board.colorAt(1, 1), Color.PINK);
+      t.checkExpect(game.isPlayerOneTurn, false);
+      game.onMouseClicked(new Posn(100, 100));
+      t.checkExpect(game.board.colorAt(2, 2), Color.MAGENTA);
+
+      // A claimed cell cannot be claimed again
+      game.onMouseClicked(new Posn(60, 60));
+      t.checkExpect(game.board.colorAt(1, 1), Color.PINK);
+      t.checkExpect(game.isPlayerOneTurn, true);
   }
     void testHasPath(Tester t) {
       BridgItGame game = new BridgItGame(5);
 
       // Manually create a winning path for Player 1 (Pink)
-      game.board.get(0).get(0).color = Color.PINK;
-      game.board.get(0).get(1).color = Color.PINK;
-      game.board.get(0).get(2).color = Color.PINK;
-      game.board.get(0).get(3).color = Color.PINK;
-      game.board.get(0).get(4).color = Color.PINK;
+      for (int col = 0; col < 5; col++) {
+          game.board.setOwner(game.board.index(0, col), BridgItBoard.PINK);
+      }
 
       t.checkExpect(game.checkWin(), true); // Player 1 wins
+      t.checkExpect(game.board.winner(), BridgItBoard.PINK);
 
       // Reset the board and create a winning path for Player 2 (Magenta)
       game = new BridgItGame(5);
-      game.board.get(0).get(0).color = Color.MAGENTA;
-      game.board.get(1).get(0).color = Color.MAGENTA;
-      game.board.get(2).get(0).color = Color.MAGENTA;
-      game.board.get(3).get(0).color = Color.MAGENTA;
-      game.board.get(4).get(0).color = Color.MAGENTA;
+      for (int row = 0; row < 5; row++) {
+          game.board.setOwner(game.board.index(row, 0), BridgItBoard.MAGENTA);
+      }
 
       t.checkExpect(game.checkWin(), true); // Player 2 wins
+      t.checkExpect(game.board.winner(), BridgItBoard.MAGENTA);
+      t.checkExpect(game.winner, BridgItBoard.MAGENTA);
+      t.checkExpect(game.winnerMessage(), "Player 2 (Magenta) wins!");
+  }
+    void testUndoRedo(Tester t) {
+      BridgItGame game = new BridgItGame(7);
+      BridgItBoard start = game.board.copy();
+      BridgItConnectivity fresh = new BridgItConnectivity(start);
+      int[] cells = {game.board.index(1, 1), game.board.index(2, 2), game.board.index(3, 3),
+          game.board.index(4, 4), game.board.index(1, 3)};
+      for (int cell : cells) {
+          game.playMove(cell);
+      }
+      t.checkExpect(game.moveCount, 5);
+      t.checkExpect(game.isPlayerOneTurn, false);
+
+      // Undo everything: the board and the union-find are back where they started
+      while (game.undo()) {
+          t.checkExpect(game.connectivity.winner(), BridgItBoard.EMPTY);
+      }
+      t.checkExpect(game.moveCount, 0);
+      t.checkExpect(game.isPlayerOneTurn, true);
+      t.checkExpect(game.board.pink, start.pink);
+      t.checkExpect(game.board.magenta, start.magenta);
+      t.checkExpect(game.connectivity.parent, fresh.parent);
+      t.checkExpect(game.connectivity.rank, fresh.rank);
+
+      // Redo replays the same moves
+      t.checkExpect(game.redo(), true);
+      t.checkExpect(game.redo(), true);
+      t.checkExpect(game.board.colorAt(1, 1), Color.PINK);
+      t.checkExpect(game.board.colorAt(2, 2), Color.MAGENTA);
+
+      // A new move drops the rest of the redo log
+      game.playMove(game.board.index(5, 5));
+      t.checkExpect(game.redo(), false);
+      t.checkExpect(game.undo(), true);
+      t.checkExpect(game.redo(), true);
+      t.checkExpect(game.board.colorAt(5, 5), Color.PINK);
   }
+    void testUndoWin(Tester t) {
+      BridgItGame game = new BridgItGame(5);
+      game.playMove(game.board.index(1, 1));
+      game.playMove(game.board.index(3, 3));
+      game.playMove(game.board.index(1, 3)); // Pink connects row 1
+      t.checkExpect(game.gameOver, true);
+      t.checkExpect(game.winner, BridgItBoard.PINK);
+      t.checkExpect(game.checkWin(), true);
+
+      // Taking back the winning move reopens the game
+      game.onKeyEvent("u");
+      t.checkExpect(game.gameOver, false);
+      t.checkExpect(game.winner, BridgItBoard.EMPTY);
+      t.checkExpect(game.connectivity.winner(), BridgItBoard.EMPTY);
+      t.checkExpect(game.checkWin(), false);
+
+      game.onKeyEvent("y");
+      t.checkExpect(game.gameOver, true);
+  }
+    void testUndoKeepsComputerOpening(Tester t) {
+      BridgItGame game = new BridgItGame(7, new BridgItRandomPolicy(1L), BridgItBoard.PINK);
+      int opening = game.moves[0];
+      int[] legal = new int[49];
+      game.board.legalMoves(legal);
+      game.playMove(legal[0]);
+      game.computerMove();
+      t.checkExpect(game.moveCount, 3);
+
+      // The human's round goes back, the computer's opening stays
+      game.onKeyEvent("u");
+      game.onKeyEvent("u");
+      t.checkExpect(game.moveCount, 1);
+      t.checkExpect(game.board.owner(opening), BridgItBoard.PINK);
+      t.checkExpect(game.isComputerTurn(), false);
+
+      // So the human can move again, and the computer answers
+      game.onMouseClicked(new Posn(legal[0] % 7 * 40 + 20, legal[0] / 7 * 40 + 20));
+      t.checkExpect(game.moveCount, 3);
+  }
+    void testConnectivityMatchesFloodFill(Tester t) {
+      // Random games: the union-find agrees with a full rescan after every move and undo
+      java.util.Random rand = new java.util.Random(5);
+      for (int round = 0; round < 20; round++) {
+          BridgItGame game = new BridgItGame(9);
+          while (!game.gameOver) {
+              int[] legal = new int[81];
+              int count = game.board.legalMoves(legal);
+              game.playMove(legal[rand.nextInt(count)]);
+              t.checkExpect(game.connectivity.winner(), game.board.winner());
+          }
+          while (game.undo()) {
+              t.checkExpect(game.connectivity.winner(), game.board.winner());
+          }
+      }
+  }
+    void testLastScene(Tester t) {
+      BridgItGame game = new BridgItGame(3);
 
+      // Pink claims the center and wins right away
+      game.onMouseClicked(new Posn(60, 60));
+      t.checkExpect(game.gameOver, true);
+      t.checkExpect(game.winner, BridgItBoard.PINK);
 
-}
+      WorldScene winScene = new WorldScene(120, 120);
+      for (int row = 0; row < 3; row++) {
+          for (int col = 0; col < 3; col++) {
+              winScene.placeImageXY(game.drawCell(row, col), col * 40 + 20, row * 40 + 20);
+          }
+      }
+      WorldImage winMessage = new OverlayImage(
+          new TextImage("Player 1 (Pink) wins!", 24, Color.BLACK),
+          new RectangleImage(120, 60, OutlineMode.SOLID, Color.WHITE)
+      );
+      winScene.placeImageXY(winMessage, 60, 60);
+      t.checkExpect(game.lastScene(game.winnerMessage()), winScene);
+      t.checkExpect(game.scene, null);
+  }
+
+
+}
\ No newline at end of file
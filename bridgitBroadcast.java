@@ -0,0 +1,418 @@
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import tester.*;
+
+// One spectator connection and how far it has got through the stream
+class BridgItWatcher {
+  final SocketChannel channel;
+  long nextSeq; // The next delta to send, or -1 if it needs a snapshot first
+  ByteBuffer current; // A view of the frame being written, or null
+
+  // Constructor for a watcher that has seen nothing yet
+  BridgItWatcher(SocketChannel channel) {
+    this.channel = channel;
+    this.nextSeq = -1;
+    this.current = null;
+  }
+}
+
+// Streams the moves of a BridgIt game to spectators on localhost.
+//
+// Every frame is [length int][type byte][payload]. A watcher first gets a
+// SNAPSHOT of every move so far (n, then the count, then cell and player for
+// each move), then one MOVE (cell, player) or UNDO frame per change.
+//
+// The game thread encodes each change once into a read-only buffer in a ring of
+// recent frames and wakes the sender thread; it never touches a socket. The
+// sender writes the same bytes to every watcher through its own view of the
+// buffer, and only while the watcher's socket can take more. A watcher that
+// falls further behind than the ring gets a fresh snapshot in place of the
+// deltas it missed, so a slow spectator costs bounded memory and never holds
+// up the game or the other spectators.
+class BridgItBroadcaster implements AutoCloseable {
+  static final byte SNAPSHOT = 'S';
+  static final byte MOVE = 'M';
+  static final byte UNDO = 'U';
+
+  final int n; // Size of the grid
+  final ServerSocketChannel server;
+  final Selector selector;
+  final Thread sender;
+  final ByteBuffer[] ring; // Recent delta frames, frame seq at ring[seq % length]
+  long nextSeq; // Sequence number of the next delta frame
+  final int[] cells; // The moves so far, for snapshots
+  final byte[] players;
+  int moveCount;
+  ByteBuffer snapshot; // The snapshot for snapshotSeq, encoded once for every joiner
+  long snapshotSeq;
+  volatile boolean closed; // Tells the sender thread to hang up and stop
+
+  // Constructor for a game of size n with the given moves already played,
+  // listening on the given port (0 for any free port)
+  BridgItBroadcaster(int n, int[] moves, int moveCount, int port, int ringSize) {
+    this.n = n;
+    this.ring = new ByteBuffer[ringSize];
+    this.nextSeq = 0;
+    this.cells = new int[n * n];
+    this.players = new byte[n * n];
+    this.moveCount = 0;
+    for (int i = 0; i < moveCount; i++) {
+      this.record(moves[i], i % 2 == 0 ? BridgItBoard.PINK : BridgItBoard.MAGENTA);
+    }
+    this.snapshot = null;
+    this.snapshotSeq = -1;
+    this.closed = false;
+
+    try {
+      this.selector = Selector.open();
+      this.server = ServerSocketChannel.open();
+      this.server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+      this.server.configureBlocking(false);
+      this.server.register(this.selector, SelectionKey.OP_ACCEPT);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    this.sender = new Thread(this::serve, "bridgit-broadcast");
+    this.sender.setDaemon(true);
+    this.sender.start();
+  }
+
+  // The port spectators connect to
+  int port() {
+    return this.server.socket().getLocalPort();
+  }
+
+  // EFFECT: adds a move to the record kept for snapshots
+  void record(int cell, int player) {
+    this.cells[this.moveCount] = cell;
+    this.players[this.moveCount] = (byte) player;
+    this.moveCount++;
+  }
+
+  // EFFECT: streams a move claimed by player
+  void moved(int cell, int player) {
+    ByteBuffer frame = ByteBuffer.allocate(10);
+    frame.putInt(6).put(MOVE).putInt(cell).put((byte) player).flip();
+    synchronized (this) {
+      this.record(cell, player);
+      this.publish(frame);
+    }
+    this.selector.wakeup();
+  }
+
+  // EFFECT: streams that the last move was taken back
+  void undone() {
+    ByteBuffer frame = ByteBuffer.allocate(5);
+    frame.putInt(1).put(UNDO).flip();
+    synchronized (this) {
+      this.moveCount--;
+      this.publish(frame);
+    }
+    this.selector.wakeup();
+  }
+
+  // EFFECT: adds a frame to the ring. Callers hold the lock.
+  void publish(ByteBuffer frame) {
+    this.ring[(int) (this.nextSeq % this.ring.length)] = frame.asReadOnlyBuffer();
+    this.nextSeq++;
+  }
+
+  // A view of the snapshot of every move so far, encoded at most once per change.
+  // Callers hold the lock.
+  ByteBuffer snapshot() {
+    if (this.snapshotSeq != this.nextSeq) {
+      int length = 9 + 5 * this.moveCount;
+      ByteBuffer frame = ByteBuffer.allocate(4 + length);
+      frame.putInt(length).put(SNAPSHOT).putInt(this.n).putInt(this.moveCount);
+      for (int i = 0; i < this.moveCount; i++) {
+        frame.putInt(this.cells[i]).put(this.players[i]);
+      }
+      frame.flip();
+      this.snapshot = frame.asReadOnlyBuffer();
+      this.snapshotSeq = this.nextSeq;
+    }
+    return this.snapshot.duplicate();
+  }
+
+  // EFFECT: moves the watcher to the next frame it should get, or sets current
+  // to null if it has everything
+  synchronized void advance(BridgItWatcher watcher) {
+    long oldest = Math.max(0, this.nextSeq - this.ring.length);
+    if (watcher.nextSeq < oldest) {
+      watcher.current = this.snapshot();
+      watcher.nextSeq = this.nextSeq;
+    } else if (watcher.nextSeq < this.nextSeq) {
+      watcher.current = this.ring[(int) (watcher.nextSeq % this.ring.length)].duplicate();
+      watcher.nextSeq++;
+    } else {
+      watcher.current = null;
+    }
+  }
+
+  // EFFECT: writes to the watcher until it is up to date or its socket is full,
+  // and asks to hear when it can take more. Returns false if it hung up.
+  boolean pump(BridgItWatcher watcher, SelectionKey key) {
+    try {
+      while (true) {
+        if (watcher.current == null || !watcher.current.hasRemaining()) {
+          this.advance(watcher);
+          if (watcher.current == null) {
+            key.interestOps(SelectionKey.OP_READ);
+            return true;
+          }
+        }
+        watcher.channel.write(watcher.current);
+        if (watcher.current.hasRemaining()) {
+          key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+          return true;
+        }
+      }
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  // Sends frames to watchers until closed, then hangs up on all of them. Runs on
+  // the sender thread, the only one that touches the selector's keys.
+  void serve() {
+    ByteBuffer ignored = ByteBuffer.allocate(64);
+    try {
+      while (!this.closed) {
+        this.selector.select();
+        for (SelectionKey key : this.selector.selectedKeys()) {
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            SocketChannel channel = this.server.accept();
+            if (channel != null) {
+              channel.configureBlocking(false);
+              channel.socket().setTcpNoDelay(true);
+              channel.register(this.selector, SelectionKey.OP_READ, new BridgItWatcher(channel));
+            }
+          } else if (key.isReadable()) {
+            // Spectators have nothing to say; reading only notices when they leave
+            ignored.clear();
+            if (((SocketChannel) key.channel()).read(ignored) < 0) {
+              this.drop(key);
+            }
+          }
+        }
+        this.selector.selectedKeys().clear();
+
+        // Send whatever is new to everyone who can take it
+        for (SelectionKey key : this.selector.keys()) {
+          if (key.isValid() && key.attachment() instanceof BridgItWatcher
+              && !this.pump((BridgItWatcher) key.attachment(), key)) {
+            this.drop(key);
+          }
+        }
+      }
+    } catch (IOException | ClosedSelectorException e) {
+      // Nothing left to send
+    } finally {
+      this.hangUp();
+    }
+  }
+
+  // EFFECT: closes every watcher, the server and the selector. Runs on the
+  // sender thread.
+  void hangUp() {
+    for (SelectionKey key : this.selector.keys()) {
+      try {
+        key.channel().close();
+      } catch (IOException e) {
+        // Already gone
+      }
+    }
+    try {
+      this.server.close();
+      this.selector.close();
+    } catch (IOException e) {
+      // Closing anyway
+    }
+  }
+
+  // EFFECT: forgets a watcher that hung up
+  void drop(SelectionKey key) {
+    key.cancel();
+    try {
+      key.channel().close();
+    } catch (IOException e) {
+      // Already gone
+    }
+  }
+
+  // EFFECT: stops listening and hangs up on every watcher. The sender thread
+  // does the closing, since the selector's keys are not safe to share, and this
+  // waits for it to finish.
+  public void close() {
+    this.closed = true;
+    this.selector.wakeup();
+    try {
+      this.sender.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
+
+// A spectator that follows a broadcast on a board of its own
+class BridgItSpectator implements AutoCloseable {
+  final Socket socket;
+  final DataInputStream in;
+  BridgItBoard board; // null until the first snapshot arrives
+  int moveCount;
+  int[] log; // Cells claimed so far, in order
+
+  // Constructor connecting to a broadcast on this machine
+  BridgItSpectator(int port) throws IOException {
+    this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+    this.socket.setSoTimeout(5000);
+    this.in = new DataInputStream(this.socket.getInputStream());
+    this.board = null;
+    this.moveCount = 0;
+    this.log = new int[16];
+  }
+
+  // EFFECT: reads one frame and applies it to the board. Returns its type.
+  byte readFrame() throws IOException {
+    this.in.readInt(); // Frame length
+    byte type = this.in.readByte();
+    if (type == BridgItBroadcaster.SNAPSHOT) {
+      this.board = new BridgItBoard(this.in.readInt());
+      this.moveCount = 0;
+      for (int count = this.in.readInt(); count > 0; count--) {
+        this.apply(this.in.readInt(), this.in.readByte());
+      }
+    } else if (type == BridgItBroadcaster.MOVE) {
+      this.apply(this.in.readInt(), this.in.readByte());
+    } else if (type == BridgItBroadcaster.UNDO) {
+      this.moveCount--;
+      this.board.setOwner(this.log[this.moveCount], BridgItBoard.EMPTY);
+    } else {
+      throw new IOException("Unknown frame type " + type + ".");
+    }
+    return type;
+  }
+
+  // EFFECT: claims cell for player on the spectator's board
+  void apply(int cell, int player) {
+    if (this.log.length <= this.moveCount) {
+      this.log = java.util.Arrays.copyOf(this.log, 2 * this.log.length);
+    }
+    this.log[this.moveCount] = cell;
+    this.moveCount++;
+    this.board.setOwner(cell, player);
+  }
+
+  public void close() throws IOException {
+    this.socket.close();
+  }
+}
+
+// Examples and tests for spectator broadcasts
+class ExamplesBridgItBroadcast {
+  // Does the spectator's board show the same cells as the game's?
+  boolean same(BridgItSpectator spectator, BridgItGame game) {
+    return java.util.Arrays.equals(spectator.board.pink, game.board.pink)
+        && java.util.Arrays.equals(spectator.board.magenta, game.board.magenta);
+  }
+
+  void testSpectatorsFollowTheGame(Tester t) throws IOException {
+    BridgItGame game = new BridgItGame(9);
+    game.playMove(game.board.index(3, 3));
+    BridgItBroadcaster broadcast = game.startBroadcast(0);
+    try (BridgItSpectator early = new BridgItSpectator(broadcast.port());
+        BridgItSpectator other = new BridgItSpectator(broadcast.port())) {
+      t.checkExpect(early.readFrame(), BridgItBroadcaster.SNAPSHOT);
+      t.checkExpect(other.readFrame(), BridgItBroadcaster.SNAPSHOT);
+      t.checkExpect(this.same(early, game), true);
+
+      game.playMove(game.board.index(1, 1));
+      game.playMove(game.board.index(5, 5));
+      game.undo();
+      for (BridgItSpectator spectator : new BridgItSpectator[] { early, other }) {
+        t.checkExpect(spectator.readFrame(), BridgItBroadcaster.MOVE);
+        t.checkExpect(spectator.readFrame(), BridgItBroadcaster.MOVE);
+        t.checkExpect(spectator.readFrame(), BridgItBroadcaster.UNDO);
+        t.checkExpect(this.same(spectator, game), true);
+      }
+
+      // A late joiner gets everything in one snapshot
+      try (BridgItSpectator late = new BridgItSpectator(broadcast.port())) {
+        t.checkExpect(late.readFrame(), BridgItBroadcaster.SNAPSHOT);
+        t.checkExpect(late.moveCount, 2);
+        t.checkExpect(this.same(late, game), true);
+      }
+    } finally {
+      broadcast.close();
+    }
+  }
+
+  void testFallingBehindGetsASnapshot(Tester t) throws IOException {
+    BridgItBroadcaster broadcast = new BridgItBroadcaster(9, new int[0], 0, 0, 4);
+    try {
+      BridgItWatcher watcher = new BridgItWatcher(null);
+      broadcast.advance(watcher);
+      t.checkExpect(watcher.current.get(4), BridgItBroadcaster.SNAPSHOT);
+
+      // More changes than the ring holds replace the missed deltas with a snapshot
+      for (int i = 0; i < 3; i++) {
+        broadcast.moved(10, BridgItBoard.PINK);
+        broadcast.undone();
+      }
+      broadcast.advance(watcher);
+      t.checkExpect(watcher.current.get(4), BridgItBroadcaster.SNAPSHOT);
+      t.checkExpect(watcher.nextSeq, 6L);
+      broadcast.moved(10, BridgItBoard.PINK);
+      broadcast.advance(watcher);
+      t.checkExpect(watcher.current.get(4), BridgItBroadcaster.MOVE);
+
+      // Every watcher reads the same shared bytes
+      BridgItWatcher other = new BridgItWatcher(null);
+      other.nextSeq = 6;
+      broadcast.advance(other);
+      t.checkExpect(other.current.equals(watcher.current), true);
+      t.checkExpect(other.current != watcher.current, true);
+    } finally {
+      broadcast.close();
+    }
+  }
+
+  void testCloseHangsUp(Tester t) throws IOException {
+    BridgItBroadcaster broadcast = new BridgItBroadcaster(5, new int[0], 0, 0, 16);
+    try (BridgItSpectator spectator = new BridgItSpectator(broadcast.port())) {
+      t.checkExpect(spectator.readFrame(), BridgItBroadcaster.SNAPSHOT);
+      for (int i = 0; i < 100; i++) {
+        broadcast.moved(6, BridgItBoard.PINK);
+        broadcast.undone();
+      }
+      broadcast.close();
+      t.checkExpect(broadcast.sender.isAlive(), false);
+      t.checkExpect(broadcast.server.isOpen(), false);
+      t.checkExpect(broadcast.selector.isOpen(), false);
+
+      // The spectator reads what was sent before the hang-up, then the end
+      int frames = 0;
+      try {
+        while (true) {
+          spectator.readFrame();
+          frames++;
+        }
+      } catch (java.io.EOFException e) {
+        t.checkNumRange(frames, 0, 201);
+      }
+    }
+  }
+}
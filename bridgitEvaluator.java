@@ -0,0 +1,222 @@
+import java.util.SplittableRandom;
+import tester.*;
+
+// Scores BridgIt positions by treating each player's BridgItDotGraph as an
+// electrical network (as Hex programs do). Every cell is a wire between the two
+// dots it bridges: a good conductor if the player owns it, a unit resistor if it
+// is empty, and almost an insulator if the opponent owns it. The lower the
+// resistance between a player's two edges, the closer that player is to a
+// connection.
+//
+// The resistance comes from the inverse of the network's Laplacian with FINISH
+// grounded. Claiming a cell changes one conductance in each player's network,
+// which is a rank-one change to the Laplacian, so the inverse is updated with
+// the Sherman-Morrison formula in O(dots^2) instead of being solved again in
+// O(dots^3). For an n x n board that is O(n^4) per move instead of O(n^6).
+class BridgItEvaluator {
+  static final double OWNED = 1000.0; // Conductance of a cell the player owns
+  static final double EMPTY = 1.0; // Conductance of an empty cell
+  static final double BLOCKED = 0.001; // Conductance of a cell the opponent owns,
+                                       // above 0 so the network always has a solution
+
+  final int n; // Size of the grid
+  final BridgItDotGraph[] graphs; // Each player's graph, indexed by player
+  final double[][][] inverse; // Each player's inverse grounded Laplacian, indexed by player
+  final int[] owners; // The owner of every cell, as the evaluator last saw it
+  final double[] column; // Scratch space for updates
+
+  // Constructor for the given position
+  BridgItEvaluator(BridgItBoard board) {
+    this.n = board.n;
+    this.graphs = new BridgItDotGraph[3];
+    this.inverse = new double[3][][];
+    this.owners = new int[board.masks.cells];
+    for (int cell = 0; cell < this.owners.length; cell++) {
+      this.owners[cell] = board.owner(cell);
+    }
+    for (int player = BridgItBoard.PINK; player <= BridgItBoard.MAGENTA; player++) {
+      this.graphs[player] = BridgItDotGraph.of(this.n, player);
+      this.inverse[player] = this.solve(player);
+    }
+    this.column = new double[this.graphs[BridgItBoard.PINK].nodes - 1];
+  }
+
+  // The row of node v in the grounded Laplacian, or -1 for the grounded FINISH
+  static int row(int v) {
+    if (v == BridgItDotGraph.FINISH) {
+      return -1;
+    }
+    return v == BridgItDotGraph.START ? 0 : v - 1;
+  }
+
+  // The conductance of a cell owned by owner in player's network
+  static double conductance(int player, int owner) {
+    if (owner == BridgItBoard.EMPTY) {
+      return EMPTY;
+    }
+    return owner == player ? OWNED : BLOCKED;
+  }
+
+  // Inverts player's grounded Laplacian from scratch with Gauss-Jordan elimination.
+  // The matrix is symmetric positive definite, so no pivoting is needed.
+  double[][] solve(int player) {
+    BridgItDotGraph graph = this.graphs[player];
+    int size = graph.nodes - 1;
+    double[][] a = new double[size][size];
+    double[][] inv = new double[size][size];
+    for (int cell = 0; cell < this.owners.length; cell++) {
+      if (graph.from[cell] >= 0) {
+        this.addConductance(a, graph, cell, conductance(player, this.owners[cell]));
+      }
+    }
+    for (int i = 0; i < size; i++) {
+      inv[i][i] = 1.0;
+    }
+
+    for (int p = 0; p < size; p++) {
+      double scale = 1.0 / a[p][p];
+      for (int j = 0; j < size; j++) {
+        a[p][j] *= scale;
+        inv[p][j] *= scale;
+      }
+      for (int i = 0; i < size; i++) {
+        double factor = a[i][p];
+        if (i != p && factor != 0.0) {
+          for (int j = 0; j < size; j++) {
+            a[i][j] -= factor * a[p][j];
+            inv[i][j] -= factor * inv[p][j];
+          }
+        }
+      }
+    }
+    return inv;
+  }
+
+  // EFFECT: adds the given conductance across cell's edge to the Laplacian a
+  void addConductance(double[][] a, BridgItDotGraph graph, int cell, double c) {
+    int u = row(graph.from[cell]);
+    int v = row(graph.to[cell]);
+    if (u >= 0) {
+      a[u][u] += c;
+    }
+    if (v >= 0) {
+      a[v][v] += c;
+    }
+    if (u >= 0 && v >= 0) {
+      a[u][v] -= c;
+      a[v][u] -= c;
+    }
+  }
+
+  // EFFECT: gives cell to owner (or EMPTY) and updates both networks
+  void setOwner(int cell, int owner) {
+    if (this.graphs[BridgItBoard.PINK].from[cell] < 0) {
+      throw new IllegalArgumentException("Only white interior cells can be claimed.");
+    }
+    for (int player = BridgItBoard.PINK; player <= BridgItBoard.MAGENTA; player++) {
+      double change = conductance(player, owner) - conductance(player, this.owners[cell]);
+      if (change != 0.0) {
+        this.update(player, cell, change);
+      }
+    }
+    this.owners[cell] = owner;
+  }
+
+  // EFFECT: changes the conductance of cell's edge in player's network by change.
+  // With b the edge's incidence vector, the new inverse is
+  // inv - change * (inv b)(inv b)^T / (1 + change * b^T inv b).
+  void update(int player, int cell, double change) {
+    BridgItDotGraph graph = this.graphs[player];
+    double[][] inv = this.inverse[player];
+    int u = row(graph.from[cell]);
+    int v = row(graph.to[cell]);
+    double[] x = this.column;
+    for (int i = 0; i < x.length; i++) {
+      x[i] = (u >= 0 ? inv[i][u] : 0.0) - (v >= 0 ? inv[i][v] : 0.0);
+    }
+    double across = (u >= 0 ? x[u] : 0.0) - (v >= 0 ? x[v] : 0.0);
+    double factor = change / (1.0 + change * across);
+    for (int i = 0; i < x.length; i++) {
+      double xi = factor * x[i];
+      if (xi != 0.0) {
+        double[] inverseRow = inv[i];
+        for (int j = 0; j < x.length; j++) {
+          inverseRow[j] -= xi * x[j];
+        }
+      }
+    }
+  }
+
+  // The resistance between player's two edges
+  double resistance(int player) {
+    return this.inverse[player][0][0];
+  }
+
+  // How far ahead player is: the log of the opponent's resistance over player's,
+  // so 0 is even and the score for one player is minus the score for the other
+  double score(int player) {
+    return Math.log(this.resistance(BridgItBoard.other(player)) / this.resistance(player));
+  }
+}
+
+// Examples and tests for the resistance evaluator
+class ExamplesBridgItEvaluator {
+  void testMagentaGraph(Tester t) {
+    // Magenta's graph joins START and FINISH exactly when Magenta is connected
+    SplittableRandom rand = new SplittableRandom(5);
+    BridgItDotGraph graph = BridgItDotGraph.of(7, BridgItBoard.MAGENTA);
+    for (int game = 0; game < 20; game++) {
+      BridgItBoard board = new BridgItBoard(7);
+      BridgItMcts.rollout(board, BridgItBoard.PINK, new int[49], rand);
+      int[] root = graph.contract(board);
+      t.checkExpect(root[BridgItDotGraph.START] == root[BridgItDotGraph.FINISH],
+          board.hasConnection(BridgItBoard.MAGENTA));
+    }
+  }
+
+  void testEmptyBoardIsEven(Tester t) {
+    BridgItEvaluator eval = new BridgItEvaluator(new BridgItBoard(9));
+    t.checkInexact(eval.resistance(BridgItBoard.PINK), eval.resistance(BridgItBoard.MAGENTA), 1e-9);
+    t.checkInexact(eval.score(BridgItBoard.PINK), 0.0, 1e-9);
+
+    // On a 3x3 board Pink's network is the single empty cell
+    t.checkInexact(new BridgItEvaluator(new BridgItBoard(3)).resistance(BridgItBoard.PINK), 1.0, 1e-9);
+  }
+
+  void testClaimsMoveTheScore(Tester t) {
+    BridgItBoard board = new BridgItBoard(9);
+    BridgItEvaluator eval = new BridgItEvaluator(board);
+    eval.setOwner(board.index(3, 3), BridgItBoard.PINK);
+    t.checkExpect(eval.score(BridgItBoard.PINK) > 0, true);
+    t.checkInexact(eval.score(BridgItBoard.MAGENTA), -eval.score(BridgItBoard.PINK), 1e-9);
+
+    // Taking the cell back restores the even position
+    eval.setOwner(board.index(3, 3), BridgItBoard.EMPTY);
+    t.checkInexact(eval.score(BridgItBoard.PINK), 0.0, 1e-9);
+    t.checkException(new IllegalArgumentException("Only white interior cells can be claimed."),
+        eval, "setOwner", board.index(0, 0), BridgItBoard.PINK);
+  }
+
+  void testUpdatesMatchFullSolve(Tester t) {
+    SplittableRandom rand = new SplittableRandom(11);
+    BridgItBoard board = new BridgItBoard(15);
+    BridgItEvaluator eval = new BridgItEvaluator(board);
+    int[] moves = new int[board.masks.cells];
+    int player = BridgItBoard.PINK;
+    while (board.winner() == BridgItBoard.EMPTY) {
+      int count = board.legalMoves(moves);
+      int cell = moves[rand.nextInt(count)];
+      board.setOwner(cell, player);
+      eval.setOwner(cell, player);
+      player = BridgItBoard.other(player);
+
+      BridgItEvaluator fresh = new BridgItEvaluator(board);
+      t.checkInexact(eval.resistance(BridgItBoard.PINK), fresh.resistance(BridgItBoard.PINK), 1e-6);
+      t.checkInexact(eval.resistance(BridgItBoard.MAGENTA),
+          fresh.resistance(BridgItBoard.MAGENTA), 1e-6);
+    }
+
+    // The winner's network is far better than the loser's
+    t.checkExpect(eval.score(board.winner()) > 1.0, true);
+  }
+}
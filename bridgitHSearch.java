@@ -0,0 +1,448 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import tester.*;
+import javalib.worldimages.*;
+
+// A virtual connection between two groups of one player's dots. The carrier is
+// the set of empty cells the connection needs. A full connection holds even if
+// the opponent moves first; a semi connection becomes full once the player
+// claims its key, which is one of the carrier cells.
+class BridgItConnection {
+  final int a; // The smaller group
+  final int b; // The larger group
+  final int key; // The cell that makes a semi connection full, or -1 for a full one
+  final long[] carrier; // Empty cells the connection depends on, one bit per board cell
+
+  // Constructor
+  BridgItConnection(int a, int b, int key, long[] carrier) {
+    this.a = Math.min(a, b);
+    this.b = Math.max(a, b);
+    this.key = key;
+    this.carrier = carrier;
+  }
+
+  // Is this a full connection?
+  boolean isFull() {
+    return this.key < 0;
+  }
+
+  // Do the carriers of this and that share no cell?
+  boolean disjoint(BridgItConnection that) {
+    for (int i = 0; i < this.carrier.length; i++) {
+      if ((this.carrier[i] & that.carrier[i]) != 0L) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Is every cell of this carrier also in that carrier?
+  boolean subsetOf(BridgItConnection that) {
+    for (int i = 0; i < this.carrier.length; i++) {
+      if ((this.carrier[i] & ~that.carrier[i]) != 0L) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // The union of this carrier and that one
+  long[] union(BridgItConnection that) {
+    long[] result = new long[this.carrier.length];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = this.carrier[i] | that.carrier[i];
+    }
+    return result;
+  }
+}
+
+// The virtual connections of one player, found with H-search on the player's
+// BridgItDotGraph. Dots are always the player's, so groups are the nodes left
+// after contracting the player's cells, and every empty cell between two groups
+// is a semi connection. Two rules build everything else:
+//   AND: connections a-g and g-b with disjoint carriers give a-b. Two full ones
+//        give a full one; a full one and a semi one give a semi one.
+//   OR: semi connections a-b whose carriers have no common cell give a full a-b.
+//
+// Connections are kept per pair of groups, with only the ones whose carriers are
+// minimal and at most a few of each kind, which bounds the work. When a cell is
+// claimed, the connections that survive are kept: the owner's carriers lose the
+// cell, and only the connections that changed are combined again. The opponent
+// only loses connections, so nothing new needs to be searched for them.
+class BridgItVcSet {
+  static final int FULL_LIMIT = 6; // Full connections kept per pair of groups
+  static final int SEMI_LIMIT = 10; // Semi connections kept per pair of groups
+
+  final BridgItDotGraph graph;
+  final int words; // Longs per carrier
+  final int[] root; // The group of every node
+  final ArrayList<ArrayList<BridgItConnection>> full; // Per pair a * nodes + b, with a < b
+  final ArrayList<ArrayList<BridgItConnection>> semi;
+  final ArrayDeque<BridgItConnection> work; // New connections not yet combined
+
+  // Constructor for the given player's connections on the board
+  BridgItVcSet(BridgItBoard board, int player) {
+    this.graph = BridgItDotGraph.of(board.n, player);
+    this.words = board.masks.words;
+    this.root = this.graph.contract(board);
+    int pairs = this.graph.nodes * this.graph.nodes;
+    this.full = new ArrayList<>(pairs);
+    this.semi = new ArrayList<>(pairs);
+    for (int i = 0; i < pairs; i++) {
+      this.full.add(new ArrayList<>(0));
+      this.semi.add(new ArrayList<>(0));
+    }
+    this.work = new ArrayDeque<>();
+
+    for (int cell = 0; cell < board.masks.cells; cell++) {
+      int a = this.graph.from[cell] < 0 ? -1 : this.root[this.graph.from[cell]];
+      int b = this.graph.from[cell] < 0 ? -1 : this.root[this.graph.to[cell]];
+      if (a != b && board.owner(cell) == BridgItBoard.EMPTY) {
+        long[] carrier = new long[this.words];
+        BridgItMasks.set(carrier, cell);
+        this.add(new BridgItConnection(a, b, cell, carrier));
+      }
+    }
+    this.search();
+  }
+
+  // The connections of the given kind between groups a and b
+  ArrayList<BridgItConnection> between(int a, int b, boolean isFull) {
+    int pair = Math.min(a, b) * this.graph.nodes + Math.max(a, b);
+    return isFull ? this.full.get(pair) : this.semi.get(pair);
+  }
+
+  // EFFECT: keeps the connection if no kept one has a smaller carrier, drops the
+  // kept ones it improves on, and queues it to be combined
+  void add(BridgItConnection vc) {
+    ArrayList<BridgItConnection> fulls = this.between(vc.a, vc.b, true);
+    for (BridgItConnection other : fulls) {
+      if (other.subsetOf(vc)) {
+        return;
+      }
+    }
+    ArrayList<BridgItConnection> list = vc.isFull() ? fulls : this.between(vc.a, vc.b, false);
+    if (!vc.isFull()) {
+      for (BridgItConnection other : list) {
+        if (other.subsetOf(vc)) {
+          return;
+        }
+      }
+    }
+    if (list.size() >= (vc.isFull() ? FULL_LIMIT : SEMI_LIMIT)) {
+      return;
+    }
+    list.removeIf(other -> vc.subsetOf(other));
+    if (vc.isFull()) {
+      this.between(vc.a, vc.b, false).removeIf(other -> vc.subsetOf(other));
+    }
+    list.add(vc);
+    this.work.add(vc);
+  }
+
+  // EFFECT: combines queued connections until nothing new is found
+  void search() {
+    while (!this.work.isEmpty()) {
+      BridgItConnection vc = this.work.poll();
+      if (!this.between(vc.a, vc.b, vc.isFull()).contains(vc)) {
+        continue; // Replaced by a better one since it was queued
+      }
+      for (int g = 0; g < this.graph.nodes; g++) {
+        if (this.root[g] == g) {
+          this.and(vc, vc.a, vc.b, g);
+          this.and(vc, vc.b, vc.a, g);
+        }
+      }
+      if (!vc.isFull()) {
+        this.or(vc);
+      }
+    }
+  }
+
+  // EFFECT: combines vc, a connection from end to pivot, with every connection
+  // from pivot to g
+  void and(BridgItConnection vc, int end, int pivot, int g) {
+    if (g == end || g == pivot) {
+      return;
+    }
+    for (BridgItConnection other : new ArrayList<>(this.between(pivot, g, true))) {
+      if (vc.disjoint(other)) {
+        this.add(new BridgItConnection(end, g, vc.key, vc.union(other)));
+      }
+    }
+    if (vc.isFull()) {
+      for (BridgItConnection other : new ArrayList<>(this.between(pivot, g, false))) {
+        if (vc.disjoint(other)) {
+          this.add(new BridgItConnection(end, g, other.key, vc.union(other)));
+        }
+      }
+    }
+  }
+
+  // EFFECT: turns the new semi connection and the others between the same groups
+  // into a full connection wherever their carriers have no common cell
+  void or(BridgItConnection vc) {
+    ArrayList<BridgItConnection> semis = new ArrayList<>(this.between(vc.a, vc.b, false));
+    long[] common = vc.carrier.clone();
+    long[] all = vc.carrier.clone();
+    for (BridgItConnection other : semis) {
+      if (other != vc && vc.disjoint(other)) {
+        this.add(new BridgItConnection(vc.a, vc.b, -1, vc.union(other)));
+      }
+      for (int i = 0; i < this.words; i++) {
+        common[i] &= other.carrier[i];
+        all[i] |= other.carrier[i];
+      }
+    }
+    boolean empty = true;
+    for (long word : common) {
+      empty &= word == 0L;
+    }
+    if (empty) {
+      this.add(new BridgItConnection(vc.a, vc.b, -1, all));
+    }
+  }
+
+  // EFFECT: updates the connections for the given cell being claimed by owner
+  void claim(int cell, int owner) {
+    ArrayList<BridgItConnection> kept = new ArrayList<>();
+    ArrayList<BridgItConnection> changed = new ArrayList<>();
+    boolean mine = owner == this.graph.player;
+    int merged = -1;
+    if (mine) {
+      int a = this.root[this.graph.from[cell]];
+      int b = this.root[this.graph.to[cell]];
+      merged = Math.min(a, b);
+      int gone = Math.max(a, b);
+      for (int v = 0; v < this.graph.nodes; v++) {
+        if (this.root[v] == gone) {
+          this.root[v] = merged;
+        }
+      }
+    }
+
+    for (int pair = 0; pair < this.full.size(); pair++) {
+      for (ArrayList<BridgItConnection> list : List.of(this.full.get(pair), this.semi.get(pair))) {
+        for (BridgItConnection vc : list) {
+          boolean uses = BridgItMasks.get(vc.carrier, cell);
+          if (!mine && uses) {
+            continue; // The opponent took a cell this connection needs
+          }
+          int a = this.root[vc.a];
+          int b = this.root[vc.b];
+          if (a == b) {
+            continue; // Both ends are one group now
+          }
+          if (uses || a != vc.a || b != vc.b) {
+            long[] carrier = vc.carrier.clone();
+            carrier[cell >>> 6] &= ~(1L << cell);
+            changed.add(new BridgItConnection(a, b, vc.key == cell ? -1 : vc.key, carrier));
+          } else {
+            kept.add(vc);
+          }
+        }
+        list.clear();
+      }
+    }
+
+    for (BridgItConnection vc : kept) {
+      this.between(vc.a, vc.b, vc.isFull()).add(vc);
+    }
+    for (BridgItConnection vc : changed) {
+      this.add(vc);
+    }
+    this.search();
+  }
+
+  // Are this player's edges already joined?
+  boolean isConnected() {
+    return this.root[BridgItDotGraph.START] == this.root[BridgItDotGraph.FINISH];
+  }
+
+  // The full (or semi) connections between this player's edges
+  ArrayList<BridgItConnection> edgeConnections(boolean isFull) {
+    int start = this.root[BridgItDotGraph.START];
+    int finish = this.root[BridgItDotGraph.FINISH];
+    if (start == finish) {
+      return new ArrayList<>();
+    }
+    return this.between(start, finish, isFull);
+  }
+}
+
+// Keeps both players' virtual connections up to date as cells are claimed, and
+// uses them to find the cells the side to move must play in.
+class BridgItHSearch {
+  final BridgItVcSet[] sets; // Each player's connections, indexed by player
+  final BridgItBoard board; // The position the connections belong to
+
+  // Constructor for the given position
+  BridgItHSearch(BridgItBoard board) {
+    this.board = board.copy();
+    this.sets = new BridgItVcSet[3];
+    this.sets[BridgItBoard.PINK] = new BridgItVcSet(this.board, BridgItBoard.PINK);
+    this.sets[BridgItBoard.MAGENTA] = new BridgItVcSet(this.board, BridgItBoard.MAGENTA);
+  }
+
+  // EFFECT: updates both players' connections for the cell being claimed by player
+  void claim(int cell, int player) {
+    if (!this.board.isPlayable(cell) || this.board.owner(cell) != BridgItBoard.EMPTY) {
+      throw new IllegalArgumentException("Only empty white interior cells can be claimed.");
+    }
+    this.board.setOwner(cell, player);
+    this.sets[BridgItBoard.PINK].claim(cell, player);
+    this.sets[BridgItBoard.MAGENTA].claim(cell, player);
+  }
+
+  // Has player a full connection between their edges, so they win whoever moves?
+  boolean hasWon(int player) {
+    return this.sets[player].isConnected() || !this.sets[player].edgeConnections(true).isEmpty();
+  }
+
+  // The cells toMove has to claim to stop the opponent's connections between
+  // their edges. Any other move lets the opponent complete one of them. If the
+  // opponent has none, every empty cell is in the region; if it is empty, toMove
+  // has lost.
+  long[] mustPlay(int toMove) {
+    BridgItVcSet theirs = this.sets[BridgItBoard.other(toMove)];
+    long[] region = new long[this.board.masks.words];
+    for (int i = 0; i < region.length; i++) {
+      region[i] = this.board.masks.playable[i] & ~(this.board.pink[i] | this.board.magenta[i]);
+    }
+    if (theirs.isConnected()) {
+      return new long[region.length];
+    }
+    for (boolean isFull : new boolean[] { true, false }) {
+      for (BridgItConnection vc : theirs.edgeConnections(isFull)) {
+        for (int i = 0; i < region.length; i++) {
+          region[i] &= vc.carrier[i];
+        }
+      }
+    }
+    return region;
+  }
+}
+
+// Examples and tests for H-search
+class ExamplesBridgItHSearch {
+  void testSingleCell(Tester t) {
+    // On a 3x3 board the one white cell is a semi connection for both players
+    BridgItBoard board = new BridgItBoard(3);
+    BridgItHSearch hsearch = new BridgItHSearch(board);
+    t.checkExpect(hsearch.sets[BridgItBoard.PINK].edgeConnections(false).size(), 1);
+    t.checkExpect(hsearch.sets[BridgItBoard.PINK].edgeConnections(false).get(0).key, 4);
+    long[] only = new long[1];
+    BridgItMasks.set(only, 4);
+    t.checkExpect(hsearch.mustPlay(BridgItBoard.PINK), only);
+
+    hsearch.claim(4, BridgItBoard.MAGENTA);
+    t.checkExpect(hsearch.sets[BridgItBoard.MAGENTA].isConnected(), true);
+    t.checkExpect(hsearch.sets[BridgItBoard.PINK].edgeConnections(false).size(), 0);
+    t.checkException(new IllegalArgumentException("Only empty white interior cells can be claimed."),
+        hsearch, "claim", 4, BridgItBoard.PINK);
+  }
+
+  void testOpeningConnects(Tester t) {
+    // After Pink opens in the middle of a 5x5 board, each side of the claimed
+    // bridge reaches its edge through two separate cells
+    BridgItBoard board = new BridgItBoard(5);
+    BridgItHSearch hsearch = new BridgItHSearch(board);
+    t.checkExpect(hsearch.hasWon(BridgItBoard.PINK), false);
+    hsearch.claim(board.index(2, 2), BridgItBoard.PINK);
+    t.checkExpect(hsearch.hasWon(BridgItBoard.PINK), true);
+
+    // No single Magenta cell breaks every one of Pink's connections
+    t.checkExpect(hsearch.mustPlay(BridgItBoard.MAGENTA), new long[1]);
+  }
+
+  void testIncrementalStaysSound(Tester t) {
+    // Only a few connections are kept per pair of groups, and which ones depends
+    // on the order they are found, so an updated set need not equal a rebuilt
+    // one. Every kept connection must still hold, and wins must be real.
+    SplittableRandom rand = new SplittableRandom(3);
+    for (int game = 0; game < 5; game++) {
+      BridgItBoard board = new BridgItBoard(9);
+      BridgItHSearch hsearch = new BridgItHSearch(board);
+      int[] moves = new int[81];
+      int player = BridgItBoard.PINK;
+      while (board.winner() == BridgItBoard.EMPTY) {
+        int count = board.legalMoves(moves);
+        int cell = moves[rand.nextInt(count)];
+        board.setOwner(cell, player);
+        hsearch.claim(cell, player);
+        player = BridgItBoard.other(player);
+
+        // A full connection only ever shows up for a player who really wins
+        BridgItHSearch fresh = new BridgItHSearch(board);
+        for (int p = BridgItBoard.PINK; p <= BridgItBoard.MAGENTA; p++) {
+          t.checkExpect(hsearch.sets[p].isConnected(), board.hasConnection(p));
+          this.checkConnections(t, hsearch.sets[p], board);
+          if (hsearch.hasWon(p) || fresh.hasWon(p)) {
+            t.checkExpect(this.wins(board, p, player), true);
+          }
+        }
+      }
+    }
+  }
+
+  // EFFECT: checks that every kept connection joins two different groups over
+  // empty cells, with the key of a semi connection in its carrier
+  void checkConnections(Tester t, BridgItVcSet set, BridgItBoard board) {
+    for (int pair = 0; pair < set.full.size(); pair++) {
+      for (List<BridgItConnection> list : List.of(set.full.get(pair), set.semi.get(pair))) {
+        for (BridgItConnection vc : list) {
+          t.checkExpect(set.root[vc.a] == vc.a && set.root[vc.b] == vc.b && vc.a != vc.b, true);
+          t.checkExpect(vc.isFull() || BridgItMasks.get(vc.carrier, vc.key), true);
+          boolean empty = true;
+          for (int i = 0; i < vc.carrier.length; i++) {
+            empty &= (vc.carrier[i] & ~(board.masks.playable[i] & ~(board.pink[i] | board.magenta[i]))) == 0L;
+          }
+          t.checkExpect(empty, true);
+        }
+      }
+    }
+  }
+
+  void testMustPlayIsNeeded(Tester t) {
+    // Every move outside Magenta's must-play region loses
+    BridgItBoard board = new BridgItBoard(7);
+    board.setOwner(board.index(3, 3), BridgItBoard.PINK);
+    board.setOwner(board.index(1, 1), BridgItBoard.MAGENTA);
+    board.setOwner(board.index(3, 1), BridgItBoard.PINK);
+    long[] region = new BridgItHSearch(board).mustPlay(BridgItBoard.MAGENTA);
+    int[] moves = new int[49];
+    int count = board.legalMoves(moves);
+    for (int i = 0; i < count; i++) {
+      if (!BridgItMasks.get(region, moves[i])) {
+        BridgItBoard next = board.copy();
+        next.setOwner(moves[i], BridgItBoard.MAGENTA);
+        t.checkExpect(this.wins(next, BridgItBoard.PINK, BridgItBoard.PINK), true);
+      }
+    }
+  }
+
+  void testGameTracksClicks(Tester t) {
+    BridgItGame game = new BridgItGame(5);
+    game.trackConnections();
+    game.onMouseClicked(new Posn(100, 100)); // Pink claims (2, 2)
+    t.checkExpect(game.hsearch.board.owner(game.board.index(2, 2)), BridgItBoard.PINK);
+    t.checkExpect(game.hsearch.hasWon(BridgItBoard.PINK), true);
+    t.checkExpect(game.mustPlay(), new long[1]);
+
+    // Undoing rebuilds the connections for the earlier position
+    game.undo();
+    t.checkExpect(game.hsearch.hasWon(BridgItBoard.PINK), false);
+    t.checkExpect(game.hsearch.board.emptyCount(), 5);
+  }
+
+  // Does player win the position with perfect play, with toMove to move?
+  boolean wins(BridgItBoard board, int player, int toMove) {
+    int winner = board.winner();
+    if (winner != BridgItBoard.EMPTY) {
+      return winner == player;
+    }
+    return new BridgItSolver(board.n).solve(board, toMove).winner == player;
+  }
+}
@@ -0,0 +1,343 @@
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import tester.*;
+import java.awt.Color;
+import javalib.worldimages.*;
+
+// A node of the shared search tree. Every field that threads race on is updated
+// with a single atomic operation, so the tree needs no locks.
+class BridgItMctsNode {
+  static final long VISIT = 1L << 32; // Visits live in the high half of stats
+  static final long WIN = 1L; // Wins live in the low half of stats
+
+  static final AtomicLongFieldUpdater<BridgItMctsNode> STATS =
+      AtomicLongFieldUpdater.newUpdater(BridgItMctsNode.class, "stats");
+  static final AtomicReferenceFieldUpdater<BridgItMctsNode, BridgItMctsNode[]> CHILDREN =
+      AtomicReferenceFieldUpdater.newUpdater(BridgItMctsNode.class, BridgItMctsNode[].class,
+          "children");
+
+  final int move; // The cell claimed to reach this node, or -1 at the root
+  final int player; // The player who claimed it
+  volatile long stats; // Visits and wins for player, packed so both update at once
+  volatile BridgItMctsNode[] children; // null until the node is expanded
+
+  // Constructor
+  BridgItMctsNode(int move, int player) {
+    this.move = move;
+    this.player = player;
+    this.stats = 0L;
+    this.children = null;
+  }
+
+  // The number of playouts through this node, including ones still running
+  int visits() {
+    return (int) (this.stats >>> 32);
+  }
+
+  // The number of finished playouts through this node won by player
+  int wins() {
+    return (int) this.stats;
+  }
+
+  // EFFECT: counts a playout through this node before its result is known.
+  // Until the win is added the playout looks like a loss (virtual loss), which
+  // steers other threads toward different children.
+  void addVisit() {
+    STATS.addAndGet(this, VISIT);
+  }
+
+  // EFFECT: records a win for player on a playout already counted by addVisit
+  void addWin() {
+    STATS.addAndGet(this, WIN);
+  }
+
+  // EFFECT: creates a child for every legal move of toMove, unless another
+  // thread got there first. Returns true if the node now has children.
+  boolean expand(BridgItBoard board, int toMove, int[] moves) {
+    if (this.children == null) {
+      int count = board.legalMoves(moves);
+      BridgItMctsNode[] created = new BridgItMctsNode[count];
+      for (int i = 0; i < count; i++) {
+        created[i] = new BridgItMctsNode(moves[i], toMove);
+      }
+      CHILDREN.compareAndSet(this, null, created);
+    }
+    return this.children.length > 0;
+  }
+
+  // The child with the best upper confidence bound for the player choosing it
+  BridgItMctsNode select(double exploration, SplittableRandom rand) {
+    BridgItMctsNode[] kids = this.children;
+    double logParent = Math.log(Math.max(1, this.visits()));
+    BridgItMctsNode best = null;
+    double bestScore = Double.NEGATIVE_INFINITY;
+    int start = rand.nextInt(kids.length); // Break ties between unvisited children randomly
+
+    for (int k = 0; k < kids.length; k++) {
+      BridgItMctsNode child = kids[(start + k) % kids.length];
+      long s = child.stats;
+      int v = (int) (s >>> 32);
+      if (v == 0) {
+        return child;
+      }
+      double score = (double) (int) s / v + exploration * Math.sqrt(logParent / v);
+      if (score > bestScore) {
+        bestScore = score;
+        best = child;
+      }
+    }
+    return best;
+  }
+
+  // The most visited child
+  BridgItMctsNode mostVisited() {
+    BridgItMctsNode best = null;
+    for (BridgItMctsNode child : this.children) {
+      if (best == null || child.visits() > best.visits()) {
+        best = child;
+      }
+    }
+    return best;
+  }
+}
+
+// Chooses BridgIt moves with Monte Carlo Tree Search. Every available core
+// runs playouts on one shared tree until the time or playout budget is spent.
+// The helper threads come from one pool shared by every instance, whose idle
+// threads stop after a minute, so making many searchers costs no threads.
+class BridgItMcts implements IBridgItPolicy {
+  static final ExecutorService POOL = Executors.newCachedThreadPool(r -> {
+    Thread thread = new Thread(r, "bridgit-mcts");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  final int threads; // Number of threads searching each move
+  final long timeMillis; // Time budget per move, or 0 for no time limit
+  final int playouts; // Playout budget per move, or 0 for no playout limit
+  final double exploration; // UCT exploration constant
+  final int expandThreshold; // Visits a leaf needs before it is expanded
+  final SplittableRandom seeds; // Seeds the playouts of each search
+
+  // Constructor using every core with the given budgets
+  BridgItMcts(long timeMillis, int playouts) {
+    this(Runtime.getRuntime().availableProcessors(), timeMillis, playouts);
+  }
+
+  // Constructor with playouts seeded from the clock
+  BridgItMcts(int threads, long timeMillis, int playouts) {
+    this(threads, timeMillis, playouts, System.nanoTime());
+  }
+
+  // Constructor with seeded playouts. A single thread with only a playout
+  // budget then plays the same moves every time.
+  BridgItMcts(int threads, long timeMillis, int playouts, long seed) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("MCTS needs at least one thread.");
+    }
+    if (timeMillis <= 0 && playouts <= 0) {
+      throw new IllegalArgumentException("MCTS needs a time or playout budget.");
+    }
+    this.threads = threads;
+    this.timeMillis = timeMillis;
+    this.playouts = playouts;
+    this.exploration = 0.5;
+    this.expandThreshold = 4;
+    this.seeds = new SplittableRandom(seed);
+  }
+
+  // Chooses the most visited move after spending the budget
+  public int chooseMove(BridgItBoard board, int player) {
+    BridgItMctsNode root = this.search(board, player);
+    return root.mostVisited().move;
+  }
+
+  // Searches the given position and returns the root of the tree
+  BridgItMctsNode search(BridgItBoard board, int player) {
+    BridgItMctsNode root = new BridgItMctsNode(-1, BridgItBoard.other(player));
+    if (!root.expand(board, player, new int[board.masks.cells])) {
+      throw new IllegalStateException("No legal moves left.");
+    }
+    if (root.children.length == 1) {
+      return root;
+    }
+
+    long deadline = this.timeMillis > 0 ? System.nanoTime() + this.timeMillis * 1000000L : 0L;
+    AtomicInteger remaining = new AtomicInteger(this.playouts > 0 ? this.playouts : Integer.MAX_VALUE);
+    // The calling thread searches too, so only threads - 1 helpers are needed
+    ArrayList<Future<?>> helpers = new ArrayList<>();
+    for (int i = 1; i < this.threads; i++) {
+      long seed = this.seeds.nextLong();
+      helpers.add(POOL.submit(() -> this.work(root, board, player, deadline, remaining, seed)));
+    }
+    this.work(root, board, player, deadline, remaining, this.seeds.nextLong());
+
+    for (Future<?> helper : helpers) {
+      try {
+        helper.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("MCTS worker failed.", e.getCause());
+      }
+    }
+    return root;
+  }
+
+  // EFFECT: runs playouts from the root until the budget is spent
+  void work(BridgItMctsNode root, BridgItBoard start, int player, long deadline,
+      AtomicInteger remaining, long seed) {
+    SplittableRandom rand = new SplittableRandom(seed);
+    BridgItBoard scratch = start.copy();
+    int[] moves = new int[start.masks.cells];
+    BridgItMctsNode[] path = new BridgItMctsNode[start.masks.cells + 2];
+
+    while (remaining.getAndDecrement() > 0 && (deadline == 0L || System.nanoTime() < deadline)) {
+      scratch.copyFrom(start);
+      BridgItMctsNode node = root;
+      int toMove = player;
+      int depth = 0;
+      root.addVisit();
+      path[depth] = root;
+      depth++;
+
+      // Selection: walk down the tree, claiming cells on the scratch board
+      while (true) {
+        if (node.children == null) {
+          if (node.visits() < this.expandThreshold || !node.expand(scratch, toMove, moves)) {
+            break;
+          }
+        } else if (node.children.length == 0) {
+          break;
+        }
+        node = node.select(this.exploration, rand);
+        node.addVisit();
+        scratch.setOwner(node.move, node.player);
+        toMove = BridgItBoard.other(node.player);
+        path[depth] = node;
+        depth++;
+      }
+
+      // Simulation and backpropagation
+      int winner = rollout(scratch, toMove, moves, rand);
+      for (int i = 0; i < depth; i++) {
+        if (path[i].player == winner) {
+          path[i].addWin();
+        }
+      }
+    }
+  }
+
+  // EFFECT: fills every empty cell in random order, alternating players
+  // A full BridgIt board always has exactly one winner, and claiming more cells
+  // never undoes a connection, so the winner of the filled board is the winner
+  // of the game. Returns that winner.
+  static int rollout(BridgItBoard board, int toMove, int[] moves, SplittableRandom rand) {
+    int count = board.legalMoves(moves);
+    for (int i = count - 1; i >= 0; i--) {
+      int j = rand.nextInt(i + 1);
+      int cell = moves[j];
+      moves[j] = moves[i];
+      board.setOwner(cell, toMove);
+      toMove = BridgItBoard.other(toMove);
+    }
+    return board.hasConnection(BridgItBoard.PINK) ? BridgItBoard.PINK : BridgItBoard.MAGENTA;
+  }
+}
+
+// Examples and tests for the MCTS opponent
+class ExamplesBridgItMcts {
+  void testRolloutHasOneWinner(Tester t) {
+    SplittableRandom rand = new SplittableRandom(7);
+    for (int game = 0; game < 50; game++) {
+      BridgItBoard board = new BridgItBoard(9);
+      int winner = BridgItMcts.rollout(board, BridgItBoard.PINK, new int[81], rand);
+      t.checkExpect(board.emptyCount(), 0);
+      t.checkExpect(board.hasConnection(winner), true);
+      t.checkExpect(board.hasConnection(BridgItBoard.other(winner)), false);
+    }
+  }
+
+  void testFindsWinningMove(Tester t) {
+    BridgItBoard board = new BridgItBoard(5);
+    board.setOwner(board.index(1, 1), BridgItBoard.PINK);
+    board.setOwner(board.index(3, 3), BridgItBoard.MAGENTA);
+
+    // Claiming (1, 3) completes Pink's path along row 1
+    BridgItMcts mcts = new BridgItMcts(2, 0, 3000);
+    t.checkExpect(mcts.chooseMove(board, BridgItBoard.PINK), board.index(1, 3));
+
+    // Magenta has to block it
+    t.checkExpect(mcts.chooseMove(board, BridgItBoard.MAGENTA), board.index(1, 3));
+  }
+
+  void testSearchCountsPlayouts(Tester t) {
+    BridgItMcts mcts = new BridgItMcts(4, 0, 2000);
+    BridgItMctsNode root = mcts.search(new BridgItBoard(7), BridgItBoard.PINK);
+    t.checkExpect(root.visits(), 2000);
+    t.checkExpect(root.children.length, 13);
+
+    int childVisits = 0;
+    for (BridgItMctsNode child : root.children) {
+      childVisits += child.visits();
+      t.checkExpect(child.player, BridgItBoard.PINK);
+    }
+    t.checkExpect(childVisits, 2000);
+  }
+
+  void testSeededSearchRepeats(Tester t) {
+    BridgItBoard board = new BridgItBoard(7);
+    for (long seed = 0; seed < 5; seed++) {
+      BridgItMctsNode a = new BridgItMcts(1, 0, 300, seed).search(board, BridgItBoard.PINK);
+      BridgItMctsNode b = new BridgItMcts(1, 0, 300, seed).search(board, BridgItBoard.PINK);
+      for (int i = 0; i < a.children.length; i++) {
+        t.checkExpect(a.children[i].stats, b.children[i].stats);
+      }
+    }
+  }
+
+  void testSharesHelperThreads(Tester t) {
+    for (int i = 0; i < 50; i++) {
+      new BridgItMcts(4, 0, 200).chooseMove(new BridgItBoard(5), BridgItBoard.PINK);
+    }
+    // Searches one after another reuse helpers instead of keeping 3 each
+    int helpers = 0;
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().equals("bridgit-mcts")) {
+        helpers++;
+      }
+    }
+    t.checkNumRange(helpers, 1, 50);
+  }
+
+  void testBudgets(Tester t) {
+    t.checkConstructorException(new IllegalArgumentException("MCTS needs a time or playout budget."),
+        "BridgItMcts", 1, 0L, 0);
+    t.checkConstructorException(new IllegalArgumentException("MCTS needs at least one thread."),
+        "BridgItMcts", 0, 10L, 0);
+  }
+
+  void testComputerAnswersClick(Tester t) {
+    BridgItGame game = new BridgItGame(7, new BridgItMcts(2, 0, 500), BridgItBoard.MAGENTA);
+    t.checkExpect(game.board.emptyCount(), 13);
+
+    // The human claims (1, 1) and the computer replies right away
+    game.onMouseClicked(new Posn(60, 60));
+    t.checkExpect(game.board.colorAt(1, 1), Color.PINK);
+    t.checkExpect(game.board.emptyCount(), 11);
+    t.checkExpect(game.isPlayerOneTurn, true);
+  }
+
+  void testComputerOpensAsPink(Tester t) {
+    BridgItGame game = new BridgItGame(7, new BridgItMcts(2, 0, 500), BridgItBoard.PINK);
+    t.checkExpect(game.board.emptyCount(), 12);
+    t.checkExpect(game.isPlayerOneTurn, false);
+  }
+}
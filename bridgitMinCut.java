@@ -0,0 +1,399 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import javalib.worldimages.*;
+import tester.*;
+
+// The minimum vertex cut between one player's start and finish nodes in a
+// ShannonGraph: the fewest empty nodes the opponent has to claim to cut the
+// player off. Found as a maximum flow where each node is an edge of capacity 1
+// if empty, unlimited if the player owns it, and 0 otherwise.
+//
+// The flow is kept between moves. When the player claims a node its capacity
+// only grows, so the old flow is still valid and is simply augmented. When the
+// opponent claims it, the one unit through it (if any) is traced back to the
+// source and on to the sink and removed, and the flow is augmented from there.
+// Either way a move costs a few augmenting searches, not a whole max-flow.
+class ShannonMinCut {
+  static final int UNLIMITED = Integer.MAX_VALUE;
+
+  final ShannonGraph graph;
+  final int player;
+  final int[] reverse; // reverse[a] is the arc going back along arc a
+  final int[] capacity; // Capacity of each node: 0, 1 or UNLIMITED
+  final int[] nodeFlow; // Units passing through each node
+  final int[] arcFlow; // Units along each arc, from its node to its target
+  final int[] sourceFlow; // Units entering each start node from the source
+  final int[] sinkFlow; // Units leaving each finish node for the sink
+  int flow; // Total units, which is the size of the minimum cut
+  int empty; // Nodes of capacity 1, which bounds any finite cut
+  boolean connected; // Has the player joined their ends, making the cut infinite?
+
+  // Search space: state 2v is the entry of node v, 2v + 1 its exit
+  final int[] queue;
+  final int[] parent; // The state each state was reached from, or -1 from the source
+  final int[] parentArc; // The arc used to reach each state, or -1 inside a node
+  final int[] seen; // Search number that last reached each state
+  int search;
+  final long[] cut; // The nodes of a minimum cut, as a bitboard
+
+  // Constructor computing the cut for the given owners from scratch
+  ShannonMinCut(ShannonGraph graph, IShannonOwners owners, int player) {
+    this.graph = graph;
+    this.player = player;
+    this.reverse = new int[graph.targets.length];
+    for (int v = 0; v < graph.nodes; v++) {
+      for (int a = graph.offsets[v]; a < graph.offsets[v + 1]; a++) {
+        int u = graph.targets[a];
+        for (int b = graph.offsets[u]; b < graph.offsets[u + 1]; b++) {
+          if (graph.targets[b] == v) {
+            this.reverse[a] = b;
+          }
+        }
+      }
+    }
+
+    this.capacity = new int[graph.nodes];
+    for (int v = 0; v < graph.nodes; v++) {
+      int owner = owners.owner(v);
+      this.capacity[v] = owner == ShannonGraph.EMPTY ? 1 : owner == player ? UNLIMITED : 0;
+      if (owner == ShannonGraph.EMPTY) {
+        this.empty++;
+      }
+    }
+    this.nodeFlow = new int[graph.nodes];
+    this.arcFlow = new int[graph.targets.length];
+    this.sourceFlow = new int[graph.nodes];
+    this.sinkFlow = new int[graph.nodes];
+    this.queue = new int[2 * graph.nodes];
+    this.parent = new int[2 * graph.nodes];
+    this.parentArc = new int[2 * graph.nodes];
+    this.seen = new int[2 * graph.nodes];
+    this.cut = new long[(graph.nodes + 63) / 64];
+    this.maximize();
+  }
+
+  // EFFECT: updates the flow and cut after the empty node was claimed by owner
+  void claim(int node, int owner) {
+    if (this.capacity[node] != 1) {
+      throw new IllegalArgumentException("Node " + node + " is not empty.");
+    }
+    this.empty--;
+    if (owner == this.player) {
+      this.capacity[node] = UNLIMITED;
+    } else {
+      this.capacity[node] = 0;
+      if (this.nodeFlow[node] > 0) {
+        this.cancel(node);
+      }
+    }
+    this.maximize();
+  }
+
+  // EFFECT: removes the one unit of flow through a node of capacity 1
+  void cancel(int node) {
+    this.nodeFlow[node]--;
+
+    // Back to the source: take one unit off an arc into each node on the way.
+    // Coming back around to the node means the unit only went in a circle.
+    int v = node;
+    while (this.sourceFlow[v] == 0) {
+      int a = this.graph.offsets[v];
+      while (this.arcFlow[this.reverse[a]] == 0) {
+        a++;
+      }
+      this.arcFlow[this.reverse[a]]--;
+      v = this.graph.targets[a];
+      if (v == node) {
+        return;
+      }
+      this.nodeFlow[v]--;
+    }
+    this.sourceFlow[v]--;
+    this.flow--;
+
+    // On to the sink: take one unit off an arc out of each node on the way
+    v = node;
+    while (this.sinkFlow[v] == 0) {
+      int a = this.graph.offsets[v];
+      while (this.arcFlow[a] == 0) {
+        a++;
+      }
+      this.arcFlow[a]--;
+      v = this.graph.targets[a];
+      this.nodeFlow[v]--;
+    }
+    this.sinkFlow[v]--;
+  }
+
+  // EFFECT: augments the flow until it is maximum, then records the cut
+  void maximize() {
+    while (!this.connected && this.augment()) {
+      // A finite cut can never need more than every empty node
+      if (this.flow > this.empty) {
+        this.connected = true;
+      }
+    }
+
+    Arrays.fill(this.cut, 0L);
+    if (this.connected) {
+      return;
+    }
+    // The last search failed, so it reached exactly the source side of a cut
+    for (int v = 0; v < this.graph.nodes; v++) {
+      if (this.capacity[v] == 1 && this.seen[2 * v] == this.search
+          && this.seen[2 * v + 1] != this.search) {
+        this.cut[v >>> 6] |= 1L << v;
+      }
+    }
+  }
+
+  // EFFECT: pushes one unit along a shortest augmenting path, if there is one
+  // Returns false once no path is left
+  boolean augment() {
+    this.search++;
+    int startBit = ShannonGraph.startBit(this.player);
+    int finishBit = ShannonGraph.finishBit(this.player);
+    int head = 0;
+    int tail = 0;
+    for (int v = 0; v < this.graph.nodes; v++) {
+      if ((this.graph.ends[v] & startBit) != 0 && this.capacity[v] > 0) {
+        this.reach(2 * v, -1, -1);
+        this.queue[tail++] = 2 * v;
+      }
+    }
+
+    while (head < tail) {
+      int state = this.queue[head++];
+      int v = state >> 1;
+      if ((state & 1) == 0) {
+        // Entry of v: through the node, or back against a unit that came in
+        if (this.nodeFlow[v] < this.capacity[v] && this.seen[state + 1] != this.search) {
+          this.reach(state + 1, state, -1);
+          this.queue[tail++] = state + 1;
+        }
+        for (int a = this.graph.offsets[v]; a < this.graph.offsets[v + 1]; a++) {
+          int back = 2 * this.graph.targets[a] + 1;
+          if (this.arcFlow[this.reverse[a]] > 0 && this.seen[back] != this.search) {
+            this.reach(back, state, this.reverse[a]);
+            this.queue[tail++] = back;
+          }
+        }
+      } else {
+        // Exit of v: to the sink, back through the node, or on to a neighbor
+        if ((this.graph.ends[v] & finishBit) != 0) {
+          this.push(state);
+          return true;
+        }
+        if (this.nodeFlow[v] > 0 && this.seen[state - 1] != this.search) {
+          this.reach(state - 1, state, -1);
+          this.queue[tail++] = state - 1;
+        }
+        for (int a = this.graph.offsets[v]; a < this.graph.offsets[v + 1]; a++) {
+          int u = this.graph.targets[a];
+          if (this.capacity[u] > 0 && this.seen[2 * u] != this.search) {
+            this.reach(2 * u, state, a);
+            this.queue[tail++] = 2 * u;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  // EFFECT: marks the state as reached from parent through arc
+  void reach(int state, int parent, int arc) {
+    this.seen[state] = this.search;
+    this.parent[state] = parent;
+    this.parentArc[state] = arc;
+  }
+
+  // EFFECT: pushes one unit along the path found to the exit state of a finish
+  // node. A path with no limited step means the player owns a whole path.
+  void push(int last) {
+    boolean limited = false;
+    for (int state = last; this.parent[state] >= 0; state = this.parent[state]) {
+      int from = this.parent[state];
+      if (this.parentArc[state] < 0) {
+        limited |= (from & 1) == 1 || this.capacity[state >> 1] != UNLIMITED;
+      } else if ((from & 1) == 0) {
+        limited = true;
+      }
+    }
+    if (!limited) {
+      this.connected = true;
+      return;
+    }
+
+    this.sinkFlow[last >> 1]++;
+    int state = last;
+    for (; this.parent[state] >= 0; state = this.parent[state]) {
+      int from = this.parent[state];
+      int a = this.parentArc[state];
+      if (a < 0) {
+        this.nodeFlow[state >> 1] += (from & 1) == 0 ? 1 : -1;
+      } else if ((from & 1) == 0) {
+        this.arcFlow[a]--; // Back against the unit on arc a
+      } else {
+        this.arcFlow[a]++;
+      }
+    }
+    this.sourceFlow[state >> 1]++;
+    this.flow++;
+  }
+
+  // Is the node in the minimum cut?
+  boolean isCut(int node) {
+    return (this.cut[node >>> 6] & 1L << node) != 0;
+  }
+}
+
+// Examples and tests for the minimum cut overlay
+class ExamplesBridgItMinCut {
+  // A fresh cut of the board for the player
+  ShannonMinCut fresh(BridgItBoard board, int player) {
+    return new ShannonMinCut(ShannonGraph.bridgIt(board.n), board, player);
+  }
+
+  void testEmptyBoard(Tester t) {
+    // Each row of dots is a separate path, and one cell per row cuts them all
+    for (int n = 3; n <= 21; n += 2) {
+      BridgItBoard board = new BridgItBoard(n);
+      t.checkExpect(this.fresh(board, BridgItBoard.PINK).flow, (n - 1) / 2);
+      t.checkExpect(this.fresh(board, BridgItBoard.MAGENTA).flow, (n - 1) / 2);
+    }
+  }
+
+  void testIncrementalMatchesFresh(Tester t) {
+    SplittableRandom rand = new SplittableRandom(23);
+    for (int n = 5; n <= 15; n += 2) {
+      BridgItBoard board = new BridgItBoard(n);
+      ShannonMinCut[] cuts = {null, this.fresh(board, BridgItBoard.PINK),
+          this.fresh(board, BridgItBoard.MAGENTA)};
+      int[] moves = new int[n * n];
+      int toMove = BridgItBoard.PINK;
+      while (board.winner() == BridgItBoard.EMPTY) {
+        int cell = moves[rand.nextInt(board.legalMoves(moves))];
+        board.setOwner(cell, toMove);
+        for (int player = BridgItBoard.PINK; player <= BridgItBoard.MAGENTA; player++) {
+          cuts[player].claim(cell, toMove);
+          ShannonMinCut fresh = this.fresh(board, player);
+          t.checkExpect(cuts[player].connected, fresh.connected);
+          if (!fresh.connected) {
+            t.checkExpect(cuts[player].flow, fresh.flow);
+          }
+          this.checkSeparates(t, board, cuts[player]);
+        }
+        toMove = BridgItBoard.other(toMove);
+      }
+      t.checkExpect(cuts[board.winner()].connected, true);
+    }
+  }
+
+  // Checks that the cut has one node per unit of flow, and that claiming all of
+  // them for the opponent cuts the player off
+  void checkSeparates(Tester t, BridgItBoard board, ShannonMinCut cut) {
+    if (cut.connected) {
+      return;
+    }
+    BridgItBoard blocked = board.copy();
+    int size = 0;
+    for (int cell = 0; cell < board.n * board.n; cell++) {
+      if (cut.isCut(cell)) {
+        t.checkExpect(board.isPlayable(cell), true);
+        blocked.setOwner(cell, BridgItBoard.other(cut.player));
+        size++;
+      }
+    }
+    t.checkExpect(size, cut.flow);
+    t.checkExpect(this.fresh(blocked, cut.player).flow, 0);
+  }
+
+  void testOwnedPathIsConnected(Tester t) {
+    BridgItBoard board = new BridgItBoard(5);
+    ShannonMinCut cut = this.fresh(board, BridgItBoard.PINK);
+    cut.claim(board.index(1, 1), BridgItBoard.PINK);
+    t.checkExpect(cut.connected, false);
+    cut.claim(board.index(1, 3), BridgItBoard.PINK);
+    t.checkExpect(cut.connected, true);
+    t.checkExpect(cut.cut, new long[1]);
+    t.checkException(new IllegalArgumentException("Node 6 is not empty."), cut, "claim", 6,
+        BridgItBoard.MAGENTA);
+  }
+
+  // The image drawn for every cell of the game
+  WorldImage[] images(BridgItGame game) {
+    WorldImage[] images = new WorldImage[game.n * game.n];
+    for (int cell = 0; cell < images.length; cell++) {
+      images[cell] = game.drawCell(cell / game.n, cell % game.n);
+    }
+    return images;
+  }
+
+  // EFFECT: plays the move, and checks that the next frame redraws exactly the
+  // cells whose image changed on top of expected
+  void playAndDraw(Tester t, BridgItGame game, int cell, javalib.impworld.WorldScene expected) {
+    WorldImage[] before = this.images(game);
+    game.playMove(cell);
+    WorldImage[] after = this.images(game);
+    for (int c = 0; c < after.length; c++) {
+      if (before[c] != after[c]) {
+        expected.placeImageXY(after[c], c % game.n * 40 + 20, c / game.n * 40 + 20);
+      }
+    }
+    t.checkExpect(game.makeScene(), expected);
+  }
+
+  void testOverlay(Tester t) {
+    BridgItGame game = new BridgItGame(7);
+    game.onKeyEvent("c");
+    t.checkExpect(game.minCuts != null, true);
+    javalib.impworld.WorldScene expected = new javalib.impworld.WorldScene(280, 280);
+    WorldImage[] images = this.images(game);
+    for (int cell = 0; cell < images.length; cell++) {
+      expected.placeImageXY(images[cell], cell % 7 * 40 + 20, cell / 7 * 40 + 20);
+    }
+    t.checkExpect(game.makeScene(), expected);
+
+    // The marks follow the moves, and switch color with the turn
+    this.playAndDraw(t, game, game.board.index(3, 3), expected); // Pink
+    this.playAndDraw(t, game, game.board.index(1, 1), expected); // Magenta
+    this.playAndDraw(t, game, game.board.index(3, 1), expected); // Pink
+
+    // Magenta must block Pink's cut, which is marked in Magenta's color
+    t.checkExpect(game.criticalCells(), game.minCuts[BridgItBoard.PINK].cut);
+    int marked = 0;
+    for (int row = 0; row < game.n; row++) {
+      for (int col = 0; col < game.n; col++) {
+        int cell = game.board.index(row, col);
+        if (game.minCuts[BridgItBoard.PINK].isCut(cell)) {
+          t.checkExpect(game.drawCell(row, col) == game.blockSprites[BridgItBoard.MAGENTA], true);
+          marked++;
+        } else {
+          t.checkExpect(game.drawCell(row, col) == game.sprites[game.board.owner(cell)], true);
+        }
+      }
+    }
+    t.checkExpect(marked, game.minCuts[BridgItBoard.PINK].flow);
+
+    // Undo rebuilds the cuts, and "c" turns the overlay off again
+    game.undo();
+    t.checkExpect(game.minCuts[BridgItBoard.PINK].flow,
+        this.fresh(game.board, BridgItBoard.PINK).flow);
+    game.onKeyEvent("c");
+    t.checkExpect(game.criticalCells(), null);
+    t.checkExpect(game.drawCell(3, 1) == game.sprites[BridgItBoard.EMPTY], true);
+  }
+
+  void testLargeBoard(Tester t) {
+    // Every move on a large board only needs a few augmenting searches
+    BridgItGame game = new BridgItGame(101);
+    game.onKeyEvent("c");
+    SplittableRandom rand = new SplittableRandom(29);
+    int[] moves = new int[101 * 101];
+    for (int i = 0; i < 200; i++) {
+      game.playMove(moves[rand.nextInt(game.board.legalMoves(moves))]);
+    }
+    t.checkExpect(game.minCuts[BridgItBoard.MAGENTA].flow,
+        this.fresh(game.board, BridgItBoard.MAGENTA).flow);
+  }
+}
@@ -0,0 +1,421 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import tester.*;
+
+// One player's side of a BridgIt board as a graph. The player's dots are the
+// nodes, and every white interior cell is an edge between the two dots it
+// bridges for that player. All the dots of the player's first edge are one node,
+// and so are all the dots of the second edge, so the player wins by joining
+// START to FINISH. Magenta's graph is Pink's graph of the transposed board.
+class BridgItDotGraph {
+  static final int START = 0; // Node of the whole left (Pink) or top (Magenta) edge
+  static final int FINISH = 1; // Node of the whole right (Pink) or bottom (Magenta) edge
+
+  final int n; // Size of the grid
+  final int player; // The player whose bridges the edges are
+  final int nodes; // Number of graph nodes
+  final int[] from; // First node of each cell's edge, or -1 if the cell is not playable
+  final int[] to; // Second node of each cell's edge, or -1 if the cell is not playable
+  final int[][] incident; // Cells whose edge touches each node
+
+  private static final ConcurrentHashMap<Integer, BridgItDotGraph> CACHE = new ConcurrentHashMap<>();
+
+  // Constructor
+  private BridgItDotGraph(int n, int player) {
+    this.n = n;
+    this.player = player;
+    int m = (n - 1) / 2; // Rows of dots; each row has m + 1 dots
+    this.nodes = 2 + m * (m - 1);
+    this.from = new int[n * n];
+    this.to = new int[n * n];
+    Arrays.fill(this.from, -1);
+    Arrays.fill(this.to, -1);
+
+    int[] degree = new int[this.nodes];
+    for (int row = 1; row < n - 1; row++) {
+      for (int col = 1; col < n - 1; col++) {
+        if (row % 2 != col % 2) {
+          continue;
+        }
+        // Magenta's edges are Pink's edges with rows and columns swapped
+        int cell = player == BridgItBoard.PINK ? row * n + col : col * n + row;
+        if (row % 2 == 1) {
+          // Pink crosses the cell at (row, col) left to right
+          this.from[cell] = this.node(m, (row - 1) / 2, (col - 1) / 2);
+          this.to[cell] = this.node(m, (row - 1) / 2, (col + 1) / 2);
+        } else {
+          // Pink crosses the cell at (row, col) top to bottom
+          this.from[cell] = this.node(m, row / 2 - 1, col / 2);
+          this.to[cell] = this.node(m, row / 2, col / 2);
+        }
+        degree[this.from[cell]]++;
+        degree[this.to[cell]]++;
+      }
+    }
+
+    this.incident = new int[this.nodes][];
+    for (int v = 0; v < this.nodes; v++) {
+      this.incident[v] = new int[degree[v]];
+      degree[v] = 0;
+    }
+    for (int cell = 0; cell < n * n; cell++) {
+      if (this.from[cell] >= 0) {
+        this.incident[this.from[cell]][degree[this.from[cell]]++] = cell;
+        this.incident[this.to[cell]][degree[this.to[cell]]++] = cell;
+      }
+    }
+  }
+
+  // Returns the shared graph of the given player for boards of size n
+  static BridgItDotGraph of(int n, int player) {
+    if (n < 3 || n % 2 == 0) {
+      throw new IllegalArgumentException("Board size must be an odd number >= 3.");
+    }
+    return CACHE.computeIfAbsent(n * 4 + player, key -> new BridgItDotGraph(n, player));
+  }
+
+  // The node of the dot in the given dot row and column of Pink's graph
+  int node(int m, int dotRow, int dotCol) {
+    if (dotCol == 0) {
+      return START;
+    } else if (dotCol == m) {
+      return FINISH;
+    }
+    return 2 + dotRow * (m - 1) + dotCol - 1;
+  }
+
+  // The node each node is merged into by contracting the player's cells
+  int[] contract(BridgItBoard board) {
+    int[] root = new int[this.nodes];
+    for (int v = 0; v < this.nodes; v++) {
+      root[v] = v;
+    }
+    for (int cell = 0; cell < this.n * this.n; cell++) {
+      if (this.from[cell] >= 0 && board.owner(cell) == this.player) {
+        root[this.find(root, this.from[cell])] = this.find(root, this.to[cell]);
+      }
+    }
+    for (int v = 0; v < this.nodes; v++) {
+      root[v] = this.find(root, v);
+    }
+    return root;
+  }
+
+  // The number of distinct nodes in a contraction
+  int components(int[] root) {
+    int count = 0;
+    for (int v = 0; v < this.nodes; v++) {
+      if (root[v] == v) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  // The root of v's set, halving the path on the way
+  int find(int[] root, int v) {
+    while (root[v] != v) {
+      root[v] = root[root[v]];
+      v = root[v];
+    }
+    return v;
+  }
+}
+
+// Pink wins BridgIt by a fixed pairing of cells (Gross's strategy). After
+// Pink's opening move, every other playable cell has a partner, and Pink
+// answers Magenta's claim of a cell by claiming its partner.
+//
+// The pairing is built on Magenta's dots. Every cell is an edge between two
+// of them, and every dot strictly between Magenta's top and bottom edges is
+// given exactly two of its edges as a pair. Edges that reach the top or
+// bottom edge go to their inner dot, and the opening is the one edge left.
+// Walking a Magenta path down from the top, the first edge belongs to the dot
+// it reaches; that dot's other edge is Pink's, so the path must leave it by an
+// edge of the next dot, and so on. The last edge reaches the bottom and would
+// have to belong to the dot before it, so no Magenta path gets through.
+//
+// Dot (i, j) is in dot row i (0 on top, m at the bottom) and column j, for
+// m = (n - 1) / 2. In each column one dot takes both of its vertical edges;
+// the dots above it take the edge above and those below take the edge below.
+// Every other dot also takes the horizontal edge toward the double dot of its
+// row. The middle two columns share a row of double dots, and the horizontal
+// edge between them is the opening.
+class BridgItPairing {
+  final int n; // Size of the grid
+  final int opening; // Pink's first move
+  final int[] partner; // The cell paired with each cell, or -1
+
+  private static final ConcurrentHashMap<Integer, BridgItPairing> CACHE = new ConcurrentHashMap<>();
+
+  // Constructor
+  private BridgItPairing(int n) {
+    this.n = n;
+    this.partner = new int[n * n];
+    Arrays.fill(this.partner, -1);
+    int m = (n - 1) / 2;
+    if (m == 1) {
+      this.opening = this.vertical(0, 0); // The only cell
+      return;
+    }
+
+    int c = (m - 1) / 2; // Columns c and c + 1 share their row of double dots
+    this.opening = this.horizontal(c + 1, c);
+    for (int i = 1; i < m; i++) {
+      int left = i <= c ? i - 1 : i == c + 1 ? c : i; // The double dots of row i
+      int right = i == c + 1 ? c + 1 : left;
+      for (int j = 0; j < m; j++) {
+        int pivot = j <= c ? j + 1 : j; // Row of column j's double dot
+        int first = i <= pivot ? this.vertical(i - 1, j) : this.vertical(i, j);
+        int second;
+        if (i == pivot) {
+          second = this.vertical(i, j);
+        } else if (j < left) {
+          second = this.horizontal(i, j);
+        } else {
+          second = this.horizontal(i, j - 1);
+        }
+        this.partner[first] = second;
+        this.partner[second] = first;
+      }
+    }
+  }
+
+  // Returns the shared pairing for boards of size n
+  static BridgItPairing of(int n) {
+    if (n < 3 || n % 2 == 0) {
+      throw new IllegalArgumentException("Board size must be an odd number >= 3.");
+    }
+    return CACHE.computeIfAbsent(n, BridgItPairing::new);
+  }
+
+  // The cell between Magenta's dots (i, j) and (i + 1, j)
+  int vertical(int i, int j) {
+    return (2 * i + 1) * this.n + 2 * j + 1;
+  }
+
+  // The cell between Magenta's dots (i, j) and (i, j + 1)
+  int horizontal(int i, int j) {
+    return 2 * i * this.n + 2 * j + 2;
+  }
+}
+
+// Plays Pink perfectly with the pairing of BridgItPairing. A strategy follows
+// one game: it remembers which cells were taken after its own last move, finds
+// Magenta's reply from the few words of the bitboards that changed, and answers
+// it with partner[cut]. It keeps one bitboard per game and shares the table,
+// so a server can run one for each of many boards.
+//
+// If the board changes in some other way (an undo, or a position it did not
+// play from), the strategy checks the pairs once and mends the one Magenta has
+// broken, if any. It falls back to the greedy policy if Pink has lost the
+// guarantee, and always uses it when asked to play Magenta.
+class BridgItPairingStrategy implements IBridgItPolicy {
+  final BridgItPairing pairing;
+  final BridgItGreedyPolicy fallback;
+  long[] taken; // Cells taken right after this strategy's last move, or null
+
+  // Constructor, with the seed of the fallback policy
+  BridgItPairingStrategy(int n, long seed) {
+    this.pairing = BridgItPairing.of(n);
+    this.fallback = new BridgItGreedyPolicy(seed);
+    this.taken = null;
+  }
+
+  public int chooseMove(BridgItBoard board, int player) {
+    if (player != BridgItBoard.PINK || board.n != this.pairing.n) {
+      return this.fallback.chooseMove(board, player);
+    }
+
+    int move = this.taken == null ? -1 : this.answer(board);
+    if (move < 0) {
+      move = this.resume(board);
+    }
+    if (move < 0) {
+      move = this.fallback.chooseMove(board, player);
+    }
+
+    if (this.taken == null) {
+      this.taken = new long[board.masks.words];
+    }
+    for (int i = 0; i < this.taken.length; i++) {
+      this.taken[i] = board.pink[i] | board.magenta[i];
+    }
+    BridgItMasks.set(this.taken, move);
+    return move;
+  }
+
+  // Answers the one cell Magenta claimed since this strategy's last move, or
+  // returns -1 if anything else has changed
+  int answer(BridgItBoard board) {
+    int cut = -1;
+    for (int i = 0; i < this.taken.length; i++) {
+      long changed = (board.pink[i] | board.magenta[i]) ^ this.taken[i];
+      if (changed == 0L) {
+        continue;
+      }
+      if (cut >= 0 || (changed & (changed - 1)) != 0L || (changed & this.taken[i]) != 0L) {
+        return -1;
+      }
+      cut = (i << 6) + Long.numberOfTrailingZeros(changed);
+    }
+    if (cut < 0 || board.owner(cut) != BridgItBoard.MAGENTA) {
+      return -1;
+    }
+
+    int reply = this.pairing.partner[cut];
+    if (reply < 0 || board.owner(reply) == BridgItBoard.PINK) {
+      return this.spare(board); // Nothing to answer, so any cell will do
+    }
+    return board.owner(reply) == BridgItBoard.EMPTY ? reply : -1;
+  }
+
+  // Finds a move from a position this strategy did not follow: the opening, or
+  // the partner of the one cell Magenta holds without Pink holding its pair.
+  // Returns -1 if the pairs no longer protect Pink.
+  int resume(BridgItBoard board) {
+    int[] partner = this.pairing.partner;
+    int repair = -1;
+    for (int i = 0; i < board.magenta.length; i++) {
+      long cells = board.magenta[i] & board.masks.playable[i];
+      while (cells != 0L) {
+        int cell = (i << 6) + Long.numberOfTrailingZeros(cells);
+        cells &= cells - 1;
+        int other = partner[cell];
+        if (other < 0 || board.owner(other) == BridgItBoard.MAGENTA) {
+          return -1; // Magenta holds the opening or a whole pair
+        }
+        if (board.owner(other) == BridgItBoard.EMPTY) {
+          if (repair >= 0) {
+            return -1; // Two pairs to mend in one move
+          }
+          repair = other;
+        }
+      }
+    }
+
+    int opening = this.pairing.opening;
+    if (board.owner(opening) == BridgItBoard.EMPTY) {
+      return repair < 0 ? opening : -1;
+    }
+    return repair >= 0 ? repair : this.spare(board);
+  }
+
+  // Some cell that can still be claimed, or -1 if there is none
+  int spare(BridgItBoard board) {
+    for (int i = 0; i < board.pink.length; i++) {
+      long free = board.masks.playable[i] & ~(board.pink[i] | board.magenta[i]);
+      if (free != 0L) {
+        return (i << 6) + Long.numberOfTrailingZeros(free);
+      }
+    }
+    return -1;
+  }
+}
+
+// Examples and tests for the pairing strategy
+class ExamplesBridgItPairing {
+  // EFFECT: plays every Magenta reply against the strategy from this position,
+  // and checks that Pink wins them all. Returns the number of games played.
+  int allGames(Tester t, BridgItBoard board, BridgItPairingStrategy pink) {
+    int move = pink.chooseMove(board, BridgItBoard.PINK);
+    t.checkExpect(board.owner(move), BridgItBoard.EMPTY);
+    board.setOwner(move, BridgItBoard.PINK);
+    if (board.hasConnection(BridgItBoard.PINK)) {
+      return 1;
+    }
+    if (board.emptyCount() == 0) {
+      t.checkExpect(board.winner(), BridgItBoard.PINK);
+      return 1;
+    }
+
+    int games = 0;
+    int[] moves = new int[board.masks.cells];
+    int count = board.legalMoves(moves);
+    for (int i = 0; i < count; i++) {
+      BridgItBoard next = board.copy();
+      next.setOwner(moves[i], BridgItBoard.MAGENTA);
+      t.checkExpect(next.hasConnection(BridgItBoard.MAGENTA), false);
+
+      // Each line gets its own strategy following it from the same history
+      BridgItPairingStrategy copy = new BridgItPairingStrategy(board.n, 0L);
+      copy.taken = pink.taken.clone();
+      games += this.allGames(t, next, copy);
+    }
+    return games;
+  }
+
+  void testWinsEveryGame(Tester t) {
+    for (int n = 3; n <= 7; n += 2) {
+      int games = this.allGames(t, new BridgItBoard(n), new BridgItPairingStrategy(n, 0L));
+      t.checkExpect(games > 0, true);
+    }
+  }
+
+  void testPairsCoverBoard(Tester t) {
+    for (int n = 3; n <= 31; n += 2) {
+      BridgItPairing pairing = BridgItPairing.of(n);
+      BridgItBoard board = new BridgItBoard(n);
+      t.checkExpect(board.isPlayable(pairing.opening), true);
+      t.checkExpect(pairing.partner[pairing.opening], -1);
+
+      int[] moves = new int[n * n];
+      int count = board.legalMoves(moves);
+      int[] pairs = new int[n * n]; // Pairs held by each Magenta dot
+      for (int i = 0; i < count; i++) {
+        int cell = moves[i];
+        int other = pairing.partner[cell];
+        if (cell == pairing.opening) {
+          continue;
+        }
+        t.checkExpect(other >= 0 && board.isPlayable(other), true);
+        t.checkExpect(pairing.partner[other], cell);
+        // The two cells meet at a Magenta dot (even row, odd column) that is
+        // not on the top or bottom edge
+        int row = cell / n;
+        int col = cell % n;
+        int dot = row % 2 == 1
+            ? (other / n < row ? row - 1 : row + 1) * n + col
+            : row * n + (other % n < col ? col - 1 : col + 1);
+        t.checkExpect(Math.abs(other / n - dot / n) + Math.abs(other % n - dot % n), 1);
+        t.checkExpect(dot / n > 0 && dot / n < n - 1, true);
+        pairs[dot]++;
+      }
+      for (int row = 2; row < n - 1; row += 2) {
+        for (int col = 1; col < n - 1; col += 2) {
+          t.checkExpect(pairs[row * n + col], 2); // Both cells counted once each
+        }
+      }
+    }
+    t.checkConstructorException(
+        new IllegalArgumentException("Board size must be an odd number >= 3."),
+        "BridgItPairingStrategy", 8, 0L);
+  }
+
+  void testBeatsGreedyOnLargeBoards(Tester t) {
+    BridgItTournament tournament = new BridgItTournament(15,
+        seed -> new BridgItPairingStrategy(15, seed), seed -> new BridgItGreedyPolicy(seed), 5);
+    BridgItTournamentResult result = tournament.run(20);
+    t.checkExpect(result.games, 20);
+    t.checkExpect(result.aGamesAsPink, 10);
+    t.checkExpect(result.aWinsAsPink, result.aGamesAsPink); // Every game where the strategy is Pink
+  }
+
+  void testResumesAfterUndo(Tester t) {
+    BridgItGame game = new BridgItGame(9, new BridgItPairingStrategy(9, 0L), BridgItBoard.PINK);
+    int[] moves = new int[81];
+    game.board.legalMoves(moves);
+    game.playMove(moves[0]);
+    game.computerMove();
+    game.onKeyEvent("u");
+    t.checkExpect(game.board.emptyCount(), 24); // Only the opening is left
+
+    // Play the rest of the game with Magenta always taking the first free cell
+    while (!game.gameOver) {
+      game.board.legalMoves(moves);
+      game.playMove(moves[0]);
+      game.computerMove();
+    }
+    t.checkExpect(game.winner, BridgItBoard.PINK);
+  }
+}
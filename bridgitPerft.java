@@ -0,0 +1,292 @@
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import tester.*;
+
+// Counts from a perft run
+class BridgItPerftResult {
+  long leaves; // Move sequences of the full depth that end with nobody connected
+  long pinkWins; // Sequences that end early, or at the full depth, with Pink connected
+  long magentaWins; // Sequences that end the same way with Magenta connected
+
+  // EFFECT: adds the counts of other to these
+  void add(BridgItPerftResult other) {
+    this.leaves += other.leaves;
+    this.pinkWins += other.pinkWins;
+    this.magentaWins += other.magentaWins;
+  }
+
+  // EFFECT: counts one finished game won by winner
+  void win(int winner) {
+    if (winner == BridgItBoard.PINK) {
+      this.pinkWins++;
+    } else {
+      this.magentaWins++;
+    }
+  }
+
+  // Every sequence counted
+  long sequences() {
+    return this.leaves + this.pinkWins + this.magentaWins;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof BridgItPerftResult)) {
+      return false;
+    }
+    BridgItPerftResult that = (BridgItPerftResult) other;
+    return this.leaves == that.leaves && this.pinkWins == that.pinkWins
+        && this.magentaWins == that.magentaWins;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(this.leaves) * 31 * 31 + Long.hashCode(this.pinkWins) * 31
+        + Long.hashCode(this.magentaWins);
+  }
+
+  @Override
+  public String toString() {
+    return "leaves: " + this.leaves + ", Pink wins: " + this.pinkWins
+        + ", Magenta wins: " + this.magentaWins;
+  }
+}
+
+// A position and a remaining depth, as a key for perft deduplication
+class BridgItPerftKey {
+  final long[] pink;
+  final long[] magenta;
+  final int depth;
+
+  // Constructor copying the board's bitboards
+  BridgItPerftKey(BridgItBoard board, int depth) {
+    this.pink = board.pink.clone();
+    this.magenta = board.magenta.clone();
+    this.depth = depth;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof BridgItPerftKey)) {
+      return false;
+    }
+    BridgItPerftKey that = (BridgItPerftKey) other;
+    return this.depth == that.depth && Arrays.equals(this.pink, that.pink)
+        && Arrays.equals(this.magenta, that.magenta);
+  }
+
+  @Override
+  public int hashCode() {
+    return (Arrays.hashCode(this.pink) * 31 + Arrays.hashCode(this.magenta)) * 31 + this.depth;
+  }
+}
+
+// Counts the subtree below one position, forking a task per move near the root
+class BridgItPerftTask extends RecursiveTask<BridgItPerftResult> {
+  private static final long serialVersionUID = 1L;
+
+  final BridgItPerft perft;
+  final BridgItBoard board; // Owned by this task
+  final int toMove;
+  final int depth; // Moves left to play
+  final int ply; // Moves played since the root
+
+  // Constructor
+  BridgItPerftTask(BridgItPerft perft, BridgItBoard board, int toMove, int depth, int ply) {
+    this.perft = perft;
+    this.board = board;
+    this.toMove = toMove;
+    this.depth = depth;
+    this.ply = ply;
+  }
+
+  @Override
+  protected BridgItPerftResult compute() {
+    BridgItConnectivity connectivity = new BridgItConnectivity(this.board);
+    if (this.ply >= this.perft.splitPlies || this.depth == 0
+        || connectivity.winner() != BridgItBoard.EMPTY) {
+      return this.perft.count(this.board, connectivity, this.toMove, this.depth);
+    }
+
+    int[] moves = new int[this.board.masks.cells];
+    int count = this.board.legalMoves(moves);
+    ArrayList<BridgItPerftTask> tasks = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      BridgItBoard next = this.board.copy();
+      next.setOwner(moves[i], this.toMove);
+      tasks.add(new BridgItPerftTask(this.perft, next, BridgItBoard.other(this.toMove),
+          this.depth - 1, this.ply + 1));
+    }
+    BridgItPerftResult result = new BridgItPerftResult();
+    for (BridgItPerftTask task : invokeAll(tasks)) {
+      result.add(task.join());
+    }
+    return result;
+  }
+}
+
+// Counts every legal move sequence to a fixed depth from a BridgIt position, with
+// the rules of BridgItGame: any empty white interior cell can be claimed, and the
+// game stops as soon as a player connects their edges. Sequences that end in a
+// win before the full depth are counted once, as wins.
+//
+// The first few plies are split into fork/join tasks, and the rest of each
+// subtree is counted on one thread with claim and undo. With deduplication, the
+// counts below each position are shared through a concurrent table, since the
+// same position is reached by many move orders.
+class BridgItPerft {
+  final int splitPlies; // Plies from the root that are split into separate tasks
+  final ConcurrentHashMap<BridgItPerftKey, BridgItPerftResult> table; // null without dedup
+
+  // Constructor
+  BridgItPerft(int splitPlies, boolean dedupe) {
+    this.splitPlies = splitPlies;
+    this.table = dedupe ? new ConcurrentHashMap<>() : null;
+  }
+
+  // The counts to the given depth from the game's current position
+  BridgItPerftResult run(BridgItGame game, int depth, ForkJoinPool pool) {
+    if (depth < 0) {
+      throw new IllegalArgumentException("Depth must not be negative.");
+    }
+    return pool.invoke(new BridgItPerftTask(this, game.board.copy(), game.currentPlayer(), depth, 0));
+  }
+
+  // The counts to the given depth from the game's current position, on the
+  // common pool
+  BridgItPerftResult run(BridgItGame game, int depth) {
+    return this.run(game, depth, ForkJoinPool.commonPool());
+  }
+
+  // The counts below the position on one thread. The board and connectivity are
+  // changed while counting and restored before returning.
+  BridgItPerftResult count(BridgItBoard board, BridgItConnectivity connectivity, int toMove,
+      int depth) {
+    BridgItPerftResult result = new BridgItPerftResult();
+    this.countInto(board, connectivity, toMove, depth, new int[depth + 1][board.masks.cells], result);
+    return result;
+  }
+
+  // EFFECT: adds the counts below the position to result. moves[d] is the move
+  // list for positions with d moves left.
+  void countInto(BridgItBoard board, BridgItConnectivity connectivity, int toMove, int depth,
+      int[][] moves, BridgItPerftResult result) {
+    int winner = connectivity.winner();
+    if (winner != BridgItBoard.EMPTY) {
+      result.win(winner);
+      return;
+    }
+    if (depth == 0) {
+      result.leaves++;
+      return;
+    }
+
+    BridgItPerftKey key = null;
+    BridgItPerftResult below = result;
+    if (this.table != null && depth >= 2) {
+      key = new BridgItPerftKey(board, depth);
+      BridgItPerftResult known = this.table.get(key);
+      if (known != null) {
+        result.add(known);
+        return;
+      }
+      below = new BridgItPerftResult();
+    }
+
+    int[] list = moves[depth];
+    int count = board.legalMoves(list);
+    int next = BridgItBoard.other(toMove);
+    for (int i = 0; i < count; i++) {
+      board.setOwner(list[i], toMove);
+      connectivity.claim(board, list[i]);
+      this.countInto(board, connectivity, next, depth - 1, moves, below);
+      connectivity.undo();
+      board.setOwner(list[i], BridgItBoard.EMPTY);
+    }
+
+    if (key != null) {
+      this.table.putIfAbsent(key, below);
+      result.add(below);
+    }
+  }
+
+  // Runs perft from the starting position: java BridgItPerft n depth [dedupe]
+  public static void main(String[] args) {
+    if (args.length < 2) {
+      System.out.println("usage: BridgItPerft n depth [dedupe]");
+      return;
+    }
+    BridgItGame game = new BridgItGame(Integer.parseInt(args[0]));
+    int depth = Integer.parseInt(args[1]);
+    boolean dedupe = args.length > 2 && args[2].equals("dedupe");
+    long start = System.nanoTime();
+    BridgItPerftResult result = new BridgItPerft(2, dedupe).run(game, depth);
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.println(result);
+    System.out.printf("%d sequences in %.2f s, %.0f sequences/sec%n", result.sequences(), seconds,
+        result.sequences() / seconds);
+  }
+}
+
+// Examples and tests for perft
+class ExamplesBridgItPerft {
+  // The counts to depth from the game's position, by playing every move through
+  // the game itself and undoing it
+  BridgItPerftResult reference(BridgItGame game, int depth) {
+    BridgItPerftResult result = new BridgItPerftResult();
+    if (game.gameOver) {
+      result.win(game.winner);
+    } else if (depth == 0) {
+      result.leaves++;
+    } else {
+      for (int row = 0; row < game.n; row++) {
+        for (int col = 0; col < game.n; col++) {
+          int cell = game.board.index(row, col);
+          if (game.board.isPlayable(cell) && game.board.owner(cell) == BridgItBoard.EMPTY) {
+            game.playMove(cell);
+            result.add(this.reference(game, depth - 1));
+            game.undo();
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  void testFirstPlies(Tester t) {
+    BridgItGame game = new BridgItGame(5);
+    BridgItPerft perft = new BridgItPerft(1, false);
+    t.checkExpect(perft.run(game, 0).leaves, 1L);
+    t.checkExpect(perft.run(game, 1).leaves, 5L);
+    t.checkExpect(perft.run(game, 2).leaves, 20L);
+  }
+
+  void testMatchesGameRules(Tester t) {
+    for (int n = 3; n <= 7; n += 2) {
+      BridgItGame game = new BridgItGame(n);
+      int depth = Math.min(6, game.board.emptyCount());
+      BridgItPerftResult expected = this.reference(game, depth);
+      t.checkExpect(new BridgItPerft(2, false).run(game, depth), expected);
+      t.checkExpect(new BridgItPerft(3, true).run(game, depth), expected);
+    }
+  }
+
+  void testWholeGame(Tester t) {
+    // Every 5x5 game ends with exactly one winner, so no leaves remain at full depth
+    BridgItPerftResult result = new BridgItPerft(2, true).run(new BridgItGame(5), 5);
+    t.checkExpect(result.leaves, 0L);
+    t.checkExpect(result, this.reference(new BridgItGame(5), 5));
+  }
+
+  void testFromGamePosition(Tester t) {
+    BridgItGame game = new BridgItGame(7);
+    game.playMove(game.board.index(3, 3));
+    game.playMove(game.board.index(1, 1));
+    t.checkExpect(new BridgItPerft(2, true).run(game, 4), this.reference(game, 4));
+    t.checkException(new IllegalArgumentException("Depth must not be negative."),
+        new BridgItPerft(2, false), "run", game, -1);
+  }
+}
@@ -0,0 +1,481 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import tester.*;
+
+// A BridgIt position where exactly one move wins for the side to move
+class BridgItPuzzle {
+  final int n; // Size of the grid
+  final long pink; // Interior cells claimed by Pink, by interior index
+  final long magenta; // Interior cells claimed by Magenta, by interior index
+  final int toMove; // The player who has to find the move
+  final int answer; // Interior index of the only winning move
+  final int depth; // Search depth that proves the win; deeper puzzles are harder
+
+  // Constructor
+  BridgItPuzzle(int n, long pink, long magenta, int toMove, int answer, int depth) {
+    this.n = n;
+    this.pink = pink;
+    this.magenta = magenta;
+    this.toMove = toMove;
+    this.answer = answer;
+    this.depth = depth;
+  }
+
+  // The white interior cells of an n x n board, in the order of interior indices
+  // This is the order BridgItSolver numbers them in.
+  static int[] interiorCells(int n) {
+    BridgItBoard board = new BridgItBoard(n);
+    int[] moves = new int[n * n];
+    return java.util.Arrays.copyOf(moves, board.legalMoves(moves));
+  }
+
+  // The puzzle's position as a board
+  BridgItBoard board() {
+    BridgItBoard board = new BridgItBoard(this.n);
+    int[] cells = interiorCells(this.n);
+    for (int k = 0; k < cells.length; k++) {
+      if ((this.pink >>> k & 1L) != 0L) {
+        board.setOwner(cells[k], BridgItBoard.PINK);
+      } else if ((this.magenta >>> k & 1L) != 0L) {
+        board.setOwner(cells[k], BridgItBoard.MAGENTA);
+      }
+    }
+    return board;
+  }
+
+  // The board cell of the winning move
+  int answerCell() {
+    return interiorCells(this.n)[this.answer];
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof BridgItPuzzle)) {
+      return false;
+    }
+    BridgItPuzzle that = (BridgItPuzzle) other;
+    return this.n == that.n && this.pink == that.pink && this.magenta == that.magenta
+        && this.toMove == that.toMove && this.answer == that.answer && this.depth == that.depth;
+  }
+
+  @Override
+  public int hashCode() {
+    return (Long.hashCode(this.pink) * 31 + Long.hashCode(this.magenta)) * 31 + this.toMove;
+  }
+}
+
+// Writes puzzles in the compact puzzle file format. After a 4-byte magic number
+// and the board size, each puzzle takes 2 bytes plus two bit masks of just
+// enough bytes to cover the interior cells: 10 bytes a puzzle on a 9x9 board.
+//   byte 0: solution depth, with the top bit set when Magenta is to move
+//   byte 1: interior index of the winning move
+//   then Pink's and Magenta's claimed interior cells, least significant byte first
+class BridgItPuzzleWriter implements AutoCloseable {
+  static final int MAGIC = 0x42505A31; // "BPZ1"
+
+  final int n;
+  final int maskBytes; // Bytes per bit mask
+  final DataOutputStream out;
+
+  // Constructor writing the header to the given stream
+  BridgItPuzzleWriter(int n, OutputStream out) {
+    this.n = n;
+    this.maskBytes = (BridgItPuzzle.interiorCells(n).length + 7) / 8;
+    this.out = new DataOutputStream(new BufferedOutputStream(out));
+    try {
+      this.out.writeInt(MAGIC);
+      this.out.writeByte(n);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // EFFECT: appends the puzzle to the stream
+  void write(BridgItPuzzle puzzle) {
+    if (puzzle.n != this.n) {
+      throw new IllegalArgumentException("This file holds " + this.n + "x" + this.n + " puzzles.");
+    }
+    try {
+      this.out.writeByte(puzzle.depth | (puzzle.toMove == BridgItBoard.MAGENTA ? 0x80 : 0));
+      this.out.writeByte(puzzle.answer);
+      this.writeMask(puzzle.pink);
+      this.writeMask(puzzle.magenta);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // EFFECT: writes the low maskBytes bytes of the mask
+  void writeMask(long mask) throws IOException {
+    for (int i = 0; i < this.maskBytes; i++) {
+      this.out.writeByte((int) (mask >>> (8 * i)));
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      this.out.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
+
+// Reads puzzles back from the compact puzzle file format
+class BridgItPuzzleReader implements AutoCloseable {
+  final int n;
+  final int maskBytes; // Bytes per bit mask
+  final DataInputStream in;
+
+  // Constructor reading the header from the given stream
+  BridgItPuzzleReader(InputStream in) {
+    this.in = new DataInputStream(new BufferedInputStream(in));
+    try {
+      if (this.in.readInt() != BridgItPuzzleWriter.MAGIC) {
+        throw new IllegalArgumentException("Not a BridgIt puzzle file.");
+      }
+      this.n = this.in.readUnsignedByte();
+    } catch (EOFException e) {
+      throw new IllegalArgumentException("Not a BridgIt puzzle file.");
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    this.maskBytes = (BridgItPuzzle.interiorCells(this.n).length + 7) / 8;
+  }
+
+  // The next puzzle in the stream, or null at the end
+  BridgItPuzzle read() {
+    try {
+      int first = this.in.read();
+      if (first < 0) {
+        return null;
+      }
+      int answer = this.in.readUnsignedByte();
+      long pink = this.readMask();
+      long magenta = this.readMask();
+      int toMove = (first & 0x80) != 0 ? BridgItBoard.MAGENTA : BridgItBoard.PINK;
+      return new BridgItPuzzle(this.n, pink, magenta, toMove, answer, first & 0x7F);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // Reads one bit mask
+  long readMask() throws IOException {
+    long mask = 0L;
+    for (int i = 0; i < this.maskBytes; i++) {
+      mask |= (long) this.in.readUnsignedByte() << (8 * i);
+    }
+    return mask;
+  }
+
+  @Override
+  public void close() {
+    try {
+      this.in.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
+
+// Generates BridgIt puzzles in bulk: positions where exactly one move wins for
+// the side to move, graded by how deep the search has to go to prove the win.
+//
+// Every worker thread plays random moves into a candidate position and checks
+// it with its own BridgItSolver. The solvers share one transposition table, so
+// the many overlapping positions that different candidates reach are solved
+// once. Candidates are pruned before any search when the answer would be forced
+// (the opponent threatens to connect) or not unique (two immediate wins), and
+// the move-by-move check stops at the first second winning move. Puzzles are
+// handed to the calling thread, which streams them to the writer.
+class BridgItPuzzleGenerator {
+  final int n; // Size of the grid
+  final int threads; // Number of worker threads
+  final BridgItTranspositionTable table; // Shared by every worker's solver
+  final Set<Long> seen; // Positions already written, so no puzzle repeats
+  final AtomicLong candidates; // Candidate positions checked so far
+
+  // Constructor with a shared table of 2^tableBits entries
+  BridgItPuzzleGenerator(int n, int threads, int tableBits) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("The generator needs at least one thread.");
+    }
+    this.n = n;
+    this.threads = threads;
+    this.table = new BridgItTranspositionTable(tableBits);
+    new BridgItSolver(n, this.table); // Checks the board size
+    this.seen = ConcurrentHashMap.newKeySet();
+    this.candidates = new AtomicLong();
+  }
+
+  // EFFECT: writes up to count new puzzles with at least minDepth to out, checking
+  // at most maxCandidates positions (0 for no limit). Returns the number written.
+  int generate(int count, int minDepth, long maxCandidates, long seed, BridgItPuzzleWriter out) {
+    if (out.n != this.n) {
+      throw new IllegalArgumentException("This file holds " + out.n + "x" + out.n + " puzzles.");
+    }
+    LinkedBlockingQueue<BridgItPuzzle> found = new LinkedBlockingQueue<>();
+    AtomicBoolean stop = new AtomicBoolean();
+    long budget = maxCandidates > 0 ? this.candidates.get() + maxCandidates : Long.MAX_VALUE;
+    SplittableRandom seeds = new SplittableRandom(seed);
+    ExecutorService pool = Executors.newFixedThreadPool(this.threads, r -> {
+      Thread thread = new Thread(r, "bridgit-puzzles");
+      thread.setDaemon(true);
+      return thread;
+    });
+    ArrayList<Future<?>> workers = new ArrayList<>();
+    for (int i = 0; i < this.threads; i++) {
+      SplittableRandom rand = seeds.split();
+      workers.add(pool.submit(() -> this.work(minDepth, budget, rand, found, stop)));
+    }
+
+    int written = 0;
+    try {
+      while (written < count) {
+        BridgItPuzzle puzzle = found.poll(20, TimeUnit.MILLISECONDS);
+        if (puzzle != null) {
+          out.write(puzzle);
+          written++;
+        } else if (workers.stream().allMatch(Future::isDone) && found.isEmpty()) {
+          break;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      stop.set(true);
+      pool.shutdown();
+    }
+
+    for (Future<?> worker : workers) {
+      try {
+        worker.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("Puzzle worker failed.", e.getCause());
+      }
+    }
+    return written;
+  }
+
+  // EFFECT: checks random candidates and queues the puzzles among them until
+  // stopped or the candidate budget is spent
+  void work(int minDepth, long budget, SplittableRandom rand,
+      LinkedBlockingQueue<BridgItPuzzle> found, AtomicBoolean stop) {
+    BridgItSolver solver = new BridgItSolver(this.n, this.table);
+    // Grading uses a private table, cleared for each puzzle, so that results
+    // proven by other searches do not make a puzzle look shallower than it is
+    BridgItSolver grader = new BridgItSolver(this.n, new BridgItTranspositionTable(16));
+    while (!stop.get() && this.candidates.getAndIncrement() < budget) {
+      BridgItPuzzle puzzle = this.candidate(solver, grader, rand);
+      if (puzzle != null && puzzle.depth >= minDepth && this.seen.add(this.key(puzzle))) {
+        found.add(puzzle);
+      }
+    }
+  }
+
+  // A random position checked for a unique winning move, or null if it has none
+  BridgItPuzzle candidate(BridgItSolver solver, BridgItSolver grader, SplittableRandom rand) {
+    // Leave few enough empty cells that each solve stays quick
+    int plies = solver.size / 2 + rand.nextInt(Math.max(1, solver.size - 1 - solver.size / 2));
+    long pink = 0L;
+    long magenta = 0L;
+    int toMove = BridgItBoard.PINK;
+    for (int i = 0; i < plies; i++) {
+      long mine = toMove == BridgItBoard.PINK ? pink : magenta;
+      long empty = solver.all & ~(pink | magenta);
+      long open = empty & ~solver.winningCells(toMove, mine, empty);
+      if (open == 0L) {
+        return null;
+      }
+      long bit = nthBit(open, rand.nextInt(Long.bitCount(open)));
+      if (toMove == BridgItBoard.PINK) {
+        pink |= bit;
+      } else {
+        magenta |= bit;
+      }
+      toMove = BridgItBoard.other(toMove);
+    }
+    return this.check(solver, grader, pink, magenta, toMove);
+  }
+
+  // The puzzle for the position if exactly one move wins it, or null
+  BridgItPuzzle check(BridgItSolver solver, BridgItSolver grader, long pink, long magenta,
+      int toMove) {
+    int them = BridgItBoard.other(toMove);
+    long mine = toMove == BridgItBoard.PINK ? pink : magenta;
+    long theirs = toMove == BridgItBoard.PINK ? magenta : pink;
+    long empty = solver.all & ~(pink | magenta);
+
+    // A threat leaves only one move worth looking at, and two immediate wins
+    // are two answers
+    if (solver.winningCells(them, theirs, empty) != 0L
+        || Long.bitCount(solver.winningCells(toMove, mine, empty)) >= 2) {
+      return null;
+    }
+
+    BridgItSolution root = solver.solve(pink, magenta, toMove);
+    if (root.winner != toMove) {
+      return null;
+    }
+    int answer = -1;
+    for (int k = 0; k < solver.size; k++) {
+      if (solver.cellOf[k] == root.bestMove) {
+        answer = k;
+      }
+    }
+
+    // Every other move must lose
+    for (long rest = empty & ~(1L << answer); rest != 0L; rest &= rest - 1) {
+      long bit = rest & -rest;
+      long nextPink = toMove == BridgItBoard.PINK ? pink | bit : pink;
+      long nextMagenta = toMove == BridgItBoard.PINK ? magenta : magenta | bit;
+      if (solver.solve(nextPink, nextMagenta, them).winner == toMove) {
+        return null;
+      }
+    }
+
+    grader.table.clear();
+    int depth = grader.solve(pink, magenta, toMove).depth;
+    return new BridgItPuzzle(this.n, pink, magenta, toMove, answer, depth);
+  }
+
+  // The key used to recognize a puzzle that was already written
+  long key(BridgItPuzzle puzzle) {
+    return (puzzle.pink << 32 | puzzle.magenta) << 1 | (puzzle.toMove == BridgItBoard.MAGENTA ? 1 : 0);
+  }
+
+  // The n-th lowest set bit of mask, counting from 0
+  static long nthBit(long mask, int n) {
+    for (int i = 0; i < n; i++) {
+      mask &= mask - 1;
+    }
+    return mask & -mask;
+  }
+
+  // Generates puzzles into a file:
+  // java BridgItPuzzleGenerator n count minDepth file [threads]
+  public static void main(String[] args) {
+    if (args.length < 4) {
+      System.out.println("usage: BridgItPuzzleGenerator n count minDepth file [threads]");
+      return;
+    }
+    int n = Integer.parseInt(args[0]);
+    int threads = args.length > 4 ? Integer.parseInt(args[4])
+        : Runtime.getRuntime().availableProcessors();
+    BridgItPuzzleGenerator generator = new BridgItPuzzleGenerator(n, threads, 22);
+    long start = System.nanoTime();
+    int written;
+    try (BridgItPuzzleWriter out = new BridgItPuzzleWriter(n, Files.newOutputStream(Path.of(args[3])))) {
+      written = generator.generate(Integer.parseInt(args[1]), Integer.parseInt(args[2]), 0L,
+          System.nanoTime(), out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf("%d puzzles from %d candidates in %.2f s%n", written,
+        generator.candidates.get(), seconds);
+  }
+}
+
+// Examples and tests for the puzzle generator
+class ExamplesBridgItPuzzles {
+  // Generates puzzles into memory and reads them back
+  ArrayList<BridgItPuzzle> generate(int n, int count, int minDepth, int threads) {
+    java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+    try (BridgItPuzzleWriter out = new BridgItPuzzleWriter(n, bytes)) {
+      new BridgItPuzzleGenerator(n, threads, 18).generate(count, minDepth, 200000L, 7L, out);
+    }
+    ArrayList<BridgItPuzzle> puzzles = new ArrayList<>();
+    try (BridgItPuzzleReader in = new BridgItPuzzleReader(
+        new java.io.ByteArrayInputStream(bytes.toByteArray()))) {
+      for (BridgItPuzzle puzzle = in.read(); puzzle != null; puzzle = in.read()) {
+        puzzles.add(puzzle);
+      }
+    }
+    return puzzles;
+  }
+
+  void testAnswersAreUnique(Tester t) {
+    ArrayList<BridgItPuzzle> puzzles = this.generate(7, 25, 1, 4);
+    t.checkExpect(puzzles.size(), 25);
+    BridgItSolver solver = new BridgItSolver(7);
+    int[] moves = new int[49];
+    for (BridgItPuzzle puzzle : puzzles) {
+      BridgItBoard board = puzzle.board();
+      t.checkExpect(board.winner(), BridgItBoard.EMPTY);
+      t.checkExpect(board.isPlayable(puzzle.answerCell()), true);
+
+      // The answer wins, and every other move loses
+      int count = board.legalMoves(moves);
+      for (int i = 0; i < count; i++) {
+        BridgItBoard next = board.copy();
+        next.setOwner(moves[i], puzzle.toMove);
+        int winner = next.winner() != BridgItBoard.EMPTY ? next.winner()
+            : solver.solve(next, BridgItBoard.other(puzzle.toMove)).winner;
+        t.checkExpect(winner == puzzle.toMove, moves[i] == puzzle.answerCell());
+      }
+    }
+  }
+
+  void testDepthGrading(Tester t) {
+    for (BridgItPuzzle puzzle : this.generate(7, 10, 3, 2)) {
+      t.checkNumRange(puzzle.depth, 3, 14);
+      t.checkExpect(puzzle.depth % 2, 1);
+    }
+  }
+
+  void testFileFormat(Tester t) {
+    BridgItPuzzle puzzle = new BridgItPuzzle(9, 0x1234567L, 0x0ABCDEFL, BridgItBoard.MAGENTA, 24, 7);
+    java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+    try (BridgItPuzzleWriter out = new BridgItPuzzleWriter(9, bytes)) {
+      out.write(puzzle);
+      out.write(puzzle);
+    }
+    // A 5-byte header, then 10 bytes a puzzle on a 9x9 board
+    t.checkExpect(bytes.size(), 25);
+    BridgItPuzzleReader in = new BridgItPuzzleReader(new java.io.ByteArrayInputStream(bytes.toByteArray()));
+    t.checkExpect(in.read(), puzzle);
+    t.checkExpect(in.read(), puzzle);
+    t.checkExpect(in.read(), null);
+
+    t.checkConstructorException(new IllegalArgumentException("Not a BridgIt puzzle file."),
+        "BridgItPuzzleReader", new java.io.ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5}));
+    t.checkException(new IllegalArgumentException("This file holds 9x9 puzzles."),
+        new BridgItPuzzleWriter(9, new java.io.ByteArrayOutputStream()), "write",
+        new BridgItPuzzle(7, 0L, 0L, BridgItBoard.PINK, 0, 1));
+  }
+
+  void testUniqueSmallPosition(Tester t) {
+    // Pink has more than one winning first move on an open 5x5 board
+    BridgItPuzzleGenerator generator = new BridgItPuzzleGenerator(5, 1, 12);
+    BridgItSolver solver = new BridgItSolver(5, generator.table);
+    BridgItSolver grader = new BridgItSolver(5);
+    t.checkExpect(generator.check(solver, grader, 0L, 0L, BridgItBoard.PINK), null);
+    t.checkExpect(BridgItPuzzleGenerator.nthBit(0b101100L, 2), 0b100000L);
+  }
+}
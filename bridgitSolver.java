@@ -0,0 +1,603 @@
+import java.util.SplittableRandom;
+import tester.*;
+
+// A fixed-size hash table of search results that many threads can share without
+// locks. Each entry is stored as (key ^ data, data), so a torn or racing write
+// fails the key check on the next probe instead of returning a wrong result.
+class BridgItTranspositionTable {
+  final long[] entries; // Two longs per entry
+  final int mask; // Number of entries - 1
+
+  // Constructor for a table of 2^bits entries
+  BridgItTranspositionTable(int bits) {
+    if (bits < 1 || bits > 28) {
+      throw new IllegalArgumentException("Table size must be between 2^1 and 2^28 entries.");
+    }
+    this.entries = new long[2 << bits];
+    this.mask = (1 << bits) - 1;
+  }
+
+  // The data stored for the given key, or 0 if there is none
+  long probe(long key) {
+    int slot = ((int) key & this.mask) << 1;
+    long data = this.entries[slot + 1];
+    if ((this.entries[slot] ^ data) == key) {
+      return data;
+    }
+    return 0L;
+  }
+
+  // EFFECT: stores non-zero data for the given key, replacing whatever was there
+  void store(long key, long data) {
+    int slot = ((int) key & this.mask) << 1;
+    this.entries[slot] = key ^ data;
+    this.entries[slot + 1] = data;
+  }
+
+  // EFFECT: forgets every entry
+  void clear() {
+    java.util.Arrays.fill(this.entries, 0L);
+  }
+}
+
+// The result of solving a BridgIt position
+class BridgItSolution {
+  int winner; // The player who wins with perfect play
+  int bestMove; // A board cell that keeps the best result for the side to move, or -1
+  int depth; // The search depth that proved the result
+
+  // Constructor
+  BridgItSolution(int winner, int bestMove, int depth) {
+    this.winner = winner;
+    this.bestMove = bestMove;
+    this.depth = depth;
+  }
+}
+
+// Solves small BridgIt boards exactly with iterative-deepening alpha-beta.
+//
+// Only the white interior cells can change, so a position is two bit masks over
+// those cells. Claiming a cell adds one edge to the owner's graph of pre-colored
+// cells, which keeps win checks to a small union-find. Positions are looked up
+// in a shared transposition table under a Zobrist key that is the same for all
+// eight symmetric versions of a position: the four reflections that keep each
+// player's edges, and the four that also transpose the board and swap colors.
+class BridgItSolver implements IBridgItPolicy {
+  static final int WIN = 1; // Values are from the point of view of the side to move
+  static final int UNKNOWN = 0;
+  static final int LOSS = -1;
+
+  static final int EXACT = 1; // Flags stored with a value in the table
+  static final int LOWER = 2;
+  static final int UPPER = 3;
+  static final int PROVEN = 255; // Depth stored for wins and losses, which never change
+
+  static final int SOURCE = 0; // Node of the edge a player starts from
+  static final int SINK = 1; // Node of the edge a player connects to
+  static final int SYMMETRIES = 8;
+
+  final int n; // Size of the grid
+  final int size; // Number of white interior cells
+  final long all; // Mask of every white interior cell
+  final int[] cellOf; // Interior index -> board cell
+  final int[] pinkEnds; // Pink graph nodes joined by each interior cell, two per cell
+  final int[] magentaEnds; // Magenta graph nodes joined by each interior cell, two per cell
+  final int pinkNodes, magentaNodes;
+  final int[] order; // Interior indices, nearest the center first
+  final int[][] sym; // sym[s][k] is where symmetry s sends interior index k
+  final int[][] inverse; // inverse[s][sym[s][k]] == k
+  final boolean[] swapsColors; // Does symmetry s swap the roles of the players?
+  final long[][] zobrist; // zobrist[player][k] for each player and interior index
+  final long sideKey; // Mixed in when Magenta is to move
+  final BridgItTranspositionTable table;
+
+  final int[] parent; // Union-find scratch space
+  final int[] fromSource, fromSink; // Distance scratch space
+  final long[][] hashes; // Symmetric hashes for every ply of the current search
+  long nodes; // Positions searched since the last solve started
+
+  // Constructor with a private transposition table
+  BridgItSolver(int n) {
+    this(n, new BridgItTranspositionTable(20));
+  }
+
+  // Constructor sharing the given transposition table
+  BridgItSolver(int n, BridgItTranspositionTable table) {
+    if (n < 3 || n % 2 == 0) {
+      throw new IllegalArgumentException("Board size must be an odd number >= 3.");
+    }
+    if (n > 9) {
+      throw new IllegalArgumentException("The solver only handles boards up to 9x9.");
+    }
+    this.n = n;
+    this.table = table;
+
+    BridgItBoard board = new BridgItBoard(n);
+    int[] moves = new int[n * n];
+    this.size = board.legalMoves(moves);
+    this.all = this.size == 64 ? -1L : (1L << this.size) - 1;
+    this.cellOf = java.util.Arrays.copyOf(moves, this.size);
+    int[] indexOf = new int[n * n];
+    java.util.Arrays.fill(indexOf, -1);
+    for (int k = 0; k < this.size; k++) {
+      indexOf[this.cellOf[k]] = k;
+    }
+
+    // Number the pre-colored cells of each player, merging each player's two edges
+    int[] pinkId = new int[n * n];
+    int[] magentaId = new int[n * n];
+    int pinkCount = 2;
+    int magentaCount = 2;
+    for (int row = 0; row < n; row++) {
+      for (int col = 0; col < n; col++) {
+        int cell = board.index(row, col);
+        if (board.owner(cell) == BridgItBoard.PINK) {
+          pinkId[cell] = col == 0 ? SOURCE : col == n - 1 ? SINK : pinkCount++;
+        } else if (board.owner(cell) == BridgItBoard.MAGENTA) {
+          magentaId[cell] = row == 0 ? SOURCE : row == n - 1 ? SINK : magentaCount++;
+        }
+      }
+    }
+    this.pinkNodes = pinkCount;
+    this.magentaNodes = magentaCount;
+
+    // Each interior cell joins two pink cells on one axis and two magenta cells on the other
+    this.pinkEnds = new int[2 * this.size];
+    this.magentaEnds = new int[2 * this.size];
+    for (int k = 0; k < this.size; k++) {
+      int cell = this.cellOf[k];
+      int row = cell / n;
+      if (row % 2 == 1) {
+        this.pinkEnds[2 * k] = pinkId[cell - 1];
+        this.pinkEnds[2 * k + 1] = pinkId[cell + 1];
+        this.magentaEnds[2 * k] = magentaId[cell - n];
+        this.magentaEnds[2 * k + 1] = magentaId[cell + n];
+      } else {
+        this.pinkEnds[2 * k] = pinkId[cell - n];
+        this.pinkEnds[2 * k + 1] = pinkId[cell + n];
+        this.magentaEnds[2 * k] = magentaId[cell - 1];
+        this.magentaEnds[2 * k + 1] = magentaId[cell + 1];
+      }
+    }
+
+    // Try central cells first
+    Integer[] byDistance = new Integer[this.size];
+    for (int k = 0; k < this.size; k++) {
+      byDistance[k] = k;
+    }
+    int center = n / 2;
+    java.util.Arrays.sort(byDistance, (a, b) -> Integer.compare(
+        Math.abs(this.cellOf[a] / n - center) + Math.abs(this.cellOf[a] % n - center),
+        Math.abs(this.cellOf[b] / n - center) + Math.abs(this.cellOf[b] % n - center)));
+    this.order = new int[this.size];
+    for (int k = 0; k < this.size; k++) {
+      this.order[k] = byDistance[k];
+    }
+
+    // Symmetries: s & 1 mirrors columns, s & 2 mirrors rows, s & 4 transposes
+    this.sym = new int[SYMMETRIES][this.size];
+    this.inverse = new int[SYMMETRIES][this.size];
+    this.swapsColors = new boolean[SYMMETRIES];
+    for (int s = 0; s < SYMMETRIES; s++) {
+      this.swapsColors[s] = (s & 4) != 0;
+      for (int k = 0; k < this.size; k++) {
+        int row = this.cellOf[k] / n;
+        int col = this.cellOf[k] % n;
+        if ((s & 1) != 0) {
+          col = n - 1 - col;
+        }
+        if ((s & 2) != 0) {
+          row = n - 1 - row;
+        }
+        int image = (s & 4) != 0 ? indexOf[col * n + row] : indexOf[row * n + col];
+        this.sym[s][k] = image;
+        this.inverse[s][image] = k;
+      }
+    }
+
+    // The keys only depend on n, so solvers of the same size can share a table
+    SplittableRandom rand = new SplittableRandom(0x5EED0000L + n);
+    this.zobrist = new long[3][this.size];
+    for (int player = BridgItBoard.PINK; player <= BridgItBoard.MAGENTA; player++) {
+      for (int k = 0; k < this.size; k++) {
+        this.zobrist[player][k] = rand.nextLong();
+      }
+    }
+    this.sideKey = rand.nextLong();
+
+    this.parent = new int[Math.max(this.pinkNodes, this.magentaNodes)];
+    this.fromSource = new int[this.parent.length];
+    this.fromSink = new int[this.parent.length];
+    this.hashes = new long[this.size + 2][SYMMETRIES];
+  }
+
+  // Chooses the move that keeps the best result for the given player
+  public int chooseMove(BridgItBoard board, int player) {
+    return this.solve(board, player).bestMove;
+  }
+
+  // Solves the given position with the given player to move
+  BridgItSolution solve(BridgItBoard board, int toMove) {
+    if (board.n != this.n) {
+      throw new IllegalArgumentException("This solver is for " + this.n + "x" + this.n + " boards.");
+    }
+    int winner = board.winner();
+    if (winner != BridgItBoard.EMPTY) {
+      return new BridgItSolution(winner, -1, 0);
+    }
+
+    long pink = 0L;
+    long magenta = 0L;
+    for (int k = 0; k < this.size; k++) {
+      int owner = board.owner(this.cellOf[k]);
+      if (owner == BridgItBoard.PINK) {
+        pink |= 1L << k;
+      } else if (owner == BridgItBoard.MAGENTA) {
+        magenta |= 1L << k;
+      }
+    }
+    return this.solve(pink, magenta, toMove);
+  }
+
+  // Solves the position given by each player's claimed interior cells
+  BridgItSolution solve(long pink, long magenta, int toMove) {
+    long mine = toMove == BridgItBoard.PINK ? pink : magenta;
+    long theirs = toMove == BridgItBoard.PINK ? magenta : pink;
+    this.nodes = 0L;
+    this.initHashes(pink, magenta, toMove);
+
+    int empty = Long.bitCount(this.all & ~(pink | magenta));
+    for (int depth = 1; depth <= empty + 1; depth += 2) {
+      int value = this.search(mine, theirs, toMove, depth, LOSS, WIN, 0);
+      if (value != UNKNOWN) {
+        int best = this.bestMove(mine, theirs, toMove);
+        int winner = value == WIN ? toMove : BridgItBoard.other(toMove);
+        return new BridgItSolution(winner, best < 0 ? -1 : this.cellOf[best], depth);
+      }
+    }
+    throw new IllegalStateException("Search ended without a result.");
+  }
+
+  // The interior index stored as the best move of the root position, or -1
+  int bestMove(long mine, long theirs, int toMove) {
+    long empty = this.all & ~(mine | theirs);
+
+    // The search answers these without storing a move
+    long wins = this.winningCells(toMove, mine, empty);
+    if (wins != 0L) {
+      return Long.numberOfTrailingZeros(wins);
+    }
+    long threats = this.winningCells(BridgItBoard.other(toMove), theirs, empty);
+    if (Long.bitCount(threats) >= 2) {
+      return Long.numberOfTrailingZeros(threats);
+    }
+
+    int s = this.canonical(0, toMove);
+    long data = this.table.probe(this.key(0, s, toMove));
+    int best = (int) (data & 0xFF);
+    if (data != 0L && best != 0xFF) {
+      return this.inverse[s][best];
+    }
+    return empty == 0L ? -1 : Long.numberOfTrailingZeros(empty);
+  }
+
+  // Negamax alpha-beta search to the given depth. Returns WIN or LOSS once
+  // proven, or UNKNOWN if the depth ran out first. The opponent has not won.
+  int search(long mine, long theirs, int me, int depth, int alpha, int beta, int ply) {
+    this.nodes++;
+    int them = BridgItBoard.other(me);
+    long empty = this.all & ~(mine | theirs);
+
+    // Take an immediate win
+    if ((this.winningCells(me, mine, empty)) != 0L) {
+      return WIN;
+    }
+
+    // Two separate threats cannot both be blocked
+    long threats = this.winningCells(them, theirs, empty);
+    if (Long.bitCount(threats) >= 2) {
+      return LOSS;
+    }
+    if (depth <= 0 || empty == 0L) {
+      return UNKNOWN;
+    }
+
+    int s = this.canonical(ply, me);
+    long key = this.key(ply, s, me);
+    long data = this.table.probe(key);
+    int ttMove = -1;
+    if (data != 0L) {
+      int entryDepth = (int) ((data >>> 8) & 0xFF);
+      int value = (int) ((data >>> 16) & 3) - 1;
+      int flag = (int) ((data >>> 18) & 3);
+      if ((data & 0xFF) != 0xFF) {
+        ttMove = this.inverse[s][(int) (data & 0xFF)];
+      }
+      if (entryDepth >= depth) {
+        if (flag == EXACT || (flag == LOWER && value >= beta) || (flag == UPPER && value <= alpha)) {
+          return value;
+        }
+      }
+    }
+
+    // A single threat must be blocked. Otherwise try cells on both players'
+    // shortest paths first, then cells on either, then the rest.
+    long candidates = threats != 0L ? threats : empty;
+    long mineShort = this.shortestPathCells(me, mine, empty);
+    long theirsShort = this.shortestPathCells(them, theirs, empty);
+    long[] tiers = {mineShort & theirsShort, mineShort ^ theirsShort, ~(mineShort | theirsShort)};
+    int alphaStart = alpha;
+    int bestValue = LOSS - 1;
+    int bestMove = -1;
+
+    search:
+    for (int tier = -1; tier < tiers.length; tier++) {
+      for (int i = 0; i < this.size; i++) {
+        int k = tier < 0 ? ttMove : this.order[i];
+        if (k < 0 || (candidates & (1L << k)) == 0L || (tier >= 0 && (k == ttMove || (tiers[tier] & (1L << k)) == 0L))) {
+          if (tier < 0) {
+            break;
+          }
+          continue;
+        }
+        this.play(ply, k, me);
+        int value = -this.search(theirs, mine | (1L << k), them, depth - 1, -beta, -alpha, ply + 1);
+        if (value > bestValue) {
+          bestValue = value;
+          bestMove = k;
+        }
+        if (value > alpha) {
+          alpha = value;
+        }
+        if (alpha >= beta) {
+          break search;
+        }
+        if (tier < 0) {
+          break;
+        }
+      }
+    }
+
+    int flag = bestValue <= alphaStart ? UPPER : bestValue >= beta ? LOWER : EXACT;
+    boolean proven = (bestValue == WIN && flag != UPPER) || (bestValue == LOSS && flag != LOWER);
+    int canonicalMove = bestMove < 0 ? 0xFF : this.sym[s][bestMove];
+    this.table.store(key, canonicalMove | (long) (proven ? PROVEN : depth) << 8
+        | (long) (bestValue + 1) << 16 | (long) flag << 18);
+    return bestValue;
+  }
+
+  // The empty cells that would connect the given player's edges if claimed
+  long winningCells(int player, long claimed, long empty) {
+    int[] ends = player == BridgItBoard.PINK ? this.pinkEnds : this.magentaEnds;
+    int count = player == BridgItBoard.PINK ? this.pinkNodes : this.magentaNodes;
+    for (int i = 0; i < count; i++) {
+      this.parent[i] = i;
+    }
+    for (long rest = claimed; rest != 0L; rest &= rest - 1) {
+      int k = Long.numberOfTrailingZeros(rest);
+      int a = this.find(ends[2 * k]);
+      int b = this.find(ends[2 * k + 1]);
+      this.parent[a] = b;
+    }
+
+    int source = this.find(SOURCE);
+    int sink = this.find(SINK);
+    long wins = 0L;
+    for (long rest = empty; rest != 0L; rest &= rest - 1) {
+      int k = Long.numberOfTrailingZeros(rest);
+      int a = this.find(ends[2 * k]);
+      int b = this.find(ends[2 * k + 1]);
+      if ((a == source && b == sink) || (a == sink && b == source)) {
+        wins |= 1L << k;
+      }
+    }
+    return wins;
+  }
+
+  // The empty cells on some shortest path between the given player's edges,
+  // counting claimed cells as free and empty cells as one step
+  long shortestPathCells(int player, long claimed, long empty) {
+    int[] ends = player == BridgItBoard.PINK ? this.pinkEnds : this.magentaEnds;
+    int count = player == BridgItBoard.PINK ? this.pinkNodes : this.magentaNodes;
+    this.distances(ends, count, claimed, empty, SOURCE, this.fromSource);
+    this.distances(ends, count, claimed, empty, SINK, this.fromSink);
+    int shortest = this.fromSource[SINK];
+    if (shortest == Integer.MAX_VALUE) {
+      return 0L;
+    }
+
+    long cells = 0L;
+    for (long rest = empty; rest != 0L; rest &= rest - 1) {
+      int k = Long.numberOfTrailingZeros(rest);
+      int a = ends[2 * k];
+      int b = ends[2 * k + 1];
+      long forward = (long) this.fromSource[a] + 1 + this.fromSink[b];
+      long backward = (long) this.fromSource[b] + 1 + this.fromSink[a];
+      if (forward == shortest || backward == shortest) {
+        cells |= 1L << k;
+      }
+    }
+    return cells;
+  }
+
+  // EFFECT: fills dist with the number of empty cells needed to reach each node from start
+  void distances(int[] ends, int count, long claimed, long empty, int start, int[] dist) {
+    java.util.Arrays.fill(dist, 0, count, Integer.MAX_VALUE);
+    dist[start] = 0;
+    long usable = claimed | empty;
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (long rest = usable; rest != 0L; rest &= rest - 1) {
+        int k = Long.numberOfTrailingZeros(rest);
+        int a = ends[2 * k];
+        int b = ends[2 * k + 1];
+        int step = (claimed & (1L << k)) != 0L ? 0 : 1;
+        if (dist[a] != Integer.MAX_VALUE && dist[a] + step < dist[b]) {
+          dist[b] = dist[a] + step;
+          changed = true;
+        }
+        if (dist[b] != Integer.MAX_VALUE && dist[b] + step < dist[a]) {
+          dist[a] = dist[b] + step;
+          changed = true;
+        }
+      }
+    }
+  }
+
+  // The representative of the given node, halving the path on the way
+  int find(int node) {
+    while (this.parent[node] != node) {
+      this.parent[node] = this.parent[this.parent[node]];
+      node = this.parent[node];
+    }
+    return node;
+  }
+
+  // EFFECT: sets the symmetric hashes of ply 0 for the given position
+  void initHashes(long pink, long magenta, int toMove) {
+    for (int s = 0; s < SYMMETRIES; s++) {
+      long hash = 0L;
+      for (int k = 0; k < this.size; k++) {
+        if ((pink & (1L << k)) != 0L) {
+          hash ^= this.zobrist[this.colorUnder(s, BridgItBoard.PINK)][this.sym[s][k]];
+        } else if ((magenta & (1L << k)) != 0L) {
+          hash ^= this.zobrist[this.colorUnder(s, BridgItBoard.MAGENTA)][this.sym[s][k]];
+        }
+      }
+      this.hashes[0][s] = hash;
+    }
+  }
+
+  // EFFECT: sets the hashes of ply + 1 to those of ply with cell k claimed by player
+  void play(int ply, int k, int player) {
+    for (int s = 0; s < SYMMETRIES; s++) {
+      this.hashes[ply + 1][s] = this.hashes[ply][s]
+          ^ this.zobrist[this.colorUnder(s, player)][this.sym[s][k]];
+    }
+  }
+
+  // The color that the given player's cells have after applying symmetry s
+  int colorUnder(int s, int player) {
+    return this.swapsColors[s] ? BridgItBoard.other(player) : player;
+  }
+
+  // The key of the position at ply as seen through symmetry s
+  long key(int ply, int s, int toMove) {
+    return this.hashes[ply][s] ^ (this.colorUnder(s, toMove) == BridgItBoard.MAGENTA ? this.sideKey : 0L);
+  }
+
+  // The symmetry whose key is smallest, which picks the same representative
+  // for every symmetric version of a position
+  int canonical(int ply, int toMove) {
+    int best = 0;
+    long bestKey = this.key(ply, 0, toMove);
+    for (int s = 1; s < SYMMETRIES; s++) {
+      long k = this.key(ply, s, toMove);
+      if (k < bestKey) {
+        bestKey = k;
+        best = s;
+      }
+    }
+    return best;
+  }
+}
+
+// Examples and tests for the solver
+class ExamplesBridgItSolver {
+  void testTable(Tester t) {
+    BridgItTranspositionTable table = new BridgItTranspositionTable(4);
+    t.checkExpect(table.probe(12345L), 0L);
+    table.store(12345L, 77L);
+    t.checkExpect(table.probe(12345L), 77L);
+
+    // A different key in the same slot does not read the stored data
+    t.checkExpect(table.probe(12345L + 16), 0L);
+    table.clear();
+    t.checkExpect(table.probe(12345L), 0L);
+  }
+
+  void testSymmetries(Tester t) {
+    BridgItSolver solver = new BridgItSolver(7);
+    for (int s = 0; s < BridgItSolver.SYMMETRIES; s++) {
+      for (int k = 0; k < solver.size; k++) {
+        t.checkExpect(solver.inverse[s][solver.sym[s][k]], k);
+      }
+    }
+
+    // Symmetric positions get the same canonical key
+    BridgItBoard a = new BridgItBoard(7);
+    a.setOwner(a.index(1, 1), BridgItBoard.PINK);
+    BridgItBoard b = new BridgItBoard(7);
+    b.setOwner(b.index(5, 5), BridgItBoard.PINK);
+    BridgItBoard c = new BridgItBoard(7);
+    c.setOwner(c.index(1, 5), BridgItBoard.MAGENTA); // Transposed, with colors swapped
+
+    solver.solve(a, BridgItBoard.MAGENTA);
+    int sa = solver.canonical(0, BridgItBoard.MAGENTA);
+    long keyA = solver.key(0, sa, BridgItBoard.MAGENTA);
+    solver.solve(b, BridgItBoard.MAGENTA);
+    long keyB = solver.key(0, solver.canonical(0, BridgItBoard.MAGENTA), BridgItBoard.MAGENTA);
+    solver.solve(c, BridgItBoard.PINK);
+    long keyC = solver.key(0, solver.canonical(0, BridgItBoard.PINK), BridgItBoard.PINK);
+    t.checkExpect(keyA, keyB);
+    t.checkExpect(keyA, keyC);
+  }
+
+  void testFirstPlayerWins(Tester t) {
+    // Pink (the first player) wins BridgIt with perfect play
+    for (int n = 3; n <= 7; n += 2) {
+      BridgItSolution solution = new BridgItSolver(n).solve(new BridgItBoard(n), BridgItBoard.PINK);
+      t.checkExpect(solution.winner, BridgItBoard.PINK);
+    }
+
+    // Whoever moves first on an empty board wins
+    BridgItSolution second = new BridgItSolver(5).solve(new BridgItBoard(5), BridgItBoard.MAGENTA);
+    t.checkExpect(second.winner, BridgItBoard.MAGENTA);
+  }
+
+  void testBestMoveKeepsTheWin(Tester t) {
+    // Alternate solver moves until the game ends; Pink must win every time
+    BridgItSolver solver = new BridgItSolver(7);
+    BridgItBoard board = new BridgItBoard(7);
+    int toMove = BridgItBoard.PINK;
+    while (board.winner() == BridgItBoard.EMPTY) {
+      BridgItSolution solution = solver.solve(board, toMove);
+      t.checkExpect(solution.winner, BridgItBoard.PINK);
+      t.checkExpect(board.isPlayable(solution.bestMove), true);
+      board.setOwner(solution.bestMove, toMove);
+      toMove = BridgItBoard.other(toMove);
+    }
+    t.checkExpect(board.winner(), BridgItBoard.PINK);
+  }
+
+  void testImmediateWinAndBlock(Tester t) {
+    BridgItSolver solver = new BridgItSolver(5);
+    BridgItBoard board = new BridgItBoard(5);
+    board.setOwner(board.index(1, 1), BridgItBoard.PINK);
+    board.setOwner(board.index(3, 3), BridgItBoard.MAGENTA);
+
+    BridgItSolution pink = solver.solve(board, BridgItBoard.PINK);
+    t.checkExpect(pink.winner, BridgItBoard.PINK);
+    t.checkExpect(pink.bestMove, board.index(1, 3));
+
+    // Magenta must block (1, 3)
+    t.checkExpect(solver.chooseMove(board, BridgItBoard.MAGENTA), board.index(1, 3));
+  }
+
+  void testFinishedGame(Tester t) {
+    BridgItBoard board = new BridgItBoard(5);
+    board.setOwner(board.index(1, 1), BridgItBoard.PINK);
+    board.setOwner(board.index(1, 3), BridgItBoard.PINK);
+    BridgItSolution solution = new BridgItSolver(5).solve(board, BridgItBoard.MAGENTA);
+    t.checkExpect(solution.winner, BridgItBoard.PINK);
+    t.checkExpect(solution.bestMove, -1);
+  }
+
+  void testSizes(Tester t) {
+    t.checkConstructorException(new IllegalArgumentException("The solver only handles boards up to 9x9."),
+        "BridgItSolver", 11);
+    t.checkConstructorException(new IllegalArgumentException("Board size must be an odd number >= 3."),
+        "BridgItSolver", 6);
+  }
+}
@@ -0,0 +1,361 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import tester.*;
+
+// Solves one level of a tablebase: every position in a range of indices with the
+// given number of claimed cells. Positions with one more claimed cell are already
+// solved, so positions of the same level never depend on each other.
+class BridgItTablebaseLevel extends RecursiveAction {
+  private static final long serialVersionUID = 1L;
+
+  static final int CHUNK = 1 << 14; // Indices one task solves; a multiple of 4, so
+                                    // no two tasks write the same byte
+
+  final BridgItTablebase table;
+  final int level; // Claimed cells in the positions being solved
+  final int from; // First index of the range
+  final int to; // One past the last index of the range
+
+  // Constructor
+  BridgItTablebaseLevel(BridgItTablebase table, int level, int from, int to) {
+    this.table = table;
+    this.level = level;
+    this.from = from;
+    this.to = to;
+  }
+
+  @Override
+  protected void compute() {
+    if (this.to - this.from <= CHUNK) {
+      int[] digits = new int[this.table.size];
+      for (int index = this.from; index < this.to; index++) {
+        this.table.solve(index, this.level, digits);
+      }
+      return;
+    }
+    int middle = this.from + Math.max(1, (this.to - this.from) / (2 * CHUNK)) * CHUNK;
+    invokeAll(new BridgItTablebaseLevel(this.table, this.level, this.from, middle),
+        new BridgItTablebaseLevel(this.table, this.level, middle, this.to));
+  }
+}
+
+// A table of the perfect-play winner of every BridgIt position on a 5x5 or 7x7
+// board, built by retrograde analysis and read through a memory-mapped file.
+//
+// A position is a base-3 number with one digit per white interior cell (0 for
+// empty, then the owner), so the index of a position is computed directly and
+// every position has its own slot. Each slot holds the winner in two bits. The
+// side to move follows from the counts: Pink moves when both players have
+// claimed the same number of cells.
+//
+// Generation solves the full boards first, then each level with one cell fewer,
+// since a position only depends on positions with one more claimed cell. Each
+// level is split across a fork/join pool, and the table is written straight into
+// the mapped file, so memory use does not grow with the table.
+class BridgItTablebase implements IBridgItPolicy {
+  static final int MAGIC = 0x42544231; // "BTB1"
+  static final int HEADER = 16; // Bytes before the first slot
+
+  final int n; // Size of the grid
+  final int size; // Number of white interior cells
+  final int positions; // 3^size
+  final int[] cellOf; // Board cell of each digit
+  final int[] pinkFrom, pinkTo; // Pink graph nodes joined by each digit's cell
+  final int[] magentaFrom, magentaTo; // Magenta graph nodes joined by each digit's cell
+  final int pinkNodes, magentaNodes;
+  final MappedByteBuffer data;
+
+  // Constructor for a table mapped from the given file
+  private BridgItTablebase(int n, FileChannel channel, FileChannel.MapMode mode) throws IOException {
+    if (n != 5 && n != 7) {
+      throw new IllegalArgumentException("Tablebases only exist for 5x5 and 7x7 boards.");
+    }
+    this.n = n;
+    BridgItBoard board = new BridgItBoard(n);
+    int[] moves = new int[n * n];
+    this.size = board.legalMoves(moves);
+    this.cellOf = java.util.Arrays.copyOf(moves, this.size);
+    int positions = 1;
+    for (int k = 0; k < this.size; k++) {
+      positions *= 3;
+    }
+    this.positions = positions;
+
+    BridgItDotGraph pink = BridgItDotGraph.of(n, BridgItBoard.PINK);
+    BridgItDotGraph magenta = BridgItDotGraph.of(n, BridgItBoard.MAGENTA);
+    this.pinkNodes = pink.nodes;
+    this.magentaNodes = magenta.nodes;
+    this.pinkFrom = new int[this.size];
+    this.pinkTo = new int[this.size];
+    this.magentaFrom = new int[this.size];
+    this.magentaTo = new int[this.size];
+    for (int k = 0; k < this.size; k++) {
+      this.pinkFrom[k] = pink.from[this.cellOf[k]];
+      this.pinkTo[k] = pink.to[this.cellOf[k]];
+      this.magentaFrom[k] = magenta.from[this.cellOf[k]];
+      this.magentaTo[k] = magenta.to[this.cellOf[k]];
+    }
+
+    long bytes = HEADER + (this.positions + 3L) / 4;
+    boolean writing = mode == FileChannel.MapMode.READ_WRITE;
+    if (!writing && channel.size() != bytes) {
+      throw new IllegalArgumentException("Not a BridgIt tablebase for size " + n + ".");
+    }
+    this.data = channel.map(mode, 0, bytes);
+    if (writing) {
+      this.data.putInt(0, MAGIC);
+      this.data.putInt(4, n);
+      this.data.putInt(8, this.size);
+    } else if (this.data.getInt(0) != MAGIC || this.data.getInt(4) != n
+        || this.data.getInt(8) != this.size) {
+      throw new IllegalArgumentException("Not a BridgIt tablebase for size " + n + ".");
+    }
+  }
+
+  // Solves every position of size n and writes the table to file
+  static BridgItTablebase generate(int n, Path file) {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      BridgItTablebase table = new BridgItTablebase(n, channel, FileChannel.MapMode.READ_WRITE);
+      for (int level = table.size; level >= 0; level--) {
+        ForkJoinPool.commonPool().invoke(
+            new BridgItTablebaseLevel(table, level, 0, table.positions));
+      }
+      table.data.force();
+      return table;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // Maps a table written by generate
+  static BridgItTablebase open(int n, Path file) {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return new BridgItTablebase(n, channel, FileChannel.MapMode.READ_ONLY);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // The stored winner of the position with the given index, or EMPTY if the
+  // position cannot come from alternating play
+  int value(int index) {
+    int b = this.data.get(HEADER + (index >>> 2));
+    return (b >>> ((index & 3) << 1)) & 3;
+  }
+
+  // EFFECT: stores the winner of the position with the given index
+  void store(int index, int winner) {
+    int at = HEADER + (index >>> 2);
+    int shift = (index & 3) << 1;
+    this.data.put(at, (byte) ((this.data.get(at) & ~(3 << shift)) | (winner << shift)));
+  }
+
+  // EFFECT: solves the position with the given index if it has level claimed cells
+  // and could come from alternating play. digits is scratch space.
+  void solve(int index, int level, int[] digits) {
+    int pinks = 0;
+    int magentas = 0;
+    for (int k = 0, rest = index; k < this.size; k++, rest /= 3) {
+      digits[k] = rest % 3;
+      pinks += digits[k] == BridgItBoard.PINK ? 1 : 0;
+      magentas += digits[k] == BridgItBoard.MAGENTA ? 1 : 0;
+    }
+    if (pinks + magentas != level || (pinks != magentas && pinks != magentas + 1)) {
+      return;
+    }
+
+    int winner = this.connected(digits);
+    if (winner == BridgItBoard.EMPTY) {
+      // The side to move wins if any move leads to a win for it
+      int toMove = pinks == magentas ? BridgItBoard.PINK : BridgItBoard.MAGENTA;
+      winner = BridgItBoard.other(toMove);
+      for (int k = 0, place = 1; k < this.size; k++, place *= 3) {
+        if (digits[k] == BridgItBoard.EMPTY && this.value(index + toMove * place) == toMove) {
+          winner = toMove;
+          break;
+        }
+      }
+    }
+    this.store(index, winner);
+  }
+
+  // The player whose edges are joined in the position, or EMPTY
+  int connected(int[] digits) {
+    if (this.joins(digits, BridgItBoard.PINK, this.pinkFrom, this.pinkTo, this.pinkNodes)) {
+      return BridgItBoard.PINK;
+    }
+    if (this.joins(digits, BridgItBoard.MAGENTA, this.magentaFrom, this.magentaTo,
+        this.magentaNodes)) {
+      return BridgItBoard.MAGENTA;
+    }
+    return BridgItBoard.EMPTY;
+  }
+
+  // Do player's cells join START to FINISH in the player's graph?
+  boolean joins(int[] digits, int player, int[] from, int[] to, int nodes) {
+    int[] root = new int[nodes];
+    for (int v = 0; v < nodes; v++) {
+      root[v] = v;
+    }
+    for (int k = 0; k < this.size; k++) {
+      if (digits[k] == player) {
+        int a = from[k];
+        while (root[a] != a) {
+          a = root[a];
+        }
+        int b = to[k];
+        while (root[b] != b) {
+          b = root[b];
+        }
+        root[a] = b;
+      }
+    }
+    int start = BridgItDotGraph.START;
+    while (root[start] != start) {
+      start = root[start];
+    }
+    int finish = BridgItDotGraph.FINISH;
+    while (root[finish] != finish) {
+      finish = root[finish];
+    }
+    return start == finish;
+  }
+
+  // The index of the board's position
+  int index(BridgItBoard board) {
+    if (board.n != this.n) {
+      throw new IllegalArgumentException("The board is not " + this.n + "x" + this.n + ".");
+    }
+    int index = 0;
+    for (int k = this.size - 1; k >= 0; k--) {
+      index = index * 3 + board.owner(this.cellOf[k]);
+    }
+    return index;
+  }
+
+  // The winner of the board with perfect play
+  int winner(BridgItBoard board) {
+    int winner = this.value(this.index(board));
+    if (winner == BridgItBoard.EMPTY) {
+      throw new IllegalArgumentException("The position does not come from alternating play.");
+    }
+    return winner;
+  }
+
+  // A move that keeps the win for player if there is one, or else any legal move
+  public int chooseMove(BridgItBoard board, int player) {
+    int index = this.index(board);
+    int fallback = -1;
+    for (int k = 0, place = 1; k < this.size; k++, place *= 3) {
+      if (board.owner(this.cellOf[k]) == BridgItBoard.EMPTY) {
+        if (this.value(index + player * place) == player) {
+          return this.cellOf[k];
+        }
+        fallback = fallback < 0 ? this.cellOf[k] : fallback;
+      }
+    }
+    if (fallback < 0) {
+      throw new IllegalStateException("No legal moves left.");
+    }
+    return fallback;
+  }
+
+  // Generates a tablebase: java BridgItTablebase n file
+  public static void main(String[] args) {
+    if (args.length < 2) {
+      System.out.println("usage: BridgItTablebase n file");
+      return;
+    }
+    long start = System.nanoTime();
+    BridgItTablebase table = generate(Integer.parseInt(args[0]), Path.of(args[1]));
+    System.out.println(table.positions + " positions in "
+        + (System.nanoTime() - start) / 1000000 + " ms");
+  }
+}
+
+// Examples and tests for the tablebase
+class ExamplesBridgItTablebase {
+  // A freshly generated table in a temporary file
+  BridgItTablebase table(int n) {
+    try {
+      Path file = Files.createTempFile("bridgit" + n, ".tb");
+      file.toFile().deleteOnExit();
+      return BridgItTablebase.generate(n, file);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  void testFirstPlayerWins(Tester t) {
+    t.checkExpect(this.table(5).winner(new BridgItBoard(5)), BridgItBoard.PINK);
+    t.checkExpect(this.table(7).winner(new BridgItBoard(7)), BridgItBoard.PINK);
+  }
+
+  void testMatchesSolver(Tester t) {
+    BridgItTablebase table = this.table(7);
+    BridgItSolver solver = new BridgItSolver(7);
+    java.util.SplittableRandom rand = new java.util.SplittableRandom(9);
+    int[] moves = new int[49];
+    for (int game = 0; game < 30; game++) {
+      BridgItBoard board = new BridgItBoard(7);
+      int toMove = BridgItBoard.PINK;
+      for (int ply = rand.nextInt(8); ply > 0 && board.winner() == BridgItBoard.EMPTY; ply--) {
+        int count = board.legalMoves(moves);
+        board.setOwner(moves[rand.nextInt(count)], toMove);
+        toMove = BridgItBoard.other(toMove);
+      }
+      if (board.winner() == BridgItBoard.EMPTY) {
+        t.checkExpect(table.winner(board), solver.solve(board, toMove).winner);
+      }
+    }
+  }
+
+  void testReopenAndPlay(Tester t) throws IOException {
+    Path file = Files.createTempFile("bridgit5", ".tb");
+    file.toFile().deleteOnExit();
+    BridgItTablebase.generate(5, file);
+    BridgItTablebase table = BridgItTablebase.open(5, file);
+
+    // The table as Pink beats the solver as Magenta
+    BridgItBoard board = new BridgItBoard(5);
+    BridgItSolver solver = new BridgItSolver(5);
+    int toMove = BridgItBoard.PINK;
+    while (board.winner() == BridgItBoard.EMPTY) {
+      int move = toMove == BridgItBoard.PINK ? table.chooseMove(board, toMove)
+          : solver.chooseMove(board, toMove);
+      board.setOwner(move, toMove);
+      toMove = BridgItBoard.other(toMove);
+    }
+    t.checkExpect(board.winner(), BridgItBoard.PINK);
+
+    t.checkException(new IllegalArgumentException("The position does not come from alternating play."),
+        table, "winner", new BridgItBoard(5) {
+          {
+            this.setOwner(this.index(1, 1), BridgItBoard.MAGENTA);
+          }
+        });
+  }
+
+  void testWrongFile(Tester t) throws IOException {
+    Path file = Files.createTempFile("bridgit5", ".tb");
+    file.toFile().deleteOnExit();
+    BridgItTablebase.generate(5, file);
+    t.checkException(new IllegalArgumentException("Not a BridgIt tablebase for size 7."),
+        this, "openAs", 7, file);
+    t.checkException(new IllegalArgumentException("Tablebases only exist for 5x5 and 7x7 boards."),
+        this, "openAs", 9, file);
+  }
+
+  // Opens file as a table of size n
+  BridgItTablebase openAs(int n, Path file) {
+    return BridgItTablebase.open(n, file);
+  }
+}
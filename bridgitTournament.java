@@ -0,0 +1,431 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import tester.*;
+
+// Plays a uniformly random legal move
+class BridgItRandomPolicy implements IBridgItPolicy {
+  final SplittableRandom rand;
+
+  // Constructor
+  BridgItRandomPolicy(long seed) {
+    this.rand = new SplittableRandom(seed);
+  }
+
+  public int chooseMove(BridgItBoard board, int player) {
+    int[] moves = new int[board.masks.cells];
+    int count = board.legalMoves(moves);
+    return moves[this.rand.nextInt(count)];
+  }
+}
+
+// Wins if it can, blocks if it must, and otherwise plays a random cell on its
+// own shortest path, preferring cells on the opponent's shortest path too
+class BridgItGreedyPolicy implements IBridgItPolicy {
+  static final int FAR = Integer.MAX_VALUE / 2;
+
+  final SplittableRandom rand;
+
+  // Constructor
+  BridgItGreedyPolicy(long seed) {
+    this.rand = new SplittableRandom(seed);
+  }
+
+  public int chooseMove(BridgItBoard board, int player) {
+    long[] mine = new long[board.masks.words];
+    long[] theirs = new long[board.masks.words];
+    int myDistance = shortestPathCells(board, player, mine);
+    int theirDistance = shortestPathCells(board, BridgItBoard.other(player), theirs);
+
+    long[] choices = mine;
+    if (myDistance != 1 && theirDistance == 1) {
+      choices = theirs; // Block the opponent's winning cell
+    } else if (myDistance != 1) {
+      long[] both = new long[mine.length];
+      boolean any = false;
+      for (int i = 0; i < mine.length; i++) {
+        both[i] = mine[i] & theirs[i];
+        any |= both[i] != 0;
+      }
+      if (any) {
+        choices = both;
+      }
+    }
+
+    int[] moves = new int[board.masks.cells];
+    int count = 0;
+    for (int i = 0; i < choices.length; i++) {
+      for (long rest = choices[i]; rest != 0; rest &= rest - 1) {
+        moves[count] = (i << 6) + Long.numberOfTrailingZeros(rest);
+        count++;
+      }
+    }
+    if (count == 0) {
+      count = board.legalMoves(moves); // Nothing helps any more, so play anything
+    }
+    return moves[this.rand.nextInt(count)];
+  }
+
+  // EFFECT: sets cells to the empty cells on some shortest path between the
+  // player's edges. Returns the number of empty cells on such a path, or FAR.
+  static int shortestPathCells(BridgItBoard board, int player, long[] cells) {
+    long[] start = player == BridgItBoard.PINK ? board.masks.firstCol : board.masks.firstRow;
+    long[] goal = player == BridgItBoard.PINK ? board.masks.lastCol : board.masks.lastRow;
+    int[] fromStart = distances(board, player, start);
+    int[] fromGoal = distances(board, player, goal);
+
+    int shortest = FAR;
+    for (int cell = 0; cell < board.masks.cells; cell++) {
+      if (BridgItMasks.get(goal, cell)) {
+        shortest = Math.min(shortest, fromStart[cell]);
+      }
+    }
+    if (shortest >= FAR) {
+      return FAR;
+    }
+
+    // An empty cell is counted in both distances, so subtract it once
+    for (int cell = 0; cell < board.masks.cells; cell++) {
+      if (board.isPlayable(cell) && fromStart[cell] + fromGoal[cell] - 1 == shortest) {
+        BridgItMasks.set(cells, cell);
+      }
+    }
+    return shortest;
+  }
+
+  // The number of empty cells the player needs to reach each cell from the
+  // given edge, moving through their own cells for free (0-1 breadth-first search)
+  static int[] distances(BridgItBoard board, int player, long[] edge) {
+    int n = board.n;
+    int cells = board.masks.cells;
+    long[] own = board.bitsOf(player);
+    int[] dist = new int[cells];
+    int[] deque = new int[2 * cells + 1];
+    int head = cells;
+    int tail = cells;
+    java.util.Arrays.fill(dist, FAR);
+
+    for (int cell = 0; cell < cells; cell++) {
+      if (BridgItMasks.get(edge, cell) && BridgItMasks.get(own, cell)) {
+        dist[cell] = 0;
+        deque[tail] = cell;
+        tail++;
+      }
+    }
+
+    while (head < tail) {
+      int cell = deque[head];
+      head++;
+      int row = cell / n;
+      int col = cell % n;
+      int[] next = {row > 0 ? cell - n : -1, row < n - 1 ? cell + n : -1,
+          col > 0 ? cell - 1 : -1, col < n - 1 ? cell + 1 : -1};
+      for (int other : next) {
+        if (other < 0) {
+          continue;
+        }
+        int step;
+        if (BridgItMasks.get(own, other)) {
+          step = 0;
+        } else if (board.isPlayable(other)) {
+          step = 1;
+        } else {
+          continue;
+        }
+        if (dist[cell] + step < dist[other]) {
+          dist[other] = dist[cell] + step;
+          // Free steps go to the front, paid steps to the back
+          if (step == 0) {
+            head--;
+            deque[head] = other;
+          } else {
+            deque[tail] = other;
+            tail++;
+          }
+        }
+      }
+    }
+    return dist;
+  }
+}
+
+// Makes a fresh policy for one game from that game's seed
+interface IBridgItPolicyMaker {
+  IBridgItPolicy make(long seed);
+}
+
+// Totals from a batch of games between policy A and policy B
+class BridgItTournamentResult {
+  int games;
+  int aGamesAsPink; // Games where A moved first
+  int aWinsAsPink;
+  int aGamesAsMagenta;
+  int aWinsAsMagenta;
+  int pinkWins; // Games won by whoever moved first
+  long moves; // Moves played over all games
+  long nanos; // Wall-clock time of the whole run
+
+  // EFFECT: adds the totals of other to this result
+  void add(BridgItTournamentResult other) {
+    this.games += other.games;
+    this.aGamesAsPink += other.aGamesAsPink;
+    this.aWinsAsPink += other.aWinsAsPink;
+    this.aGamesAsMagenta += other.aGamesAsMagenta;
+    this.aWinsAsMagenta += other.aWinsAsMagenta;
+    this.pinkWins += other.pinkWins;
+    this.moves += other.moves;
+  }
+
+  // The fraction of games A won
+  double aWinRate() {
+    return this.games == 0 ? 0 : (double) (this.aWinsAsPink + this.aWinsAsMagenta) / this.games;
+  }
+
+  // The fraction of games won by the first player
+  double pinkWinRate() {
+    return this.games == 0 ? 0 : (double) this.pinkWins / this.games;
+  }
+
+  // The average number of moves per game
+  double averageLength() {
+    return this.games == 0 ? 0 : (double) this.moves / this.games;
+  }
+
+  // Moves played per second of wall-clock time
+  double movesPerSecond() {
+    return this.nanos == 0 ? 0 : this.moves * 1e9 / this.nanos;
+  }
+
+  public String toString() {
+    return String.format("games: %d%n"
+        + "A as Pink: %d/%d wins%n"
+        + "A as Magenta: %d/%d wins%n"
+        + "A win rate: %.3f, Pink win rate: %.3f%n"
+        + "average length: %.2f moves, %.0f moves/sec",
+        this.games, this.aWinsAsPink, this.aGamesAsPink, this.aWinsAsMagenta, this.aGamesAsMagenta,
+        this.aWinRate(), this.pinkWinRate(), this.averageLength(), this.movesPerSecond());
+  }
+}
+
+// Plays a range of games, splitting it in half until it is small enough
+class BridgItMatchTask extends RecursiveTask<BridgItTournamentResult> {
+  private static final long serialVersionUID = 1L;
+
+  final BridgItTournament tournament;
+  final int from; // First game number, inclusive
+  final int to; // Last game number, exclusive
+
+  // Constructor
+  BridgItMatchTask(BridgItTournament tournament, int from, int to) {
+    this.tournament = tournament;
+    this.from = from;
+    this.to = to;
+  }
+
+  protected BridgItTournamentResult compute() {
+    if (this.to - this.from <= this.tournament.batch) {
+      BridgItTournamentResult result = new BridgItTournamentResult();
+      for (int game = this.from; game < this.to; game++) {
+        this.tournament.playGame(game, result);
+      }
+      return result;
+    }
+    int middle = (this.from + this.to) >>> 1;
+    BridgItMatchTask left = new BridgItMatchTask(this.tournament, this.from, middle);
+    BridgItMatchTask right = new BridgItMatchTask(this.tournament, middle, this.to);
+    left.fork();
+    BridgItTournamentResult result = right.compute();
+    result.add(left.join());
+    return result;
+  }
+}
+
+// Plays many headless BridgIt games between two policies on a work-stealing pool.
+// Sides alternate: A moves first in even-numbered games, B in odd-numbered ones.
+// Every game gets its own seed, so a run is repeatable for seeded policies.
+class BridgItTournament {
+  final int n; // Board size
+  final IBridgItPolicyMaker a;
+  final IBridgItPolicyMaker b;
+  final long seed;
+  final int batch; // Games a task plays without splitting further
+
+  // Constructor
+  BridgItTournament(int n, IBridgItPolicyMaker a, IBridgItPolicyMaker b, long seed) {
+    if (n < 3 || n % 2 == 0) {
+      throw new IllegalArgumentException("Board size must be an odd number >= 3.");
+    }
+    this.n = n;
+    this.a = a;
+    this.b = b;
+    this.seed = seed;
+    this.batch = 8;
+  }
+
+  // Plays the given number of games on the given pool
+  BridgItTournamentResult run(int games, ForkJoinPool pool) {
+    long start = System.nanoTime();
+    BridgItTournamentResult result = pool.invoke(new BridgItMatchTask(this, 0, games));
+    result.nanos = System.nanoTime() - start;
+    return result;
+  }
+
+  // Plays the given number of games on the common pool
+  BridgItTournamentResult run(int games) {
+    return this.run(games, ForkJoinPool.commonPool());
+  }
+
+  // The seed of the given game
+  long gameSeed(int game) {
+    return new SplittableRandom(this.seed + game * 0x9E3779B97F4A7C15L).nextLong();
+  }
+
+  // EFFECT: plays one game without a window and adds it to result
+  void playGame(int game, BridgItTournamentResult result) {
+    SplittableRandom rand = new SplittableRandom(this.gameSeed(game));
+    boolean aIsPink = game % 2 == 0;
+    IBridgItPolicy pa = this.a.make(rand.nextLong());
+    IBridgItPolicy pb = this.b.make(rand.nextLong());
+    IBridgItPolicy pink = aIsPink ? pa : pb;
+    IBridgItPolicy magenta = aIsPink ? pb : pa;
+
+    // The game runs on the board and its connectivity alone, with no World to end
+    BridgItBoard board = new BridgItBoard(this.n);
+    BridgItConnectivity connectivity = new BridgItConnectivity(board);
+    int player = BridgItBoard.PINK;
+    int winner = BridgItBoard.EMPTY;
+    int moves = 0;
+    while (winner == BridgItBoard.EMPTY) {
+      IBridgItPolicy mover = player == BridgItBoard.PINK ? pink : magenta;
+      int cell = mover.chooseMove(board.copy(), player);
+      board.setOwner(cell, player);
+      connectivity.claim(board, cell);
+      winner = connectivity.winner();
+      player = player == BridgItBoard.PINK ? BridgItBoard.MAGENTA : BridgItBoard.PINK;
+      moves++;
+    }
+
+    result.games++;
+    result.moves += moves;
+    if (winner == BridgItBoard.PINK) {
+      result.pinkWins++;
+    }
+    if (aIsPink) {
+      result.aGamesAsPink++;
+      if (winner == BridgItBoard.PINK) {
+        result.aWinsAsPink++;
+      }
+    } else {
+      result.aGamesAsMagenta++;
+      if (winner == BridgItBoard.MAGENTA) {
+        result.aWinsAsMagenta++;
+      }
+    }
+  }
+
+  // Makes the policy with the given name for boards of size n
+  static IBridgItPolicyMaker policy(String name, int n) {
+    if (name.equals("random")) {
+      return seed -> new BridgItRandomPolicy(seed);
+    } else if (name.equals("greedy")) {
+      return seed -> new BridgItGreedyPolicy(seed);
+    } else if (name.equals("mcts")) {
+      // One thread per game, since the games already run in parallel
+      return seed -> new BridgItMcts(1, 0, 2000, seed);
+    } else if (name.equals("solver")) {
+      BridgItTranspositionTable table = new BridgItTranspositionTable(22);
+      return seed -> new BridgItSolver(n, table);
+    } else if (name.equals("pairing")) {
+      return seed -> new BridgItPairingStrategy(n, seed);
+    } else {
+      throw new IllegalArgumentException("Unknown policy: " + name);
+    }
+  }
+
+  // Runs a tournament: java BridgItTournament n games policyA policyB [seed]
+  // Policies are random, greedy, mcts, solver and pairing
+  public static void main(String[] args) {
+    if (args.length < 4) {
+      System.out.println("usage: BridgItTournament n games policyA policyB [seed]");
+      return;
+    }
+    int n = Integer.parseInt(args[0]);
+    int games = Integer.parseInt(args[1]);
+    long seed = args.length > 4 ? Long.parseLong(args[4]) : 0L;
+    BridgItTournament tournament =
+        new BridgItTournament(n, policy(args[2], n), policy(args[3], n), seed);
+    System.out.println(tournament.run(games));
+  }
+}
+
+// Examples and tests for the tournament runner
+class ExamplesBridgItTournament {
+  void testRandomPolicyIsLegal(Tester t) {
+    BridgItRandomPolicy policy = new BridgItRandomPolicy(1);
+    BridgItBoard board = new BridgItBoard(9);
+    for (int i = 0; i < 20; i++) {
+      int move = policy.chooseMove(board, BridgItBoard.PINK);
+      t.checkExpect(board.isPlayable(move), true);
+      board.setOwner(move, BridgItBoard.PINK);
+    }
+  }
+
+  void testGreedyWinsAndBlocks(Tester t) {
+    BridgItBoard board = new BridgItBoard(5);
+    board.setOwner(board.index(1, 1), BridgItBoard.PINK);
+    board.setOwner(board.index(3, 3), BridgItBoard.MAGENTA);
+    BridgItGreedyPolicy greedy = new BridgItGreedyPolicy(3);
+
+    // Pink finishes row 1, and Magenta blocks it
+    t.checkExpect(greedy.chooseMove(board, BridgItBoard.PINK), board.index(1, 3));
+    t.checkExpect(greedy.chooseMove(board, BridgItBoard.MAGENTA), board.index(1, 3));
+  }
+
+  void testShortestPathCells(Tester t) {
+    BridgItBoard board = new BridgItBoard(5);
+    long[] cells = new long[1];
+
+    // Pink needs two cells on an empty 5x5 board, on row 1 or row 3
+    t.checkExpect(BridgItGreedyPolicy.shortestPathCells(board, BridgItBoard.PINK, cells), 2);
+    t.checkExpect(BridgItMasks.get(cells, board.index(1, 1)), true);
+    t.checkExpect(BridgItMasks.get(cells, board.index(3, 3)), true);
+    t.checkExpect(BridgItMasks.get(cells, board.index(2, 2)), false);
+  }
+
+  void testTournament(Tester t) {
+    BridgItTournament tournament = new BridgItTournament(7,
+        BridgItTournament.policy("greedy", 7), BridgItTournament.policy("random", 7), 42);
+    BridgItTournamentResult result = tournament.run(200);
+
+    t.checkExpect(result.games, 200);
+    t.checkExpect(result.aGamesAsPink, 100);
+    t.checkExpect(result.aGamesAsMagenta, 100);
+    t.checkExpect(result.aWinRate() > 0.8, true); // Greedy should crush random play
+    t.checkExpect(result.averageLength() >= 4, true); // Pink needs at least 3 cells on 7x7
+
+    // The same seed plays the same games
+    BridgItTournamentResult again = tournament.run(200);
+    t.checkExpect(again.aWinsAsPink, result.aWinsAsPink);
+    t.checkExpect(again.aWinsAsMagenta, result.aWinsAsMagenta);
+    t.checkExpect(again.moves, result.moves);
+  }
+
+  void testMctsGamesRepeat(Tester t) {
+    BridgItTournament tournament = new BridgItTournament(7,
+        BridgItTournament.policy("mcts", 7), BridgItTournament.policy("random", 7), 3);
+    BridgItTournamentResult result = tournament.run(6);
+    BridgItTournamentResult again = tournament.run(6);
+    t.checkExpect(again.moves, result.moves);
+    t.checkExpect(again.aWinsAsPink, result.aWinsAsPink);
+    t.checkExpect(again.aWinsAsMagenta, result.aWinsAsMagenta);
+  }
+
+  void testSolverBeatsGreedy(Tester t) {
+    BridgItTournament tournament = new BridgItTournament(5,
+        BridgItTournament.policy("solver", 5), BridgItTournament.policy("greedy", 5), 7);
+    BridgItTournamentResult result = tournament.run(20);
+
+    // Moving first, the solver never loses
+    t.checkExpect(result.aWinsAsPink, result.aGamesAsPink);
+  }
+}
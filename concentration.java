@@ -1,4 +1,5 @@
-import java.util.ArrayList;
+import java.util.Random;
+import java.util.random.RandomGenerator;
 import tester.*;
 import javalib.impworld.*;
 import java.awt.Color;
@@ -61,174 +62,608 @@ class Card {
     }
 }
 
+// The cards of a Concentration board in flat arrays, indexed by position
+// (row * cols + col). Positions are also grouped by value, with the unmatched
+// ones first in each group, so finding a match, a hint or the end of the game
+// never needs a scan of the board.
+class ConcentrationBoard {
+    static final byte DOWN = 0;    // states of a card
+    static final byte UP = 1;
+    static final byte MATCHED = 2;
+
+    static final int CONTINUE = 0; // results of a flip
+    static final int MATCH = 1;
+    static final int MISMATCH = 2;
+
+    static final String[] RANKS = {"A", "2", "3", "4", "5", "6", "7", "8", "9", "10", "J", "Q", "K"};
+    static final String[] SUITS = {"♣", "♦", "♥", "♠"};
+
+    final int rows;
+    final int cols;
+    final int kind;          // cards of one value that make a match
+    final int[] value;       // value (1 to 13) of the card at each position
+    final byte[] suit;       // index into SUITS of the card at each position
+    final byte[] state;      // DOWN, UP or MATCHED at each position
+    final boolean[] seen;    // has the card at each position been turned up, for every player to remember
+
+    final int[] byValue;     // positions grouped by value, unmatched first in each group
+    final int[] valueStart;  // where each value's group starts in byValue
+    final int[] unmatched;   // unmatched cards of each value
+    final int[] slot;        // where each position is in byValue
+
+    final int[] live;        // values that still have unmatched cards
+    final int[] liveIndex;   // where each value is in live
+    int liveCount;
+
+    final int[] up;          // positions turned up this turn, in order
+    int upCount;
+    int remaining;           // matches left to make
+
+    final int[] changed;     // positions whose state changed since the last drawing
+    final boolean[] isChanged;
+    int changedCount;
+
+    // Constructor dealing rows * cols cards from the given number of 52-card
+    // decks, in whole matches of kind cards of one value
+    ConcentrationBoard(int rows, int cols, int decks, int kind, RandomGenerator rand) {
+        checkDeal(rows, cols, decks, kind);
+        int cards = rows * cols;
+        this.rows = rows;
+        this.cols = cols;
+        this.kind = kind;
+
+        // Shuffle every card of the decks, then take matches in the order their
+        // last card turns up, so the matches used are a random choice too
+        int total = RANKS.length * SUITS.length * decks;
+        int[] deck = new int[total];
+        for (int i = 0; i < total; i++) {
+            deck[i] = i % (RANKS.length * SUITS.length);
+        }
+        shuffle(deck, rand);
+        int[][] pending = new int[RANKS.length][kind];
+        int[] pendingCount = new int[RANKS.length];
+        int[] dealt = new int[cards];
+        int count = 0;
+        for (int i = 0; i < total && count < cards; i++) {
+            int rank = deck[i] % RANKS.length;
+            pending[rank][pendingCount[rank]++] = deck[i];
+            if (pendingCount[rank] == kind) {
+                System.arraycopy(pending[rank], 0, dealt, count, kind);
+                count += kind;
+                pendingCount[rank] = 0;
+            }
+        }
+        shuffle(dealt, rand);
+
+        this.value = new int[cards];
+        this.suit = new byte[cards];
+        this.state = new byte[cards];
+        this.seen = new boolean[cards];
+        this.unmatched = new int[RANKS.length + 1];
+        for (int pos = 0; pos < cards; pos++) {
+            this.value[pos] = dealt[pos] % RANKS.length + 1;
+            this.suit[pos] = (byte) (dealt[pos] / RANKS.length);
+            this.unmatched[this.value[pos]]++;
+        }
+
+        // Group the positions by value
+        this.valueStart = new int[RANKS.length + 2];
+        for (int v = 1; v <= RANKS.length; v++) {
+            this.valueStart[v + 1] = this.valueStart[v] + this.unmatched[v];
+        }
+        this.byValue = new int[cards];
+        this.slot = new int[cards];
+        int[] next = this.valueStart.clone();
+        for (int pos = 0; pos < cards; pos++) {
+            this.slot[pos] = next[this.value[pos]];
+            this.byValue[next[this.value[pos]]++] = pos;
+        }
+
+        this.live = new int[RANKS.length];
+        this.liveIndex = new int[RANKS.length + 1];
+        for (int v = 1; v <= RANKS.length; v++) {
+            if (this.unmatched[v] > 0) {
+                this.liveIndex[v] = this.liveCount;
+                this.live[this.liveCount++] = v;
+            }
+        }
+        this.up = new int[kind];
+        this.remaining = cards / kind;
+        this.changed = new int[cards];
+        this.isChanged = new boolean[cards];
+    }
+
+    // EFFECT: throws if a rows x cols board cannot be dealt from the given number
+    // of decks in whole matches of kind cards
+    static void checkDeal(int rows, int cols, int decks, int kind) {
+        if (rows < 1 || cols < 1 || decks < 1) {
+            throw new IllegalArgumentException("The board needs at least one row, column and deck.");
+        }
+        if (kind < 2 || (SUITS.length * decks) % kind != 0) {
+            throw new IllegalArgumentException("Matching " + kind + " of a kind needs a multiple of "
+                + kind + " cards of each value.");
+        }
+        int cards = rows * cols;
+        if (cards % kind != 0 || cards > RANKS.length * SUITS.length * decks) {
+            throw new IllegalArgumentException("A " + rows + "x" + cols + " board cannot be dealt in whole matches.");
+        }
+    }
+
+    // EFFECT: shuffles the cards so that every order is equally likely (Fisher-Yates)
+    static void shuffle(int[] cards, RandomGenerator rand) {
+        for (int i = cards.length - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            int temp = cards[i];
+            cards[i] = cards[j];
+            cards[j] = temp;
+        }
+    }
+
+    // The number of cards on the board
+    int size() {
+        return this.value.length;
+    }
+
+    // The position of the card at the given row and column
+    int position(int row, int col) {
+        return row * this.cols + col;
+    }
+
+    // The card at the given position, for drawing
+    Card card(int pos) {
+        Card card = new Card(RANKS[this.value[pos] - 1], SUITS[this.suit[pos]], this.value[pos]);
+        card.isFaceUp = this.state[pos] == UP;
+        card.isMatched = this.state[pos] == MATCHED;
+        return card;
+    }
+
+    // Can the card at the given position be turned up this turn?
+    boolean canFlip(int pos) {
+        return this.state[pos] == DOWN && this.upCount < this.kind;
+    }
+
+    // EFFECT: turns up the card at the given position. Returns MATCH if it
+    // completes a match, MISMATCH if it differs from the cards already up, and
+    // CONTINUE if the turn goes on.
+    int flip(int pos) {
+        this.setState(pos, UP);
+        this.seen[pos] = true;
+        this.up[this.upCount++] = pos;
+        if (this.value[pos] != this.value[this.up[0]]) {
+            return MISMATCH;
+        }
+        if (this.upCount < this.kind) {
+            return CONTINUE;
+        }
+        for (int i = 0; i < this.kind; i++) {
+            this.match(this.up[i]);
+        }
+        this.upCount = 0;
+        this.remaining--;
+        return MATCH;
+    }
+
+    // EFFECT: changes the state of the card, noting that it must be drawn again
+    void setState(int pos, byte state) {
+        this.state[pos] = state;
+        if (!this.isChanged[pos]) {
+            this.isChanged[pos] = true;
+            this.changed[this.changedCount++] = pos;
+        }
+    }
+
+    // EFFECT: forgets the changes, once they are drawn
+    void clearChanged() {
+        for (int i = 0; i < this.changedCount; i++) {
+            this.isChanged[this.changed[i]] = false;
+        }
+        this.changedCount = 0;
+    }
+
+    // EFFECT: marks the card matched and moves it out of its value's unmatched cards
+    void match(int pos) {
+        int v = this.value[pos];
+        this.setState(pos, MATCHED);
+        int last = this.valueStart[v] + this.unmatched[v] - 1;
+        int other = this.byValue[last];
+        this.byValue[this.slot[pos]] = other;
+        this.slot[other] = this.slot[pos];
+        this.byValue[last] = pos;
+        this.slot[pos] = last;
+        this.unmatched[v]--;
+        if (this.unmatched[v] == 0) {
+            int moved = this.live[--this.liveCount];
+            this.live[this.liveIndex[v]] = moved;
+            this.liveIndex[moved] = this.liveIndex[v];
+        }
+    }
+
+    // EFFECT: turns the cards of a mismatched turn face down again
+    void hideUp() {
+        for (int i = 0; i < this.upCount; i++) {
+            this.setState(this.up[i], DOWN);
+        }
+        this.upCount = 0;
+    }
+
+    // The positions of one match still on the board, or null once it is cleared
+    int[] hint() {
+        if (this.liveCount == 0) {
+            return null;
+        }
+        int v = this.live[0];
+        return java.util.Arrays.copyOfRange(this.byValue, this.valueStart[v], this.valueStart[v] + this.kind);
+    }
+
+    // Has every card been matched?
+    boolean isCleared() {
+        return this.remaining == 0;
+    }
+}
+
+// Every image a card can show, built once and shared by all boards: the back,
+// the matched blank, and the face of each rank and suit
+class ConcentrationAtlas {
+    static final ConcentrationAtlas SHARED = new ConcentrationAtlas();
+
+    final WorldImage faceDown;
+    final WorldImage matched;
+    final WorldImage[][] faceUp; // faceUp[value - 1][suit]
+
+    // Constructor drawing each image once with Card.draw
+    ConcentrationAtlas() {
+        Card card = new Card(ConcentrationBoard.RANKS[0], ConcentrationBoard.SUITS[0], 1);
+        this.faceDown = card.draw();
+        card.isMatched = true;
+        this.matched = card.draw();
+        this.faceUp = new WorldImage[ConcentrationBoard.RANKS.length][ConcentrationBoard.SUITS.length];
+        for (int rank = 0; rank < ConcentrationBoard.RANKS.length; rank++) {
+            for (int suit = 0; suit < ConcentrationBoard.SUITS.length; suit++) {
+                Card face = new Card(ConcentrationBoard.RANKS[rank], ConcentrationBoard.SUITS[suit], rank + 1);
+                face.isFaceUp = true;
+                this.faceUp[rank][suit] = face.draw();
+            }
+        }
+    }
+
+    // The image of the card at the given position of the board
+    WorldImage image(ConcentrationBoard board, int pos) {
+        if (board.state[pos] == ConcentrationBoard.MATCHED) {
+            return this.matched;
+        } else if (board.state[pos] == ConcentrationBoard.UP) {
+            return this.faceUp[board.value[pos] - 1][board.suit[pos]];
+        } else {
+            return this.faceDown;
+        }
+    }
+}
+
 //Represents the Concentration game
 class ConcentrationGame extends World {
- ArrayList<ArrayList<Card>> board; 
- ArrayList<Card> flippedCards;    
- int score;                       // number of remaining pairs 
- int noMatchReset;              
+ static final long HIDE_DELAY = 2000000000L; // nanoseconds a mismatch stays up
+ static final int VIEW_ROWS = 8;  // most rows and columns of cards shown at once
+ static final int VIEW_COLS = 16;
+
+ ConcentrationBoard board;
+ int score;                       // number of remaining matches 
+ int turns;                       // turns finished, for the rating at the end
+ int players;                     // 1, or 2 taking turns
+ boolean versusBot;               // does the bot play the second player?
+ ConcentrationBot bot;            // the second player's bot, or null
+ int current;                     // whose turn it is, 0 or 1
+ int[] pairs;                     // matches made by each player
+ boolean learned;                 // has this turn turned up an unseen card?
+ boolean passed;                  // did the last turn only turn up seen cards?
+ ConcentrationTimerWheel timers;  // runs delayed events, and may be shared by many games
+ ConcentrationTimer hideTimer;    // turns a mismatch face down again, or null
+ long hides;                      // mismatches scheduled to be hidden so far
+ volatile long hidesDue;          // the last of them whose delay has passed
+ Random rand;                     // shuffles the deck
+ int rows;                        // size of the board and its deal
+ int cols;
+ int decks;
+ int kind;
+ WorldScene scene;                // the scene drawn last frame, or null if it must be rebuilt
+ String drawnScore;               // the score on that scene
+ int overdrawn;                   // cards drawn on top of it since it was built
+ int viewRows;                    // rows and columns of cards in the viewport
+ int viewCols;
+ int rowOffset;                   // the first row and column in the viewport
+ int colOffset;
 
- // Constructor
+ // Constructor for the classic board: one deck in 4 rows of 13, matched in pairs
  ConcentrationGame() {
-     this.resetGame();
+     this(new Random());
  }
 
- // Reset the game
- public void resetGame() {
-     this.board = this.initBoard();
-     this.flippedCards = new ArrayList<>();
-     this.score = 26; //(starting from 26 pairs from 52 cards)
-     this.noMatchReset = 0; 
+ // Constructor with the given source of shuffles, for repeatable games
+ ConcentrationGame(Random rand) {
+     this(4, 13, 1, 2, rand);
  }
 
+ // Constructor for a rows x cols board dealt from the given number of decks,
+ // where kind cards of one value make a match
+ ConcentrationGame(int rows, int cols, int decks, int kind, Random rand) {
+     this(rows, cols, decks, kind, rand, new ConcentrationTimerWheel());
+ }
 
- // Shuffles a deck of cards and creates a 4x13 grid from it
- public ArrayList<ArrayList<Card>> initBoard() {
-     ArrayList<Card> deck = this.createDeck();
-     this.shuffleDeck(deck);
-     ArrayList<ArrayList<Card>> board = new ArrayList<>();
-     int index = 0;
+ // Constructor that schedules its delayed events on the given timer wheel
+ ConcentrationGame(int rows, int cols, int decks, int kind, Random rand, ConcentrationTimerWheel timers) {
+     this.timers = timers;
+     this.rand = rand;
+     this.players = 1;
+     this.rows = rows;
+     this.cols = cols;
+     this.decks = decks;
+     this.kind = kind;
+     this.viewRows = Math.min(rows, VIEW_ROWS);
+     this.viewCols = Math.min(cols, VIEW_COLS);
+     this.resetGame();
+ }
 
-     for (int i = 0; i < 4; i++) {
-         ArrayList<Card> row = new ArrayList<>();
-         for (int j = 0; j < 13; j++) {
-             row.add(deck.get(index));
-             index++;
-         }
-         board.add(row);
+ // Reset the game
+ public void resetGame() {
+     if (this.hideTimer != null) {
+         this.timers.cancel(this.hideTimer);
+         this.hideTimer = null;
      }
+     this.board = new ConcentrationBoard(this.rows, this.cols, this.decks, this.kind, this.rand);
+     this.score = this.board.remaining;
+     this.turns = 0;
+     this.current = 0;
+     this.pairs = new int[2];
+     this.learned = false;
+     this.passed = false;
+     ConcentrationDuelSolver duel = this.versusBot ? ConcentrationDuelSolver.forDuel(this.board) : null;
+     this.bot = duel == null ? null : new ConcentrationBot(duel, this.rand);
+     this.scene = null;
+ }
 
-     return board;
+ // EFFECT: starts a new game for the given number of players, where the bot
+ // plays the second player if versusBot is set and the board can be solved
+ void setPlayers(int players, boolean versusBot) {
+     this.players = players;
+     this.versusBot = players == 2 && versusBot;
+     this.resetGame();
  }
 
+ // Is it the bot's turn?
+ boolean isBotTurn() {
+     return this.bot != null && this.current == 1;
+ }
 
- // create card deck 
- public ArrayList<Card> createDeck() {
-     ArrayList<Card> deck = new ArrayList<>();
+    // The width of the scene in pixels
+    int width() {
+        return 60 * this.viewCols + 20;
+    }
 
-     // define suits and ranks 
-     ArrayList<String> suits = new ArrayList<>();
-     suits.add("♣");
-     suits.add("♦");
-     suits.add("♥");
-     suits.add("♠");
+    // The height of the cards in pixels, with the score below them
+    int height() {
+        return 80 * this.viewRows;
+    }
 
-     ArrayList<String> ranks = new ArrayList<>();
-     ranks.add("A");
-     for (int i = 2; i <= 10; i++) {
-         ranks.add(String.valueOf(i));
-     }
-     ranks.add("J");
-     ranks.add("Q");
-     ranks.add("K");
-
-     // combine suits and ranks
-     for (String suit : suits) {
-         for (int i = 0; i < ranks.size(); i++) {
-             deck.add(new Card(ranks.get(i), suit, i + 1));
-         }
-     }
+    // EFFECT: moves the viewport by the given rows and columns, as far as the board goes
+    void scroll(int rows, int cols) {
+        int row = Math.max(0, Math.min(this.rows - this.viewRows, this.rowOffset + rows));
+        int col = Math.max(0, Math.min(this.cols - this.viewCols, this.colOffset + cols));
+        if (row != this.rowOffset || col != this.colOffset) {
+            this.rowOffset = row;
+            this.colOffset = col;
+            this.scene = null;
+        }
+    }
 
-     return deck;
- }
+    // EFFECT: moves the viewport just enough to show the card at the position
+    void scrollTo(int pos) {
+        int row = pos / this.cols;
+        int col = pos % this.cols;
+        this.scroll(Math.min(0, row - this.rowOffset) + Math.max(0, row - this.rowOffset - this.viewRows + 1),
+            Math.min(0, col - this.colOffset) + Math.max(0, col - this.colOffset - this.viewCols + 1));
+    }
 
- // EFFECT: Shuffles the deck 
-    public void shuffleDeck(ArrayList<Card> deck) {
-        for (int i = 0; i < deck.size(); i++) {
-            int randomIndex = (int) (Math.random() * deck.size());
-            Card temp = deck.get(i);
-            deck.set(i, deck.get(randomIndex));
-            deck.set(randomIndex, temp);
+    // Is the card at the position inside the viewport?
+    boolean isVisible(int pos) {
+        int row = pos / this.cols - this.rowOffset;
+        int col = pos % this.cols - this.colOffset;
+        return row >= 0 && row < this.viewRows && col >= 0 && col < this.viewCols;
+    }
+
+    // The position of the card under the given point of the scene, or -1
+    int cardAt(Posn pos) {
+        int row = Math.floorDiv(pos.y, 80);
+        int col = Math.floorDiv(pos.x, 60);
+        if (row < 0 || row >= this.viewRows || col < 0 || col >= this.viewCols) {
+            return -1;
         }
+        return this.board.position(row + this.rowOffset, col + this.colOffset);
     }
+
     // Draw the game scene w/ cards and scoreDisplay 
+    // Card images come from the shared atlas. Only the cards in the viewport are
+    // drawn, and only those that changed since the last frame, on top of the
+    // cached scene, until the overdrawn cards outnumber the viewport and the scene
+    // is rebuilt. So a frame costs the same however big the board is.
     public WorldScene makeScene() {
-        WorldScene scene = new WorldScene(800, 320);
+        if (this.scene == null || this.overdrawn > this.viewRows * this.viewCols) {
+            this.scene = new WorldScene(this.width(), this.height());
+            this.overdrawn = 0;
 
-        scene.placeImageXY(new RectangleImage(800, 320, OutlineMode.SOLID, Color.WHITE), 400, 160);
+            this.scene.placeImageXY(new RectangleImage(this.width(), this.height(), OutlineMode.SOLID, Color.WHITE),
+                this.width() / 2, this.height() / 2);
+
+            for (int row = this.rowOffset; row < this.rowOffset + this.viewRows; row++) {
+                for (int col = this.colOffset; col < this.colOffset + this.viewCols; col++) {
+                    this.placeCard(this.board.position(row, col));
+                }
+            }
 
-        for (int i = 0; i < 4; i++) {
-            for (int j = 0; j < 13; j++) {
-                Card card = this.board.get(i).get(j);
-                WorldImage cardImage = card.draw();
-                scene.placeImageXY(cardImage, 60 * j + 30, 80 * i + 40);
+            this.placeScore();
+        } else {
+            for (int i = 0; i < this.board.changedCount; i++) {
+                if (this.isVisible(this.board.changed[i])) {
+                    this.placeCard(this.board.changed[i]);
+                    this.overdrawn++;
+                }
+            }
+            if (!this.scoreText().equals(this.drawnScore)) {
+                // Cover the old score first
+                this.scene.placeImageXY(new RectangleImage(this.width(), 40, OutlineMode.SOLID, Color.WHITE),
+                    this.width() / 2, this.height() + 20);
+                this.placeScore();
             }
         }
 
-        WorldImage scoreDisplay = new TextImage("Score: " + this.score, 24, Color.BLACK);
-           
-        scene.placeImageXY(scoreDisplay, 400, 340); 
+        this.board.clearChanged();
+        this.drawnScore = this.scoreText();
+        return this.scene;
+    }
 
-        
-        return scene;
+    // EFFECT: places the image of the card at the given position on the cached scene
+    void placeCard(int pos) {
+        this.scene.placeImageXY(ConcentrationAtlas.SHARED.image(this.board, pos),
+            60 * (pos % this.cols - this.colOffset) + 30, 80 * (pos / this.cols - this.rowOffset) + 40);
     }
 
-    // EFFECT: flips a card on the board and adds it to the list of flipped cards
+    // EFFECT: places the score on the cached scene
+    void placeScore() {
+        WorldImage scoreDisplay = new TextImage(this.scoreText(), 24, Color.BLACK);
+        this.scene.placeImageXY(scoreDisplay, this.width() / 2, this.height() + 20);
+    }
+
+    // The score line: matches left, or each player's pairs and whose turn it is
+    String scoreText() {
+        if (this.players == 1) {
+            return "Score: " + this.score;
+        }
+        return "Player 1: " + this.pairs[0] + "   Player 2" + (this.bot != null ? " (bot)" : "") + ": "
+            + this.pairs[1] + "   Turn: Player " + (this.current + 1);
+    }
+
+    // EFFECT: turns up a card on the board, and checks it against the cards already up
     public void onMouseClicked(Posn pos) {
-        int row = pos.y / 80;
-        int col = pos.x / 60;
+        int position = this.cardAt(pos);
+        if (position >= 0 && this.hideTimer == null && !this.isBotTurn() && this.board.canFlip(position)) {
+            this.play(position);
+        }
+    }
 
-        if (row < 4 && col < 13 && this.noMatchReset == 0) {
-            Card card = this.board.get(row).get(col);
-            if (!card.isFaceUp && !card.isMatched && this.flippedCards.size() < 2) {
-                card.flip();
-                this.flippedCards.add(card);
+    // EFFECT: turns up the card at the position, and checks it against the cards already up
+    void play(int position) {
+        this.learned |= !this.board.seen[position];
+        this.checkMatch(this.board.flip(position));
+    }
 
-                if (this.flippedCards.size() == 2) {
-                    this.checkMatch();
-                }
+ // EFFECT: updates the score for a match, or starts the delay before a mismatch is hidden
+    public void checkMatch(int result) {
+        if (result != ConcentrationBoard.CONTINUE) {
+            this.turns++;
+        }
+        if (result == ConcentrationBoard.MATCH) {
+            // A match earns another turn
+            this.score = this.board.remaining;
+            this.pairs[this.current]++;
+            this.learned = false;
+            this.passed = false;
+
+            if (this.board.isCleared()) {
+                this.endOfWorld(this.winner());
             }
+        } else if (result == ConcentrationBoard.MISMATCH) {
+            // Against the bot, two passes in a row end the game, as its solver expects
+            boolean pass = !this.learned;
+            this.learned = false;
+            if (this.versusBot && pass && this.passed) {
+                this.endOfWorld(this.winner());
+                return;
+            }
+            this.passed = pass;
+            // The wheel may run the task on any thread, so it only marks the hide as
+            // due, and onTick does it on this game's own thread
+            long hide = ++this.hides;
+            this.hideTimer = this.timers.schedule(HIDE_DELAY, () -> this.hidesDue = hide);
         }
     }
 
- // EFFECT: Check if the flipped cards match
-    public void checkMatch() {
-        Card card1 = this.flippedCards.get(0);
-        Card card2 = this.flippedCards.get(1);
+    // The message at the end of the game
+    String winner() {
+        if (this.players == 1) {
+            return "You Win!";
+        } else if (this.pairs[0] == this.pairs[1]) {
+            return "It's a Draw!";
+        }
+        return "Player " + (this.pairs[0] > this.pairs[1] ? 1 : 2) + " Wins!";
+    }
 
-        if (card1.value == card2.value) {
-            card1.isMatched = true;
-            card2.isMatched = true;
-            this.score -= 1;
-            this.flippedCards.clear();
+    // How the turns taken compare with a perfect memory, once the board is
+    // cleared, or null if it is not or the board cannot be solved
+    String rating() {
+        ConcentrationSolver solver = this.players == 1 && this.board.isCleared()
+            ? ConcentrationSolver.forBoard(this.board) : null;
+        if (solver == null) {
+            return null;
+        }
+        return String.format("Turns: %d, perfect memory averages %.1f", this.turns, solver.expectedTurns());
+    }
 
-            if (this.score == 0) {
-                this.endOfWorld("You Win!");
-            }
-        } else {
-            this.noMatchReset = 20;
+    // EFFECT: hides the mismatched cards (facing them down again)
+    void hideMismatch() {
+        this.board.hideUp();
+        this.hideTimer = null;
+        if (this.players == 2) {
+            this.current = 1 - this.current;
         }
     }
 
-    //EFFECT:  resets the board by hiding unmatched cards (facing them down again) after a short delay
+    //EFFECT:  runs the delayed events that are due, such as hiding a mismatch,
+    // and lets the bot turn up one card on its turn
+    // The delay is measured on the clock, not in ticks, so it does not depend on the tick rate
     public void onTick() {
-        if (this.noMatchReset > 0) {
-            this.noMatchReset -= 1;
-            if (this.noMatchReset == 0) {
-                for (Card card : this.flippedCards) {
-                    card.flip();
-                }
-                this.flippedCards.clear();
-            }
+        this.timers.advance();
+        if (this.hideTimer != null && this.hidesDue == this.hides) {
+            this.hideMismatch();
+        }
+        if (this.isBotTurn() && this.hideTimer == null && !this.board.isCleared()) {
+            this.play(this.bot.choose(this.board));
         }
     }
 
 
-    // EFFECT: Resets the game state when the "r" key is pressed
+    // EFFECT: Resets the game state when the "r" key is pressed, starts a
+    // new game alone ("1"), for two players ("2") or against the bot ("b"), and
+    // scrolls the viewport with the arrow keys
     public void onKeyEvent(String key) {
-        if (key.equals("r")) {
+        if (key.equals("up")) {
+            this.scroll(-1, 0);
+        } else if (key.equals("down")) {
+            this.scroll(1, 0);
+        } else if (key.equals("left")) {
+            this.scroll(0, -1);
+        } else if (key.equals("right")) {
+            this.scroll(0, 1);
+        } else if (key.equals("r")) {
             this.resetGame();
+        } else if (key.equals("1")) {
+            this.setPlayers(1, false);
+        } else if (key.equals("2")) {
+            this.setPlayers(2, false);
+        } else if (key.equals("b")) {
+            this.setPlayers(2, true);
         }
     }
 
  // EFFECT: Ends the game with a "You Win" message.
     public WorldScene lastScene(String msg) {
       WorldScene scene = this.makeScene();
+      this.scene = null; // The message goes on the cached scene, so rebuild it next frame
       WorldImage winMessage = new OverlayImage(
           new TextImage(msg, 48, new Color(34, 139, 34)),
           new RectangleImage(400, 100, OutlineMode.SOLID, Color.WHITE)
       );
-      scene.placeImageXY(winMessage, 400, 160);
+      scene.placeImageXY(winMessage, this.width() / 2, this.height() / 2);
+      String rating = this.rating();
+      if (rating != null) {
+          scene.placeImageXY(new TextImage(rating, 16, Color.BLACK), this.width() / 2, this.height() / 2 + 36);
+      }
       return scene;
   }
 }
@@ -289,21 +724,62 @@ class ExamplesConcentrationGame {
      ConcentrationGame game = new ConcentrationGame();
 
      // Test board initialization
-     t.checkExpect(game.board.size(), 4);
-     for (ArrayList<Card> row : game.board) {
-         t.checkExpect(row.size(), 13);
-     }
+     t.checkExpect(game.board.rows, 4);
+     t.checkExpect(game.board.cols, 13);
+     t.checkExpect(game.board.size(), 52);
 
      // Test flipping cards via onMouseClicked
-     Card card1 = game.board.get(0).get(0);
      game.onMouseClicked(new Posn(30, 40));
-     t.checkExpect(card1.isFaceUp, true); // Expect card1 to be flipped
-     t.checkExpect(game.flippedCards.size(), 1); // Ensure it's added to flippedCards
+     t.checkExpect(game.board.card(0).isFaceUp, true); // Expect card1 to be flipped
+     t.checkExpect(game.board.upCount, 1); // Ensure it's counted as turned up
 
      // Test reset functionality
      game.onKeyEvent("r");
      t.checkExpect(game.score, 26);
-     t.checkExpect(game.flippedCards.size(), 0);
+     t.checkExpect(game.board.upCount, 0);
+ }
+
+ // Test seeded shuffles
+ void testSeededShuffle(Tester t) {
+     ConcentrationGame a = new ConcentrationGame(new Random(5));
+     ConcentrationGame b = new ConcentrationGame(new Random(5));
+     int[] counts = new int[14];
+     for (int pos = 0; pos < 52; pos++) {
+         t.checkExpect(a.board.value[pos], b.board.value[pos]);
+         t.checkExpect(a.board.suit[pos], b.board.suit[pos]);
+         counts[a.board.value[pos]]++;
+     }
+     // Still every card of the deck, four of each value
+     for (int value = 1; value <= 13; value++) {
+         t.checkExpect(counts[value], 4);
+     }
+ }
+
+ // The position of another unmatched card of the same value as pos
+ int partner(ConcentrationBoard board, int pos) {
+     for (int other = 0; other < board.size(); other++) {
+         if (other != pos && board.value[other] == board.value[pos] && board.state[other] == ConcentrationBoard.DOWN) {
+             return other;
+         }
+     }
+     return -1;
+ }
+
+ // The position of a card of a different value from pos
+ int stranger(ConcentrationBoard board, int pos) {
+     for (int other = 0; other < board.size(); other++) {
+         if (board.value[other] != board.value[pos]) {
+             return other;
+         }
+     }
+     return -1;
+ }
+
+ // EFFECT: scrolls the card at the position into view and clicks on it
+ void click(ConcentrationGame game, int pos) {
+     game.scrollTo(pos);
+     game.onMouseClicked(new Posn(60 * (pos % game.cols - game.colOffset) + 30,
+         80 * (pos / game.cols - game.rowOffset) + 40));
  }
 
  // Test card matching logic
@@ -311,16 +787,12 @@ class ExamplesConcentrationGame {
      ConcentrationGame game = new ConcentrationGame();
 
      // Flip two matching cards
-     Card card1 = game.board.get(0).get(0);
-     Card card2 = new Card(card1.rank, card1.suit, card1.value); // Duplicate card
-     game.board.get(1).set(0, card2); // Place it on the board
-
+     int other = this.partner(game.board, 0);
      game.onMouseClicked(new Posn(30, 40)); // Flip card1
-     game.onMouseClicked(new Posn(30, 120)); // Flip card2
-     t.checkExpect(card1.isFaceUp, true);
-     t.checkExpect(card2.isFaceUp, true);
-     t.checkExpect(card1.isMatched, true);
-     t.checkExpect(card2.isMatched, true);
+     game.onMouseClicked(new Posn(60 * (other % 13) + 30, 80 * (other / 13) + 40)); // Flip card2
+     t.checkExpect(game.board.card(0).isMatched, true);
+     t.checkExpect(game.board.card(other).isMatched, true);
+     t.checkExpect(game.board.upCount, 0);
 
      // Score should decrease by 1
      t.checkExpect(game.score, 25);
@@ -328,25 +800,115 @@ class ExamplesConcentrationGame {
 
  // Test mismatch logic
  void testMismatchLogic(Tester t) {
-     ConcentrationGame game = new ConcentrationGame();
+     ConcentrationManualClock clock = new ConcentrationManualClock();
+     ConcentrationGame game = new ConcentrationGame(4, 13, 1, 2, new Random(),
+         new ConcentrationTimerWheel(10000000L, 6, clock));
 
      // Flip two non-matching cards
-     Card card1 = game.board.get(0).get(0);
-     Card card2 = game.board.get(0).get(1);
+     int other = this.stranger(game.board, 0);
      game.onMouseClicked(new Posn(30, 40)); // Flip card1
-     game.onMouseClicked(new Posn(90, 40)); // Flip card2
-     t.checkExpect(card1.isFaceUp, true);
-     t.checkExpect(card2.isFaceUp, true);
+     game.onMouseClicked(new Posn(60 * (other % 13) + 30, 80 * (other / 13) + 40)); // Flip card2
+     t.checkExpect(game.board.card(0).isFaceUp, true);
+     t.checkExpect(game.board.card(other).isFaceUp, true);
 
-     // Simulate 20 ticks for delay
+     // Ticks before the delay is over change nothing, and clicks are ignored
+     clock.add(ConcentrationGame.HIDE_DELAY - 1);
      for (int i = 0; i < 20; i++) {
          game.onTick();
      }
+     t.checkExpect(game.board.card(0).isFaceUp, true);
+     game.onMouseClicked(new Posn(90, 120));
+     t.checkExpect(game.board.upCount, 2);
+
+     // Cards should flip back once it is over
+     clock.add(1);
+     game.onTick();
+     t.checkExpect(game.board.card(0).isFaceUp, false);
+     t.checkExpect(game.board.card(other).isFaceUp, false);
+     t.checkExpect(game.board.upCount, 0);
+ }
+
+ // Test that a shared wheel advanced by another game leaves the hide to this game's tick
+ void testSharedWheel(Tester t) {
+     ConcentrationManualClock clock = new ConcentrationManualClock();
+     ConcentrationTimerWheel wheel = new ConcentrationTimerWheel(10000000L, 6, clock);
+     ConcentrationGame game = new ConcentrationGame(4, 13, 1, 2, new Random(2), wheel);
+     ConcentrationGame other = new ConcentrationGame(4, 13, 1, 2, new Random(3), wheel);
+     int stranger = this.stranger(game.board, 0);
+     game.play(0);
+     game.play(stranger);
+
+     clock.add(ConcentrationGame.HIDE_DELAY);
+     other.onTick();
+     t.checkExpect(game.board.upCount, 2);
+     t.checkExpect(game.hideTimer.isPending(), false);
+     game.onTick();
+     t.checkExpect(game.board.upCount, 0);
+     t.checkExpect(game.hideTimer, null);
+
+     // A hide that came due before a reset does not reach the new game
+     game.play(0);
+     game.play(stranger);
+     clock.add(ConcentrationGame.HIDE_DELAY);
+     other.onTick();
+     game.onKeyEvent("r");
+     game.play(0);
+     game.play(this.stranger(game.board, 0));
+     game.onTick();
+     t.checkExpect(game.board.upCount, 2);
+ }
+
+ // Test boards of other sizes, decks and matches
+ void testConfigurableBoards(Tester t) {
+     // Two decks on a 6 x 12 board, four of a kind: 18 matches of 72 cards
+     ConcentrationBoard board = new ConcentrationBoard(6, 12, 2, 4, new Random(9));
+     t.checkExpect(board.size(), 72);
+     t.checkExpect(board.remaining, 18);
+     int[] counts = new int[14];
+     for (int pos = 0; pos < board.size(); pos++) {
+         counts[board.value[pos]]++;
+     }
+     for (int value = 1; value <= 13; value++) {
+         t.checkExpect(counts[value] % 4, 0);
+     }
+
+     // Three cards of one value keep the turn going, and a fourth makes the match
+     int[] hint = board.hint();
+     t.checkExpect(hint.length, 4);
+     t.checkExpect(board.flip(hint[0]), ConcentrationBoard.CONTINUE);
+     t.checkExpect(board.flip(hint[1]), ConcentrationBoard.CONTINUE);
+     t.checkExpect(board.flip(hint[2]), ConcentrationBoard.CONTINUE);
+     t.checkExpect(board.flip(hint[3]), ConcentrationBoard.MATCH);
+     t.checkExpect(board.remaining, 17);
 
-     // Cards should flip back
-     t.checkExpect(card1.isFaceUp, false);
-     t.checkExpect(card2.isFaceUp, false);
-     t.checkExpect(game.flippedCards.size(), 0);
+     // A card of another value ends the turn at once
+     int first = board.hint()[0];
+     t.checkExpect(board.flip(first), ConcentrationBoard.CONTINUE);
+     t.checkExpect(board.flip(this.stranger(board, first)), ConcentrationBoard.MISMATCH);
+     t.checkExpect(board.canFlip(this.partner(board, first)), true);
+     board.hideUp();
+     t.checkExpect(board.state[first], ConcentrationBoard.DOWN);
+
+     t.checkConstructorException(new IllegalArgumentException("Matching 3 of a kind needs a multiple of 3 cards of each value."),
+         "ConcentrationBoard", 3, 4, 1, 3, new Random());
+     t.checkConstructorException(new IllegalArgumentException("A 9x9 board cannot be dealt in whole matches."),
+         "ConcentrationBoard", 9, 9, 1, 2, new Random());
+ }
+
+ // Test clearing a large board by hints
+ void testHintsClearTheBoard(Tester t) {
+     ConcentrationGame game = new ConcentrationGame(40, 52, 40, 2, new Random(3));
+     t.checkExpect(game.score, 1040);
+     int flips = 0;
+     for (int[] hint = game.board.hint(); hint != null; hint = game.board.hint()) {
+         for (int pos : hint) {
+             this.click(game, pos);
+             flips++;
+         }
+     }
+     t.checkExpect(flips, 2080);
+     t.checkExpect(game.score, 0);
+     t.checkExpect(game.board.isCleared(), true);
  }
 
  // Test makeScene method
@@ -360,7 +922,7 @@ class ExamplesConcentrationGame {
      // Add cards
      for (int i = 0; i < 4; i++) {
          for (int j = 0; j < 13; j++) {
-             Card card = game.board.get(i).get(j);
+             Card card = game.board.card(13 * i + j);
              scene.placeImageXY(card.draw(), 60 * j + 30, 80 * i + 40);
          }
      }
@@ -372,6 +934,95 @@ class ExamplesConcentrationGame {
      t.checkExpect(game.makeScene(), scene);
  }
 
+ // Test drawing and clicking through the viewport of a huge board
+ void testViewport(Tester t) {
+     ConcentrationGame game = new ConcentrationGame(40, 52, 40, 2, new Random(10));
+     t.checkExpect(game.width(), 980);
+     t.checkExpect(game.height(), 640);
+
+     // Only the cards in the viewport are drawn, shifted by its offset
+     game.onKeyEvent("down");
+     game.onKeyEvent("right");
+     game.onKeyEvent("right");
+     t.checkExpect(game.rowOffset, 1);
+     t.checkExpect(game.colOffset, 2);
+     WorldScene scene = new WorldScene(980, 640);
+     scene.placeImageXY(new RectangleImage(980, 640, OutlineMode.SOLID, Color.WHITE), 490, 320);
+     for (int row = 0; row < 8; row++) {
+         for (int col = 0; col < 16; col++) {
+             scene.placeImageXY(game.board.card(52 * (row + 1) + col + 2).draw(), 60 * col + 30, 80 * row + 40);
+         }
+     }
+     scene.placeImageXY(new TextImage("Score: 1040", 24, Color.BLACK), 490, 660);
+     t.checkExpect(game.makeScene(), scene);
+
+     // Clicks map through the offset; cards changed out of view are not drawn
+     game.onMouseClicked(new Posn(30, 40));
+     t.checkExpect(game.board.state[54], ConcentrationBoard.UP);
+     game.board.hideUp();
+     game.board.flip(0);
+     game.makeScene();
+     t.checkExpect(game.overdrawn, 1);
+     t.checkExpect(game.cardAt(new Posn(990, 40)), -1);
+
+     // Scrolling stops at the edges of the board, and shows any card asked for
+     game.scroll(-5, 100);
+     t.checkExpect(game.rowOffset, 0);
+     t.checkExpect(game.colOffset, 36);
+     game.scrollTo(40 * 52 - 1);
+     t.checkExpect(game.isVisible(40 * 52 - 1), true);
+     t.checkExpect(game.rowOffset, 32);
+     game.scrollTo(0);
+     t.checkExpect(game.rowOffset, 0);
+     t.checkExpect(game.colOffset, 0);
+ }
+
+ // Test the shared card images
+ void testAtlas(Tester t) {
+     ConcentrationAtlas atlas = ConcentrationAtlas.SHARED;
+     ConcentrationBoard a = new ConcentrationBoard(4, 13, 1, 2, new Random(1));
+     ConcentrationBoard b = new ConcentrationBoard(2, 13, 2, 2, new Random(2));
+     t.checkExpect(atlas.image(a, 0) == atlas.image(b, 5), true); // Both face down
+     t.checkExpect(atlas.image(a, 0), a.card(0).draw());
+
+     // Every face matches what the card would draw, and is reused for each flip
+     a.flip(0);
+     t.checkExpect(atlas.image(a, 0), a.card(0).draw());
+     t.checkExpect(atlas.image(a, 0) == atlas.faceUp[a.value[0] - 1][a.suit[0]], true);
+     a.hideUp();
+     a.match(3);
+     t.checkExpect(atlas.image(a, 3), a.card(3).draw());
+ }
+
+ // Test that frames only draw the cards that changed
+ void testIncrementalScene(Tester t) {
+     ConcentrationGame game = new ConcentrationGame(new Random(4));
+     WorldScene expected = game.makeScene();
+     t.checkExpect(game.makeScene() == expected, true);
+     t.checkExpect(game.board.changedCount, 0);
+
+     // A matching pair: both cards are drawn again, then the new score over the old one
+     int other = this.partner(game.board, 0);
+     WorldScene scene = new WorldScene(800, 320);
+     scene.placeImageXY(new RectangleImage(800, 320, OutlineMode.SOLID, Color.WHITE), 400, 160);
+     for (int pos = 0; pos < 52; pos++) {
+         scene.placeImageXY(game.board.card(pos).draw(), 60 * (pos % 13) + 30, 80 * (pos / 13) + 40);
+     }
+     scene.placeImageXY(new TextImage("Score: 26", 24, Color.BLACK), 400, 340);
+     game.onMouseClicked(new Posn(30, 40));
+     game.onMouseClicked(new Posn(60 * (other % 13) + 30, 80 * (other / 13) + 40));
+     scene.placeImageXY(game.board.card(0).draw(), 30, 40);
+     scene.placeImageXY(game.board.card(other).draw(), 60 * (other % 13) + 30, 80 * (other / 13) + 40);
+     scene.placeImageXY(new RectangleImage(800, 40, OutlineMode.SOLID, Color.WHITE), 400, 340);
+     scene.placeImageXY(new TextImage("Score: 25", 24, Color.BLACK), 400, 340);
+     t.checkExpect(game.makeScene(), scene);
+
+     // Once more cards were drawn on top than the board holds, the scene is rebuilt
+     game.overdrawn = 53;
+     t.checkExpect(game.makeScene() == expected, false);
+     t.checkExpect(game.overdrawn, 0);
+ }
+
  // Test lastScene method
  void testLastScene(Tester t) {
    ConcentrationGame game = new ConcentrationGame();
@@ -383,5 +1034,116 @@ class ExamplesConcentrationGame {
    );
    winScene.placeImageXY(winMessage, 400, 160);
    t.checkExpect(game.lastScene("You Win!"), winScene);
+   t.checkExpect(game.rating(), null);
 }
+
+ // Test two players taking turns
+ void testTwoPlayers(Tester t) {
+     ConcentrationGame game = new ConcentrationGame(new Random(8));
+     game.onKeyEvent("2");
+     t.checkExpect(game.players, 2);
+     t.checkExpect(game.scoreText(), "Player 1: 0   Player 2: 0   Turn: Player 1");
+
+     // A mismatch passes the turn once the cards are hidden
+     int other = this.stranger(game.board, 0);
+     game.onMouseClicked(new Posn(30, 40));
+     game.onMouseClicked(new Posn(60 * (other % 13) + 30, 80 * (other / 13) + 40));
+     t.checkExpect(game.current, 0);
+     game.hideMismatch();
+     t.checkExpect(game.current, 1);
+
+     // Turning up only seen cards is a pass
+     t.checkExpect(game.passed, false);
+     game.play(0);
+     game.play(other);
+     t.checkExpect(game.passed, true);
+     game.hideMismatch();
+
+     // A match earns another turn
+     game.play(0);
+     game.play(this.partner(game.board, 0));
+     t.checkExpect(game.pairs[0], 1);
+     t.checkExpect(game.current, 0);
+     t.checkExpect(game.passed, false);
+     t.checkExpect(game.scoreText(), "Player 1: 1   Player 2: 0   Turn: Player 1");
+     t.checkExpect(game.rating(), null);
+ }
+
+ // Test that two passes in a row end only a game against the bot
+ void testPasses(Tester t) {
+     for (String mode : new String[] { "2", "b" }) {
+         ConcentrationGame game = new ConcentrationGame(new Random(8));
+         game.onKeyEvent(mode);
+         int other = this.stranger(game.board, 0);
+         game.board.seen[0] = true;
+         game.board.seen[other] = true;
+         game.passed = true;
+         game.play(0);
+         game.play(other);
+         // Between people the mismatch is hidden as usual; the bot's game is over
+         t.checkExpect(game.hideTimer != null, mode.equals("2"));
+         t.checkExpect(game.current, 0);
+     }
+ }
+
+ // Test the bot taking its turns on ticks
+ void testBot(Tester t) {
+     ConcentrationManualClock clock = new ConcentrationManualClock();
+     ConcentrationGame game = new ConcentrationGame(4, 13, 1, 2, new Random(9),
+         new ConcentrationTimerWheel(10000000L, 6, clock));
+     game.onKeyEvent("b");
+     t.checkExpect(game.bot != null, true);
+     t.checkExpect(game.scoreText(), "Player 1: 0   Player 2 (bot): 0   Turn: Player 1");
+
+     // The player misses, and the bot moves once the cards are hidden
+     int other = this.stranger(game.board, 0);
+     game.onMouseClicked(new Posn(30, 40));
+     game.onMouseClicked(new Posn(60 * (other % 13) + 30, 80 * (other / 13) + 40));
+     clock.add(ConcentrationGame.HIDE_DELAY);
+     game.onTick();
+     t.checkExpect(game.current, 1);
+     t.checkExpect(game.board.upCount, 1);
+
+     // It knows the first two cards, and ignores clicks on its turn
+     game.onMouseClicked(new Posn(90, 120));
+     t.checkExpect(game.board.upCount, 1);
+     while (game.current == 1 && !game.board.isCleared()) {
+         clock.add(ConcentrationGame.HIDE_DELAY);
+         game.onTick();
+     }
+     t.checkExpect(game.pairs[0], 0);
+     t.checkExpect(game.board.remaining + game.pairs[1], 26);
+
+     // Only boards matched in pairs have a bot
+     ConcentrationGame fours = new ConcentrationGame(6, 12, 2, 4, new Random(9));
+     fours.onKeyEvent("b");
+     t.checkExpect(fours.bot, null);
+     t.checkExpect(fours.players, 2);
+ }
+
+ // Test the rating against a perfect memory at the end
+ void testRating(Tester t) {
+     ConcentrationGame game = new ConcentrationGame(new Random(6));
+     int first = this.stranger(game.board, 0);
+     game.onMouseClicked(new Posn(30, 40));
+     game.onMouseClicked(new Posn(60 * (first % 13) + 30, 80 * (first / 13) + 40));
+     game.hideMismatch();
+     for (int[] hint = game.board.hint(); hint != null; hint = game.board.hint()) {
+         for (int pos : hint) {
+             game.onMouseClicked(new Posn(60 * (pos % 13) + 30, 80 * (pos / 13) + 40));
+         }
+     }
+     t.checkExpect(game.turns, 27);
+     t.checkExpect(game.rating(), "Turns: 27, perfect memory averages 41.7");
+
+     WorldScene scene = game.makeScene();
+     scene.placeImageXY(new OverlayImage(
+         new TextImage("You Win!", 48, new Color(34, 139, 34)),
+         new RectangleImage(400, 100, OutlineMode.SOLID, Color.WHITE)), 400, 160);
+     scene.placeImageXY(new TextImage(game.rating(), 16, Color.BLACK), 400, 196);
+     t.checkExpect(game.lastScene("You Win!"), scene);
+
+     // Other matches have no solver
+     t.checkExpect(new ConcentrationGame(6, 12, 2, 4, new Random(6)).rating(), null);
+ }
 }
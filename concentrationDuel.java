@@ -0,0 +1,398 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongToDoubleFunction;
+import tester.*;
+
+// The optimal play of two players taking turns on one board, where a match
+// earns another turn (Zwick and Paterson's memory game). Both players remember
+// every card, so a state is the same as for one player, and its value is the
+// expected pairs the player to move makes, less those of the other player.
+//
+// Besides turning up an unseen card, a player may follow it with a seen card
+// so as to give nothing away, turn up a seen card first, or pass by turning up
+// two seen cards. When both players pass in a row the game ends, and the pairs
+// left are not scored; so a player passes exactly when every other play is
+// worth less than nothing, and the best play in each state is a single move.
+class ConcentrationDuelSolver extends ConcentrationSolver {
+  static final byte PASS = -1; // firstChoice: turn up two seen cards
+
+  static final ConcurrentHashMap<String, ConcentrationDuelSolver> DUELS = new ConcurrentHashMap<>();
+
+  // Constructor solving a duel on a board with the given number of cards of each value
+  ConcentrationDuelSolver(int[] cardsPerValue) {
+    super(cardsPerValue);
+  }
+
+  // Constructor loading a table saved by write
+  ConcentrationDuelSolver(InputStream in) throws IOException {
+    super(in);
+  }
+
+  // A duel solver for n pairs of different values
+  static ConcentrationDuelSolver pairs(int n) {
+    int[] cards = new int[n];
+    Arrays.fill(cards, 2);
+    return new ConcentrationDuelSolver(cards);
+  }
+
+  // The duel solver for the cards the board was dealt, loaded or solved once
+  // for every board of the same deal, or null if the board cannot be solved
+  static ConcentrationDuelSolver forDuel(ConcentrationBoard board) {
+    int[] cards = deal(board);
+    return cards == null ? null : DUELS.computeIfAbsent(Arrays.toString(cards), k -> new ConcentrationDuelSolver(cards));
+  }
+
+  // Loads a saved table, and uses it for every board of its deal
+  static ConcentrationDuelSolver load(InputStream in) throws IOException {
+    ConcentrationDuelSolver solver = new ConcentrationDuelSolver(in);
+    DUELS.put(Arrays.toString(solver.deal), solver);
+    return solver;
+  }
+
+  // The expected pairs of the player to move less the other player's, with
+  // both playing their best
+  double margin(long state) {
+    return this.expected[this.unseen(state)][this.index(state)];
+  }
+
+  // The value of the state with u unseen cards to the player to move, given
+  // the values of the states after a turn to whoever moves in them. EFFECT:
+  // puts the best first card and second-card bits in choice, unless it is null.
+  double turn(long state, int u, LongToDoubleFunction after, int[] choice) {
+    if (u == 0) {
+      return 0;
+    }
+    int seen = 0;
+    for (int j = 1; j <= this.classes; j++) {
+      seen += this.count(state, j, 1);
+    }
+
+    // An unseen card first
+    double best = 0;
+    int secondBits = 0;
+    for (int j = 1; j <= this.classes; j++) {
+      int known = this.count(state, j, 1);
+      if (known > 0) {
+        // Its value was seen: match it and move again
+        best += (double) known * (2 * j - 1) / u
+            * (1 + after.applyAsDouble(this.add(this.remove(state, j, 1), j - 1, 0)));
+      }
+      int fresh = this.count(state, j, 0);
+      if (fresh > 0) {
+        long rest = this.remove(state, j, 0);
+        double unseenSecond = (double) (2 * j - 1) / (u - 1)
+            * (1 + after.applyAsDouble(this.add(rest, j - 1, 0)))
+            + this.give(rest, u - 1, this.add(rest, j, 1), after);
+        double value = unseenSecond;
+        if (seen > 0) {
+          double seenSecond = -after.applyAsDouble(this.add(rest, j, 1));
+          if (seenSecond > unseenSecond + 1e-12) {
+            value = seenSecond;
+            secondBits |= 1 << j;
+          }
+        }
+        best += (double) fresh * 2 * j / u * value;
+      }
+    }
+
+    // A seen card first, then an unseen one
+    int bestFirst = UNSEEN;
+    for (int j = 1; j <= this.classes && seen > 0; j++) {
+      if (this.count(state, j, 1) > 0) {
+        long rest = this.remove(state, j, 1);
+        double value = (double) (2 * j - 1) / u * (1 + after.applyAsDouble(this.add(rest, j - 1, 0)))
+            + this.give(rest, u, state, after);
+        if (value > best + 1e-12) {
+          best = value;
+          bestFirst = j;
+        }
+      }
+    }
+
+    // Two seen cards: the other player faces the same state, and passes back
+    if (seen >= 2 && best < -1e-12) {
+      best = 0;
+      bestFirst = PASS;
+    }
+    if (choice != null) {
+      choice[0] = bestFirst;
+      choice[1] = secondBits;
+    }
+    return best;
+  }
+
+  // The value, weighted by its chance, of a second card from u unseen cards of
+  // the values in rest that misses the first card, ending the turn. A card whose
+  // value was seen gives the other player a known pair; any other is one more
+  // card they remember. Either way the first card's value is as in kept.
+  double give(long rest, int u, long kept, LongToDoubleFunction after) {
+    double total = 0;
+    for (int j = 1; j <= this.classes; j++) {
+      int known = this.count(rest, j, 1);
+      if (known > 0) {
+        total -= (double) known * (2 * j - 1) / u
+            * (1 + after.applyAsDouble(this.add(this.remove(kept, j, 1), j - 1, 0)));
+      }
+      int fresh = this.count(rest, j, 0);
+      if (fresh > 0) {
+        total -= (double) fresh * 2 * j / u * after.applyAsDouble(this.add(this.remove(kept, j, 0), j, 1));
+      }
+    }
+    return total;
+  }
+
+  // Solves the duel on the 52-card board and saves its table:
+  // java ConcentrationDuelSolver file
+  public static void main(String[] args) {
+    if (args.length < 1) {
+      System.out.println("usage: ConcentrationDuelSolver file");
+      return;
+    }
+    int[] cards = new int[ConcentrationBoard.RANKS.length];
+    Arrays.fill(cards, ConcentrationBoard.SUITS.length);
+    long start = System.nanoTime();
+    ConcentrationDuelSolver solver = new ConcentrationDuelSolver(cards);
+    try (OutputStream out = new FileOutputStream(args[0])) {
+      solver.write(out);
+    } catch (IOException e) {
+      System.out.println("Cannot write " + args[0] + ": " + e.getMessage());
+      return;
+    }
+    System.out.printf("%d states, first player's margin %.4f, %.1f ms%n", solver.states(),
+        solver.margin(solver.start), (System.nanoTime() - start) / 1e6);
+  }
+}
+
+// Plays the second player of a duel with the solver's strategy. It remembers
+// every card either player turns up, which the board keeps as its seen cards.
+class ConcentrationBot {
+  final ConcentrationDuelSolver solver;
+  final Random rand;
+  int planned; // The first-card choice of this turn
+
+  // Constructor
+  ConcentrationBot(ConcentrationDuelSolver solver, Random rand) {
+    this.solver = solver;
+    this.rand = rand;
+  }
+
+  // The position of the next card to turn up
+  int choose(ConcentrationBoard board) {
+    if (board.upCount == 0) {
+      int pair = this.seenCard(board, -1, -1, true);
+      if (pair >= 0) {
+        this.planned = ConcentrationSolver.UNSEEN;
+        return pair;
+      }
+      long state = this.state(board, -1);
+      this.planned = this.solver.reaches(state) ? this.solver.firstChoice(state) : ConcentrationSolver.UNSEEN;
+      if (this.planned == ConcentrationSolver.UNSEEN) {
+        return this.unseenCard(board);
+      }
+      return this.seenCard(board, -1, this.planned == ConcentrationDuelSolver.PASS ? -1 : this.planned, false);
+    }
+
+    int first = board.up[0];
+    int partner = this.partner(board, first);
+    if (partner >= 0) {
+      return partner;
+    }
+    if (this.planned == ConcentrationDuelSolver.PASS) {
+      return this.seenCard(board, first, -1, false);
+    }
+    if (this.planned == ConcentrationSolver.UNSEEN) {
+      // The first card was new: ask about the state before it was seen
+      long state = this.state(board, first);
+      int j = board.unmatched[board.value[first]] / 2;
+      if (this.solver.reaches(state) && this.solver.secondSeen(state, j)) {
+        int seen = this.seenCard(board, first, -1, false);
+        if (seen >= 0) {
+          return seen;
+        }
+      }
+    }
+    return this.unseenCard(board);
+  }
+
+  // The state of the board, as if the card at except had not been seen
+  long state(ConcentrationBoard board, int except) {
+    long state = 0;
+    for (int i = 0; i < board.liveCount; i++) {
+      int v = board.live[i];
+      int seen = 0;
+      for (int k = board.valueStart[v]; k < board.valueStart[v] + board.unmatched[v]; k++) {
+        int pos = board.byValue[k];
+        if (pos != except && board.seen[pos]) {
+          seen = 1;
+        }
+      }
+      state = this.solver.add(state, board.unmatched[v] / 2, seen);
+    }
+    return state;
+  }
+
+  // A face-down seen card of the same value as the card at pos, or -1
+  int partner(ConcentrationBoard board, int pos) {
+    int v = board.value[pos];
+    for (int k = board.valueStart[v]; k < board.valueStart[v] + board.unmatched[v]; k++) {
+      int other = board.byValue[k];
+      if (other != pos && board.seen[other] && board.state[other] == ConcentrationBoard.DOWN) {
+        return other;
+      }
+    }
+    return -1;
+  }
+
+  // A face-down seen card other than except: of a value with 2j cards left
+  // (any value for j = -1), or only one with a seen partner if pair is set; -1 if none
+  int seenCard(ConcentrationBoard board, int except, int j, boolean pair) {
+    for (int pos = 0; pos < board.size(); pos++) {
+      if (pos != except && board.seen[pos] && board.state[pos] == ConcentrationBoard.DOWN
+          && (j < 0 || board.unmatched[board.value[pos]] == 2 * j)
+          && (!pair || this.partner(board, pos) >= 0)) {
+        return pos;
+      }
+    }
+    return -1;
+  }
+
+  // A random face-down card that has never been seen
+  int unseenCard(ConcentrationBoard board) {
+    int count = 0;
+    for (int pos = 0; pos < board.size(); pos++) {
+      if (!board.seen[pos] && board.state[pos] == ConcentrationBoard.DOWN) {
+        count++;
+      }
+    }
+    int pick = this.rand.nextInt(count);
+    for (int pos = 0; pos < board.size(); pos++) {
+      if (!board.seen[pos] && board.state[pos] == ConcentrationBoard.DOWN && pick-- == 0) {
+        return pos;
+      }
+    }
+    throw new IllegalStateException("Every card has been seen.");
+  }
+}
+
+// Examples and tests for duels
+class ExamplesConcentrationDuel {
+  void testSmallBoards(Tester t) {
+    ConcentrationDuelSolver one = ConcentrationDuelSolver.pairs(1);
+    t.checkInexact(one.margin(one.start), 1.0, 1e-12);
+    // One time in three the first turn clears both pairs; otherwise the other
+    // player knows both and takes them
+    ConcentrationDuelSolver two = ConcentrationDuelSolver.pairs(2);
+    t.checkInexact(two.margin(two.start), 1 / 3.0 * 2 - 2 / 3.0 * 2, 1e-12);
+    t.checkInexact(two.margin(two.state(new int[] {0}, new int[] {2})), 2.0, 1e-12);
+  }
+
+  void testPassing(Tester t) {
+    // Where every play gives more away than it wins, the player passes, and so
+    // does the other one
+    ConcentrationDuelSolver solver = ConcentrationDuelSolver.pairs(12);
+    int passes = 0;
+    for (long[] layer : solver.keys) {
+      for (long state : layer) {
+        double margin = solver.margin(state);
+        int pairs = solver.count(state, 1, 0) + solver.count(state, 1, 1);
+        t.checkNumRange(margin, -pairs - 1e-9, pairs + 1e-9);
+        if (solver.firstChoice(state) == ConcentrationDuelSolver.PASS) {
+          passes++;
+          t.checkInexact(margin, 0.0, 1e-12);
+        }
+      }
+    }
+    t.checkExpect(passes > 0, true);
+  }
+
+  void testSaveAndLoad(Tester t) throws IOException {
+    int[] cards = new int[13];
+    Arrays.fill(cards, 4);
+    ConcentrationDuelSolver solver = new ConcentrationDuelSolver(cards);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    solver.write(bytes);
+    ConcentrationDuelSolver loaded = ConcentrationDuelSolver.load(new ByteArrayInputStream(bytes.toByteArray()));
+    t.checkExpect(loaded.margin(loaded.start), solver.margin(solver.start));
+    t.checkExpect(loaded.states(), solver.states());
+    t.checkExpect(ConcentrationDuelSolver.forDuel(new ConcentrationBoard(4, 13, 1, 2, new Random(1))) == loaded, true);
+    t.checkException(new IOException("Not a Concentration strategy table."), this, "load",
+        new ByteArrayInputStream(new byte[8]));
+  }
+
+  // Loads a table, for checkException
+  ConcentrationDuelSolver load(InputStream in) throws IOException {
+    return ConcentrationDuelSolver.load(in);
+  }
+
+  // Plays a whole duel of two bots on the board, until it is cleared or both
+  // pass in a row. Returns the first player's pairs less the second's.
+  int play(ConcentrationBoard board, ConcentrationBot[] bots) {
+    int player = 0;
+    int margin = 0;
+    int passes = 0;
+    while (!board.isCleared() && passes < 2) {
+      ConcentrationBot bot = bots[player];
+      int first = bot.choose(board);
+      boolean learned = !board.seen[first];
+      board.flip(first);
+      int second = bot.choose(board);
+      learned |= !board.seen[second];
+      if (board.flip(second) == ConcentrationBoard.MATCH) {
+        margin += player == 0 ? 1 : -1;
+        passes = 0;
+      } else {
+        board.hideUp();
+        player = 1 - player;
+        passes = learned ? 0 : passes + 1;
+      }
+    }
+    return margin;
+  }
+
+  void testBotsPlayTheSolution(Tester t) {
+    // Two bots playing each other make, on average, the margin the solver expects
+    Random rand = new Random(21);
+    int[] cards = new int[13];
+    Arrays.fill(cards, 4);
+    ConcentrationDuelSolver solver = new ConcentrationDuelSolver(cards);
+    ConcentrationBot[] bots = {new ConcentrationBot(solver, rand), new ConcentrationBot(solver, rand)};
+    long total = 0;
+    int games = 4000;
+    for (int i = 0; i < games; i++) {
+      total += this.play(new ConcentrationBoard(4, 13, 1, 2, rand), bots);
+    }
+    t.checkInexact((double) total / games, solver.margin(solver.start), 0.25);
+  }
+
+  void testBeatsAGreedyMemory(Tester t) {
+    // The bot against a perfect memory that never plays a seen card on purpose
+    Random rand = new Random(22);
+    ConcentrationDuelSolver solver = ConcentrationDuelSolver.forDuel(new ConcentrationBoard(4, 13, 1, 2, rand));
+    ConcentrationBot bot = new ConcentrationBot(solver, rand);
+    ConcentrationBot greedy = new ConcentrationBot(solver, rand) {
+      int choose(ConcentrationBoard board) {
+        int pair = this.seenCard(board, -1, -1, true);
+        if (board.upCount == 0) {
+          return pair >= 0 ? pair : this.unseenCard(board);
+        }
+        int partner = this.partner(board, board.up[0]);
+        return partner >= 0 ? partner : this.unseenCard(board);
+      }
+    };
+    long total = 0;
+    for (int i = 0; i < 2000; i++) {
+      // Each moves first in half the games
+      ConcentrationBoard board = new ConcentrationBoard(4, 13, 1, 2, rand);
+      total += i % 2 == 0 ? this.play(board, new ConcentrationBot[] {bot, greedy})
+          : -this.play(board, new ConcentrationBot[] {greedy, bot});
+    }
+    t.checkExpect(total > 0, true);
+  }
+}
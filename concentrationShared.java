@@ -0,0 +1,508 @@
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javalib.impworld.*;
+import javalib.worldimages.*;
+import tester.*;
+
+// One player at a shared board: the cards they have turned up this turn, and
+// their score. Only the player's own flips change it, under its own lock.
+class ConcentrationSharedPlayer {
+  final int id; // Marks the cards this player holds, from 1
+  final String name;
+  final int[] held; // Positions turned up this turn, in order
+  int heldCount;
+  boolean mismatched; // Are the held cards a mismatch waiting to be hidden?
+  volatile int score; // Matches made; only this player's flips write it
+
+  // Constructor
+  ConcentrationSharedPlayer(int id, String name, int kind) {
+    this.id = id;
+    this.name = name;
+    this.held = new int[kind];
+  }
+}
+
+// A Concentration board that many players click on at once, each with their
+// own cards turned up. Every card is one word of an atomic array: DOWN, MATCHED,
+// or the id of the player holding it face up. A flip claims a face-down card by
+// compare-and-set, so two players reaching for one card never both get it, and
+// only the holder can match the card or turn it down again. A player's own turn
+// is guarded by that player's lock, and scores are per-player counters with a
+// single writer each; nothing serializes the clicks of different players.
+//
+// Every change to a card is also written to a ring of recent changes, so each
+// window redraws just the cards that changed since its last frame. An entry
+// holds the change's sequence number with the position, so a reader can tell
+// an entry that is not written yet from one that has been overwritten.
+class ConcentrationSharedBoard {
+  static final int DOWN = 0; // states of a card; a positive state is the holder's id
+  static final int MATCHED = -1;
+
+  static final int TAKEN = 3; // results of a flip, besides those of ConcentrationBoard
+  static final int WAIT = 4;
+
+  static final int LOG_SIZE = 1 << 12; // changes kept for windows to catch up on
+  static final int POS_BITS = 24; // bits of the position in a change entry
+  static final int NOT_YET = -1; // results of changedAt, besides a position
+  static final int OVERWRITTEN = -2;
+
+  final int rows;
+  final int cols;
+  final int kind;
+  final int[] value; // value (1 to 13) of the card at each position
+  final byte[] suit; // index into SUITS of the card at each position
+  final AtomicIntegerArray cards; // DOWN, MATCHED or a holder at each position
+  final int matches; // matches on a new board
+  final LongAdder made; // matches made so far, by anyone
+  final AtomicInteger nextId;
+  final CopyOnWriteArrayList<ConcentrationSharedPlayer> players;
+  final AtomicLong changes; // changes logged so far
+  final AtomicLongArray changeLog; // (seq + 1) << POS_BITS | pos of change seq, at seq % LOG_SIZE
+
+  // Constructor sharing the cards of a freshly dealt board
+  ConcentrationSharedBoard(ConcentrationBoard deal) {
+    this.rows = deal.rows;
+    this.cols = deal.cols;
+    this.kind = deal.kind;
+    this.value = deal.value.clone();
+    this.suit = deal.suit.clone();
+    this.cards = new AtomicIntegerArray(this.value.length);
+    this.matches = this.value.length / this.kind;
+    this.made = new LongAdder();
+    this.nextId = new AtomicInteger(1);
+    this.players = new CopyOnWriteArrayList<>();
+    this.changes = new AtomicLong();
+    this.changeLog = new AtomicLongArray(LOG_SIZE);
+  }
+
+  // The number of cards on the board
+  int size() {
+    return this.value.length;
+  }
+
+  // EFFECT: logs that the card at pos changed state. Callers change the card first.
+  void changed(int pos) {
+    long seq = this.changes.getAndIncrement();
+    this.changeLog.set((int) (seq & (LOG_SIZE - 1)), (seq + 1) << POS_BITS | pos);
+  }
+
+  // The position of the card that change seq was to, NOT_YET if that change is
+  // still being logged, or OVERWRITTEN if newer changes have replaced it
+  int changedAt(long seq) {
+    long entry = this.changeLog.get((int) (seq & (LOG_SIZE - 1)));
+    long stamp = (entry >>> POS_BITS) - 1;
+    if (stamp == seq) {
+      return (int) (entry & ((1 << POS_BITS) - 1));
+    }
+    return stamp < seq ? NOT_YET : OVERWRITTEN;
+  }
+
+  // A new player at the board
+  ConcentrationSharedPlayer join(String name) {
+    ConcentrationSharedPlayer player = new ConcentrationSharedPlayer(this.nextId.getAndIncrement(), name, this.kind);
+    this.players.add(player);
+    return player;
+  }
+
+  // EFFECT: takes the player away from the board, turning down their cards
+  void leave(ConcentrationSharedPlayer player) {
+    this.hide(player);
+    this.players.remove(player);
+  }
+
+  // EFFECT: turns up the card at the given position for the player. Returns
+  // MATCH if it completes their match, MISMATCH if it differs from their cards
+  // already up, CONTINUE if their turn goes on, TAKEN if another player holds
+  // it or it is matched, and WAIT while their last mismatch is still showing.
+  int flip(ConcentrationSharedPlayer player, int pos) {
+    synchronized (player) {
+      if (player.mismatched) {
+        return WAIT;
+      }
+      if (!this.cards.compareAndSet(pos, DOWN, player.id)) {
+        return TAKEN;
+      }
+      this.changed(pos);
+      player.held[player.heldCount++] = pos;
+      if (this.value[pos] != this.value[player.held[0]]) {
+        player.mismatched = true;
+        return ConcentrationBoard.MISMATCH;
+      }
+      if (player.heldCount < this.kind) {
+        return ConcentrationBoard.CONTINUE;
+      }
+      // Nobody else can touch cards this player holds, so plain writes do
+      for (int i = 0; i < this.kind; i++) {
+        this.cards.set(player.held[i], MATCHED);
+        this.changed(player.held[i]);
+      }
+      player.heldCount = 0;
+      player.score++;
+      this.made.increment();
+      return ConcentrationBoard.MATCH;
+    }
+  }
+
+  // EFFECT: turns the player's cards face down again, ending their turn
+  void hide(ConcentrationSharedPlayer player) {
+    synchronized (player) {
+      for (int i = 0; i < player.heldCount; i++) {
+        this.cards.set(player.held[i], DOWN);
+        this.changed(player.held[i]);
+      }
+      player.heldCount = 0;
+      player.mismatched = false;
+    }
+  }
+
+  // The number of matches still to be made
+  int remaining() {
+    return this.matches - (int) this.made.sum();
+  }
+
+  // Has every card been matched?
+  boolean isCleared() {
+    return this.remaining() == 0;
+  }
+
+  // The best score at the board, or 0 if nobody has matched yet
+  int bestScore() {
+    int best = 0;
+    for (ConcentrationSharedPlayer player : this.players) {
+      best = Math.max(best, player.score);
+    }
+    return best;
+  }
+}
+
+// One player's window on a shared board. It shows every player's cards as they
+// turn up. Each frame it reads the board's changes since the last one and draws
+// only those cards on top of the cached scene, until the overdrawn images
+// outnumber the cards and the scene is rebuilt. A window that falls behind the
+// change log rebuilds too.
+class ConcentrationSharedGame extends World {
+  final ConcentrationSharedBoard board;
+  final ConcentrationSharedPlayer player;
+  final ConcentrationTimerWheel timers; // hides this player's mismatches
+  final int[] drawn; // the state each card was last drawn in
+  WorldScene scene; // the scene drawn last frame, or null if it must be rebuilt
+  int overdrawn; // images drawn on top of the scene since it was built
+  long drawnChanges; // changes of the board already drawn
+  String drawnScore;
+
+  // Constructor joining the board as a new player
+  ConcentrationSharedGame(ConcentrationSharedBoard board, String name, ConcentrationTimerWheel timers) {
+    this.board = board;
+    this.player = board.join(name);
+    this.timers = timers;
+    this.drawn = new int[board.size()];
+  }
+
+  // The width of the scene in pixels
+  int width() {
+    return 60 * this.board.cols + 20;
+  }
+
+  // The height of the cards in pixels, with the score below them
+  int height() {
+    return 80 * this.board.rows;
+  }
+
+  // The state a card is drawn in: DOWN, MATCHED, or 1 when anyone holds it up
+  int shown(int pos) {
+    return Math.min(this.board.cards.get(pos), 1);
+  }
+
+  // Draw the shared board and the scores
+  public WorldScene makeScene() {
+    if (this.scene == null || this.overdrawn > this.board.size()) {
+      this.rebuild();
+      return this.scene;
+    }
+    long seq = this.drawnChanges;
+    for (long end = this.board.changes.get(); seq < end; seq++) {
+      int pos = this.board.changedAt(seq);
+      if (pos == ConcentrationSharedBoard.NOT_YET) {
+        break; // Still being logged; pick it up next frame
+      }
+      if (pos == ConcentrationSharedBoard.OVERWRITTEN) {
+        this.rebuild();
+        return this.scene;
+      }
+      int shown = this.shown(pos);
+      if (shown != this.drawn[pos]) {
+        this.drawn[pos] = shown;
+        this.placeCard(pos);
+        this.overdrawn++;
+      }
+    }
+    this.drawnChanges = seq;
+    if (!this.scoreText().equals(this.drawnScore)) {
+      this.scene.placeImageXY(new RectangleImage(this.width(), 40, OutlineMode.SOLID, Color.WHITE),
+          this.width() / 2, this.height() + 20);
+      this.placeScore();
+      this.overdrawn++;
+    }
+    return this.scene;
+  }
+
+  // EFFECT: draws the whole board and the scores on a new scene
+  void rebuild() {
+    // Changes logged before this count are already in the cards read below
+    this.drawnChanges = this.board.changes.get();
+    this.scene = new WorldScene(this.width(), this.height());
+    this.overdrawn = 0;
+    this.scene.placeImageXY(new RectangleImage(this.width(), this.height(), OutlineMode.SOLID, Color.WHITE),
+        this.width() / 2, this.height() / 2);
+    for (int pos = 0; pos < this.board.size(); pos++) {
+      this.drawn[pos] = this.shown(pos);
+      this.placeCard(pos);
+    }
+    this.placeScore();
+  }
+
+  // EFFECT: places the image of the card at the given position on the cached scene
+  void placeCard(int pos) {
+    ConcentrationAtlas atlas = ConcentrationAtlas.SHARED;
+    WorldImage image = this.drawn[pos] == ConcentrationSharedBoard.MATCHED ? atlas.matched
+        : this.drawn[pos] == ConcentrationSharedBoard.DOWN ? atlas.faceDown
+        : atlas.faceUp[this.board.value[pos] - 1][this.board.suit[pos]];
+    this.scene.placeImageXY(image, 60 * (pos % this.board.cols) + 30, 80 * (pos / this.board.cols) + 40);
+  }
+
+  // EFFECT: places the score on the cached scene
+  void placeScore() {
+    this.drawnScore = this.scoreText();
+    this.scene.placeImageXY(new TextImage(this.drawnScore, 24, Color.BLACK), this.width() / 2, this.height() + 20);
+  }
+
+  // The score line: this player's matches, the best at the board and what is left
+  String scoreText() {
+    return this.player.name + ": " + this.player.score + "   Best: " + this.board.bestScore()
+        + "   Players: " + this.board.players.size() + "   Left: " + this.board.remaining();
+  }
+
+  // EFFECT: turns up a card for this player, hiding a mismatch after a delay
+  public void onMouseClicked(Posn pos) {
+    int row = pos.y / 80;
+    int col = pos.x / 60;
+    if (row < this.board.rows && col < this.board.cols) {
+      int result = this.board.flip(this.player, row * this.board.cols + col);
+      if (result == ConcentrationBoard.MISMATCH) {
+        this.timers.schedule(ConcentrationGame.HIDE_DELAY, () -> this.board.hide(this.player));
+      } else if (result == ConcentrationBoard.MATCH && this.board.isCleared()) {
+        this.endOfWorld(this.player.score == this.board.bestScore() ? "You Win!" : "Board Cleared!");
+      }
+    }
+  }
+
+  // EFFECT: runs the delayed events that are due, and ends the game once
+  // another player clears the board
+  public void onTick() {
+    this.timers.advance();
+    if (this.board.isCleared()) {
+      this.endOfWorld(this.player.score == this.board.bestScore() ? "You Win!" : "Board Cleared!");
+    }
+  }
+
+  // Opens windows for the given number of players on one shared board:
+  // java ConcentrationSharedGame players
+  public static void main(String[] args) {
+    int players = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+    ConcentrationSharedBoard board = new ConcentrationSharedBoard(new ConcentrationBoard(4, 13, 1, 2, new Random()));
+    ConcentrationTimerWheel timers = new ConcentrationTimerWheel();
+    for (int i = 1; i <= players; i++) {
+      ConcentrationSharedGame game = new ConcentrationSharedGame(board, "Player " + i, timers);
+      new Thread(() -> game.bigBang(game.width(), game.height() + 40, 0.1)).start();
+    }
+  }
+}
+
+// Examples and tests for the shared board
+class ExamplesConcentrationShared {
+  // The position of another card of the same value as pos, or -1
+  int partner(ConcentrationSharedBoard board, int pos) {
+    for (int other = 0; other < board.size(); other++) {
+      if (other != pos && board.value[other] == board.value[pos]) {
+        return other;
+      }
+    }
+    return -1;
+  }
+
+  void testArbitration(Tester t) {
+    ConcentrationSharedBoard board = new ConcentrationSharedBoard(new ConcentrationBoard(4, 13, 1, 2, new Random(2)));
+    ConcentrationSharedPlayer alice = board.join("Alice");
+    ConcentrationSharedPlayer bob = board.join("Bob");
+
+    // A card one player holds is taken for the other
+    t.checkExpect(board.flip(alice, 0), ConcentrationBoard.CONTINUE);
+    t.checkExpect(board.flip(bob, 0), ConcentrationSharedBoard.TAKEN);
+    t.checkExpect(board.cards.get(0), alice.id);
+
+    // Each has their own turn: Bob's mismatch waits, Alice's match counts for her
+    int b1 = 1;
+    while (board.value[b1] == board.value[0]) {
+      b1++;
+    }
+    int b2 = b1 + 1;
+    while (board.value[b2] == board.value[0] || board.value[b2] == board.value[b1]) {
+      b2++;
+    }
+    int partner = this.partner(board, 0);
+    t.checkExpect(board.flip(bob, b1), ConcentrationBoard.CONTINUE);
+    t.checkExpect(board.flip(bob, b2), ConcentrationBoard.MISMATCH);
+    t.checkExpect(board.flip(bob, partner), ConcentrationSharedBoard.WAIT);
+    t.checkExpect(board.flip(alice, partner), ConcentrationBoard.MATCH);
+    board.hide(bob);
+    t.checkExpect(board.cards.get(b1), ConcentrationSharedBoard.DOWN);
+    t.checkExpect(alice.score, 1);
+    t.checkExpect(bob.score, 0);
+    t.checkExpect(board.cards.get(0), ConcentrationSharedBoard.MATCHED);
+    t.checkExpect(board.flip(bob, 0), ConcentrationSharedBoard.TAKEN);
+    t.checkExpect(board.remaining(), 25);
+  }
+
+  void testHundredsOfPlayers(Tester t) throws InterruptedException {
+    // 300 threads play one big board at once, each knowing where every card is,
+    // so they fight over the same cards all the time
+    ConcentrationSharedBoard board = new ConcentrationSharedBoard(new ConcentrationBoard(40, 52, 40, 2, new Random(4)));
+    int[][] byValue = new int[14][];
+    for (int v = 1; v <= 13; v++) {
+      ArrayList<Integer> positions = new ArrayList<>();
+      for (int pos = 0; pos < board.size(); pos++) {
+        if (board.value[pos] == v) {
+          positions.add(pos);
+        }
+      }
+      byValue[v] = positions.stream().mapToInt(Integer::intValue).toArray();
+    }
+    int threads = 300;
+    int[][] matchedBy = new int[threads][board.size()];
+    CountDownLatch done = new CountDownLatch(threads);
+    ConcentrationSharedPlayer[] players = new ConcentrationSharedPlayer[threads];
+    for (int i = 0; i < threads; i++) {
+      players[i] = board.join("P" + i);
+    }
+    for (int i = 0; i < threads; i++) {
+      int me = i;
+      new Thread(() -> {
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        ConcentrationSharedPlayer player = players[me];
+        while (!board.isCleared()) {
+          int first = rand.nextInt(board.size());
+          if (board.flip(player, first) != ConcentrationBoard.CONTINUE) {
+            continue;
+          }
+          int[] same = byValue[board.value[first]];
+          int second = same[rand.nextInt(same.length)];
+          if (board.flip(player, second) == ConcentrationBoard.MATCH) {
+            matchedBy[me][first]++;
+            matchedBy[me][second]++;
+          } else {
+            board.hide(player);
+          }
+        }
+        done.countDown();
+      }).start();
+    }
+    t.checkExpect(done.await(60, java.util.concurrent.TimeUnit.SECONDS), true);
+
+    // Every card was matched exactly once, and the scores add up
+    int total = 0;
+    for (ConcentrationSharedPlayer player : players) {
+      total += player.score;
+    }
+    t.checkExpect(total, board.matches);
+    boolean once = true;
+    for (int pos = 0; pos < board.size(); pos++) {
+      int count = 0;
+      for (int[] cards : matchedBy) {
+        count += cards[pos];
+      }
+      once &= count == 1 && board.cards.get(pos) == ConcentrationSharedBoard.MATCHED;
+    }
+    t.checkExpect(once, true);
+  }
+
+  void testView(Tester t) {
+    ConcentrationManualClock clock = new ConcentrationManualClock();
+    ConcentrationTimerWheel timers = new ConcentrationTimerWheel(10000000L, 6, clock);
+    ConcentrationSharedBoard board = new ConcentrationSharedBoard(new ConcentrationBoard(4, 13, 1, 2, new Random(5)));
+    ConcentrationSharedGame alice = new ConcentrationSharedGame(board, "Alice", timers);
+    ConcentrationSharedGame bob = new ConcentrationSharedGame(board, "Bob", timers);
+    WorldScene scene = bob.makeScene();
+    t.checkExpect(bob.scoreText(), "Bob: 0   Best: 0   Players: 2   Left: 26");
+
+    // Bob sees Alice's card turn up on his next frame
+    alice.onMouseClicked(new Posn(30, 40));
+    t.checkExpect(bob.makeScene() == scene, true);
+    t.checkExpect(bob.drawn[0], 1);
+
+    // Alice's mismatch is hidden after the delay
+    int other = 1;
+    while (board.value[other] == board.value[0]) {
+      other++;
+    }
+    alice.onMouseClicked(new Posn(60 * other + 30, 40));
+    t.checkExpect(board.cards.get(other), alice.player.id);
+    clock.add(ConcentrationGame.HIDE_DELAY);
+    bob.onTick();
+    t.checkExpect(board.cards.get(0), ConcentrationSharedBoard.DOWN);
+    bob.makeScene();
+    t.checkExpect(bob.drawn[0], ConcentrationSharedBoard.DOWN);
+    t.checkExpect(bob.drawnChanges, board.changes.get());
+  }
+
+  void testViewRedrawsOnlyChanges(Tester t) {
+    ConcentrationSharedBoard board = new ConcentrationSharedBoard(new ConcentrationBoard(4, 13, 1, 2, new Random(6)));
+    ConcentrationSharedGame alice = new ConcentrationSharedGame(board, "Alice", new ConcentrationTimerWheel());
+    WorldScene scene = alice.makeScene();
+    ConcentrationSharedPlayer bob = board.join("Bob");
+    alice.makeScene(); // The new player changed the score line
+    t.checkExpect(alice.overdrawn, 1);
+
+    // Each flip and hide is one logged change and one card drawn on top
+    board.flip(bob, 3);
+    board.hide(bob);
+    board.flip(bob, 5);
+    t.checkExpect(board.changedAt(0), 3);
+    t.checkExpect(board.changedAt(2), 5);
+    t.checkExpect(board.changedAt(3), ConcentrationSharedBoard.NOT_YET);
+    t.checkExpect(alice.makeScene() == scene, true);
+    t.checkExpect(alice.overdrawn, 2); // Card 3 looks the same as last frame
+    t.checkExpect(alice.drawn[5], 1);
+    t.checkExpect(alice.drawnChanges, 3L);
+
+    // Drawing more images than there are cards rebuilds the scene
+    for (int i = 0; i < 30; i++) {
+      board.hide(bob);
+      alice.makeScene();
+      board.flip(bob, 5);
+      alice.makeScene();
+    }
+    t.checkExpect(alice.makeScene() == scene, false);
+    t.checkNumRange(alice.overdrawn, 0, board.size() + 1);
+
+    // A window that falls behind the log rebuilds instead of missing changes
+    scene = alice.makeScene();
+    for (int i = 0; i < ConcentrationSharedBoard.LOG_SIZE; i++) {
+      board.hide(bob);
+      board.flip(bob, 7);
+    }
+    board.hide(bob);
+    t.checkExpect(board.changedAt(alice.drawnChanges), ConcentrationSharedBoard.OVERWRITTEN);
+    t.checkExpect(alice.makeScene() == scene, false);
+    t.checkExpect(alice.overdrawn, 0);
+    t.checkExpect(alice.drawn[7], ConcentrationSharedBoard.DOWN);
+  }
+}
@@ -0,0 +1,576 @@
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import tester.*;
+
+// One simulated Concentration game on a board dealt by ConcentrationBoard, with
+// the cards still face down kept packed so a random one costs O(1)
+class ConcentrationSimBoard {
+  final ConcentrationBoard cards; // The deal, and the state of every card
+  final int[] values; // The value of the card at each position
+  final int[] open; // Every position, the face-down ones first
+  final int[] openIndex; // Where each position is in open
+  int openCount;
+
+  // Constructor for a game on the given board, none of it turned up
+  ConcentrationSimBoard(ConcentrationBoard cards) {
+    this.cards = cards;
+    this.values = cards.value;
+    this.open = new int[cards.size()];
+    this.openIndex = new int[cards.size()];
+    for (int i = 0; i < this.open.length; i++) {
+      this.open[i] = i;
+      this.openIndex[i] = i;
+    }
+    this.openCount = this.open.length;
+  }
+
+  // Is the card at the position face down?
+  boolean isOpen(int position) {
+    return this.openIndex[position] < this.openCount;
+  }
+
+  // EFFECT: turns up the card at the position. Returns the result of
+  // ConcentrationBoard.flip.
+  int flip(int position) {
+    this.move(position, this.openCount - 1);
+    this.openCount--;
+    return this.cards.flip(position);
+  }
+
+  // EFFECT: turns the cards of a mismatched turn face down again
+  void hide() {
+    for (int i = 0; i < this.cards.upCount; i++) {
+      this.move(this.cards.up[i], this.openCount);
+      this.openCount++;
+    }
+    this.cards.hideUp();
+  }
+
+  // EFFECT: swaps the position into index i of open
+  void move(int position, int i) {
+    int other = this.open[i];
+    this.open[this.openIndex[position]] = other;
+    this.openIndex[other] = this.openIndex[position];
+    this.open[i] = position;
+    this.openIndex[position] = i;
+  }
+
+  // A random face-down position
+  int randomOpen(SplittableRandom rand) {
+    return this.open[rand.nextInt(this.openCount)];
+  }
+}
+
+// A strategy for choosing which cards to flip in a simulated game. The policy
+// is told every card it sees, and chooses what to remember of them.
+interface IConcentrationPolicy {
+  // EFFECT: forgets everything before a new game on the given board
+  void reset(ConcentrationSimBoard board);
+
+  // Chooses the first card of a turn
+  int first(ConcentrationSimBoard board, SplittableRandom rand);
+
+  // Chooses the next card of a turn, after the cards already up were seen
+  int next(ConcentrationSimBoard board, SplittableRandom rand);
+
+  // EFFECT: the card at the position was turned up and shows value
+  void see(ConcentrationSimBoard board, int position, int value);
+
+  // EFFECT: the card at the position was matched and left the board
+  void matched(int position);
+}
+
+// Flips random cards and remembers nothing
+class ConcentrationRandomPolicy implements IConcentrationPolicy {
+  public void reset(ConcentrationSimBoard board) {
+  }
+
+  public int first(ConcentrationSimBoard board, SplittableRandom rand) {
+    return board.randomOpen(rand);
+  }
+
+  public int next(ConcentrationSimBoard board, SplittableRandom rand) {
+    return board.randomOpen(rand);
+  }
+
+  public void see(ConcentrationSimBoard board, int position, int value) {
+  }
+
+  public void matched(int position) {
+  }
+}
+
+// Remembers the last k cards seen, forgetting the oldest first. With enough
+// slots for the whole board this is a perfect memory.
+//
+// Each turn it takes a remembered match if it has one. Otherwise it turns up a
+// card it has not seen, and follows it with remembered cards of the same value,
+// or else with more unseen cards.
+class ConcentrationMemoryPolicy implements IConcentrationPolicy {
+  final int slots; // Cards this policy can remember at once
+  int[] memory; // Remembered positions, oldest first
+  int[] memoryValue; // The value seen at each remembered position
+  int size;
+  boolean[] remembered; // Is each position in memory?
+  int[] count; // Remembered cards of each value
+  int kind; // Cards of one value that make a match
+  int complete; // Values with a whole match remembered
+  int[] unseen; // Unmatched positions not in memory, in no particular order
+  int[] unseenIndex; // Where each position is in unseen, or -1
+  int unseenCount;
+
+  // Constructor for a memory of the given number of cards
+  ConcentrationMemoryPolicy(int slots) {
+    if (slots < 0) {
+      throw new IllegalArgumentException("Memory cannot have a negative size.");
+    }
+    this.slots = slots;
+  }
+
+  // A memory that never forgets a card
+  static ConcentrationMemoryPolicy perfect() {
+    return new ConcentrationMemoryPolicy(Integer.MAX_VALUE);
+  }
+
+  public void reset(ConcentrationSimBoard board) {
+    int cards = board.values.length;
+    this.memory = new int[Math.min(this.slots, cards)];
+    this.memoryValue = new int[this.memory.length];
+    this.size = 0;
+    this.remembered = new boolean[cards];
+    this.count = new int[ConcentrationBoard.RANKS.length + 1];
+    this.kind = board.cards.kind;
+    this.complete = 0;
+    this.unseen = new int[cards];
+    this.unseenIndex = new int[cards];
+    for (int i = 0; i < cards; i++) {
+      this.unseen[i] = i;
+      this.unseenIndex[i] = i;
+    }
+    this.unseenCount = cards;
+  }
+
+  public int first(ConcentrationSimBoard board, SplittableRandom rand) {
+    if (this.complete > 0) {
+      for (int i = 0; i < this.size; i++) {
+        if (this.count[this.memoryValue[i]] >= this.kind) {
+          return this.memory[i];
+        }
+      }
+    }
+    return this.unseenOrOpen(board, rand);
+  }
+
+  public int next(ConcentrationSimBoard board, SplittableRandom rand) {
+    int value = board.values[board.cards.up[0]];
+    for (int i = 0; i < this.size; i++) {
+      if (this.memoryValue[i] == value && board.isOpen(this.memory[i])) {
+        return this.memory[i];
+      }
+    }
+    return this.unseenOrOpen(board, rand);
+  }
+
+  // A random unseen face-down position, or any face-down one if none is left
+  int unseenOrOpen(ConcentrationSimBoard board, SplittableRandom rand) {
+    int choices = this.unseenCount;
+    for (int i = 0; i < board.cards.upCount; i++) {
+      if (this.unseenIndex[board.cards.up[i]] >= 0) {
+        choices--;
+      }
+    }
+    if (choices <= 0) {
+      return board.randomOpen(rand);
+    }
+    int pick = this.unseen[rand.nextInt(this.unseenCount)];
+    while (!board.isOpen(pick)) {
+      pick = this.unseen[rand.nextInt(this.unseenCount)];
+    }
+    return pick;
+  }
+
+  public void see(ConcentrationSimBoard board, int position, int value) {
+    if (this.remembered[position] || this.memory.length == 0) {
+      return;
+    }
+    if (this.size == this.memory.length) {
+      // Forget the oldest card, which can be turned up again as unseen
+      int oldest = this.memory[0];
+      this.forget(0);
+      if (board.cards.state[oldest] != ConcentrationBoard.MATCHED) {
+        this.addUnseen(oldest);
+      }
+    }
+    this.removeUnseen(position);
+    this.memory[this.size] = position;
+    this.memoryValue[this.size] = value;
+    this.size++;
+    this.remembered[position] = true;
+    this.count[value]++;
+    if (this.count[value] == this.kind) {
+      this.complete++;
+    }
+  }
+
+  public void matched(int position) {
+    this.removeUnseen(position);
+    for (int i = 0; i < this.size; i++) {
+      if (this.memory[i] == position) {
+        this.forget(i);
+        return;
+      }
+    }
+  }
+
+  // EFFECT: drops the i-th remembered card, keeping the rest in order
+  void forget(int i) {
+    int value = this.memoryValue[i];
+    this.remembered[this.memory[i]] = false;
+    if (this.count[value] == this.kind) {
+      this.complete--;
+    }
+    this.count[value]--;
+    System.arraycopy(this.memory, i + 1, this.memory, i, this.size - i - 1);
+    System.arraycopy(this.memoryValue, i + 1, this.memoryValue, i, this.size - i - 1);
+    this.size--;
+  }
+
+  // EFFECT: adds the position to the unseen ones
+  void addUnseen(int position) {
+    this.unseen[this.unseenCount] = position;
+    this.unseenIndex[position] = this.unseenCount;
+    this.unseenCount++;
+  }
+
+  // EFFECT: removes the position from the unseen ones, if it is there
+  void removeUnseen(int position) {
+    int i = this.unseenIndex[position];
+    if (i < 0) {
+      return;
+    }
+    int last = this.unseen[this.unseenCount - 1];
+    this.unseen[i] = last;
+    this.unseenIndex[last] = i;
+    this.unseenIndex[position] = -1;
+    this.unseenCount--;
+  }
+}
+
+// The distribution of flips needed to clear the board over many games
+class ConcentrationSimStats {
+  long[] histogram; // Games that took each number of flips
+  long games;
+  long nanos; // Wall-clock time of the run
+
+  // Constructor for no games
+  ConcentrationSimStats() {
+    this.histogram = new long[0];
+  }
+
+  // EFFECT: counts one game of the given number of flips
+  void add(int flips) {
+    if (flips >= this.histogram.length) {
+      this.histogram = java.util.Arrays.copyOf(this.histogram, Math.max(flips + 1, 2 * this.histogram.length));
+    }
+    this.histogram[flips]++;
+    this.games++;
+  }
+
+  // EFFECT: adds the games counted in other
+  void add(ConcentrationSimStats other) {
+    if (other.histogram.length > this.histogram.length) {
+      this.histogram = java.util.Arrays.copyOf(this.histogram, other.histogram.length);
+    }
+    for (int i = 0; i < other.histogram.length; i++) {
+      this.histogram[i] += other.histogram[i];
+    }
+    this.games += other.games;
+  }
+
+  // The mean number of flips
+  double mean() {
+    double total = 0;
+    for (int i = 0; i < this.histogram.length; i++) {
+      total += (double) i * this.histogram[i];
+    }
+    return total / this.games;
+  }
+
+  // The standard deviation of the number of flips
+  double stddev() {
+    double mean = this.mean();
+    double total = 0;
+    for (int i = 0; i < this.histogram.length; i++) {
+      total += (i - mean) * (i - mean) * this.histogram[i];
+    }
+    return Math.sqrt(total / this.games);
+  }
+
+  // The smallest number of flips such that at least the fraction q of games
+  // took no more
+  int percentile(double q) {
+    long needed = (long) Math.ceil(q * this.games);
+    long seen = 0;
+    for (int i = 0; i < this.histogram.length; i++) {
+      seen += this.histogram[i];
+      if (seen >= Math.max(1, needed)) {
+        return i;
+      }
+    }
+    throw new IllegalStateException("No games were played.");
+  }
+
+  // Games simulated per second of the run
+  double gamesPerSecond() {
+    return this.games / (this.nanos / 1e9);
+  }
+
+  // Has other the same distribution of flips?
+  boolean sameGames(ConcentrationSimStats other) {
+    int length = Math.max(this.histogram.length, other.histogram.length);
+    for (int i = 0; i < length; i++) {
+      long a = i < this.histogram.length ? this.histogram[i] : 0L;
+      long b = i < other.histogram.length ? other.histogram[i] : 0L;
+      if (a != b) {
+        return false;
+      }
+    }
+    return this.games == other.games;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d games, flips: mean %.2f, sd %.2f, min %d, median %d, p90 %d, max %d,"
+        + " %.0f games/sec", this.games, this.mean(), this.stddev(), this.percentile(0),
+        this.percentile(0.5), this.percentile(0.9), this.percentile(1), this.gamesPerSecond());
+  }
+}
+
+// Plays Concentration without a World: every game is dealt by ConcentrationBoard
+// from the same configuration ConcentrationGame takes, and played by its rules,
+// with the flips chosen by a policy. Every game gets its own seed from its
+// number, so the results of a run do not depend on how many threads played it.
+class ConcentrationSimulator {
+  final int rows; // The board every game is dealt, as ConcentrationGame takes it
+  final int cols;
+  final int decks;
+  final int kind;
+
+  // Constructor for the classic board of ConcentrationGame: one deck in 4 rows
+  // of 13, matched in pairs
+  ConcentrationSimulator() {
+    this(4, 13, 1, 2);
+  }
+
+  // Constructor for a rows x cols board dealt from the given number of decks,
+  // where kind cards of one value make a match
+  ConcentrationSimulator(int rows, int cols, int decks, int kind) {
+    ConcentrationBoard.checkDeal(rows, cols, decks, kind);
+    this.rows = rows;
+    this.cols = cols;
+    this.decks = decks;
+    this.kind = kind;
+  }
+
+  // Plays one game on a freshly dealt board. Returns the flips it took.
+  int play(IConcentrationPolicy policy, SplittableRandom rand) {
+    ConcentrationSimBoard board = new ConcentrationSimBoard(
+        new ConcentrationBoard(this.rows, this.cols, this.decks, this.kind, rand));
+    policy.reset(board);
+    int[] turn = new int[this.kind];
+    int flips = 0;
+    while (!board.cards.isCleared()) {
+      int result = ConcentrationBoard.CONTINUE;
+      for (int up = 0; result == ConcentrationBoard.CONTINUE; up++) {
+        int position = up == 0 ? policy.first(board, rand) : policy.next(board, rand);
+        this.check(board, position);
+        turn[up] = position;
+        result = board.flip(position);
+        policy.see(board, position, board.values[position]);
+        flips++;
+      }
+      if (result == ConcentrationBoard.MATCH) {
+        for (int position : turn) {
+          policy.matched(position);
+        }
+      } else {
+        board.hide();
+      }
+    }
+    return flips;
+  }
+
+  // EFFECT: throws if a policy chose a card that cannot be flipped
+  void check(ConcentrationSimBoard board, int position) {
+    if (position < 0 || position >= board.values.length || !board.isOpen(position)) {
+      throw new IllegalStateException("The policy chose a card that cannot be flipped.");
+    }
+  }
+
+  // Plays the given number of games, spread over the given number of threads,
+  // with a new policy from policies for each thread
+  ConcentrationSimStats run(Supplier<IConcentrationPolicy> policies, int games, long seed,
+      int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("The simulator needs at least one thread.");
+    }
+    long start = System.nanoTime();
+    AtomicInteger next = new AtomicInteger();
+    ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+      Thread thread = new Thread(r, "concentration-sim");
+      thread.setDaemon(true);
+      return thread;
+    });
+    ArrayList<Future<ConcentrationSimStats>> workers = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      workers.add(pool.submit(() -> {
+        IConcentrationPolicy policy = policies.get();
+        ConcentrationSimStats stats = new ConcentrationSimStats();
+        for (int game = next.getAndIncrement(); game < games; game = next.getAndIncrement()) {
+          stats.add(this.play(policy, new SplittableRandom(seed + 0x9E3779B97F4A7C15L * game)));
+        }
+        return stats;
+      }));
+    }
+    pool.shutdown();
+
+    ConcentrationSimStats total = new ConcentrationSimStats();
+    for (Future<ConcentrationSimStats> worker : workers) {
+      try {
+        total.add(worker.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("Simulator worker failed.", e.getCause());
+      }
+    }
+    total.nanos = System.nanoTime() - start;
+    return total;
+  }
+
+  // The policy with the given name: "perfect", "random" or a number of slots
+  static Supplier<IConcentrationPolicy> policy(String name) {
+    if (name.equals("perfect")) {
+      return ConcentrationMemoryPolicy::perfect;
+    } else if (name.equals("random")) {
+      return ConcentrationRandomPolicy::new;
+    }
+    int slots = Integer.parseInt(name);
+    return () -> new ConcentrationMemoryPolicy(slots);
+  }
+
+  // Simulates games and prints the statistics:
+  // java ConcentrationSimulator games policy [seed]
+  public static void main(String[] args) {
+    if (args.length < 2) {
+      System.out.println("usage: ConcentrationSimulator games perfect|random|slots [seed]");
+      return;
+    }
+    long seed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
+    ConcentrationSimStats stats = new ConcentrationSimulator().run(policy(args[1]),
+        Integer.parseInt(args[0]), seed, Runtime.getRuntime().availableProcessors());
+    System.out.println(stats);
+  }
+}
+
+// Examples and tests for the simulator
+class ExamplesConcentrationSim {
+  void testShuffleIsUniform(Tester t) {
+    // Every order of three cards comes up about equally often
+    SplittableRandom rand = new SplittableRandom(3);
+    int[] counts = new int[6];
+    for (int i = 0; i < 60000; i++) {
+      int[] cards = {0, 1, 2};
+      ConcentrationBoard.shuffle(cards, rand);
+      counts[cards[0] * 2 + (cards[1] > cards[2] ? 1 : 0)]++;
+    }
+    for (int count : counts) {
+      t.checkNumRange(count, 9500, 10500);
+    }
+  }
+
+  void testBoard(Tester t) {
+    // The simulator plays on the board ConcentrationBoard deals
+    ConcentrationBoard cards = new ConcentrationBoard(1, 4, 1, 2, new SplittableRandom(5));
+    ConcentrationSimBoard board = new ConcentrationSimBoard(cards);
+    t.checkExpect(board.values, cards.value);
+    int other = cards.value[1] == cards.value[0] ? 2 : 1;
+    t.checkExpect(board.flip(0), ConcentrationBoard.CONTINUE);
+    t.checkExpect(board.isOpen(0), false);
+    t.checkExpect(board.openCount, 3);
+    SplittableRandom rand = new SplittableRandom(5);
+    for (int i = 0; i < 20; i++) {
+      t.checkExpect(board.randomOpen(rand) != 0, true);
+    }
+
+    // A mismatch turns both cards face down again
+    t.checkExpect(board.flip(other), ConcentrationBoard.MISMATCH);
+    board.hide();
+    t.checkExpect(board.openCount, 4);
+    t.checkExpect(cards.state[other], ConcentrationBoard.DOWN);
+  }
+
+  void testPerfectMemoryBounds(Tester t) {
+    // A perfect memory turns every card up at most twice, and never fails to
+    // finish a pair it has seen
+    ConcentrationSimulator sim = new ConcentrationSimulator();
+    SplittableRandom rand = new SplittableRandom(11);
+    for (int i = 0; i < 200; i++) {
+      t.checkNumRange(sim.play(ConcentrationMemoryPolicy.perfect(), rand), 52, 104);
+    }
+    // Two cards of one value: the first turn clears the board
+    t.checkExpect(new ConcentrationSimulator(1, 2, 1, 2).play(new ConcentrationRandomPolicy(), rand), 2);
+  }
+
+  void testGameBoards(Tester t) {
+    // The simulator takes every board ConcentrationGame does, such as four of a
+    // kind from two decks, where every card is turned up at least once
+    ConcentrationSimulator fours = new ConcentrationSimulator(6, 12, 2, 4);
+    SplittableRandom rand = new SplittableRandom(12);
+    for (int i = 0; i < 100; i++) {
+      t.checkNumRange(fours.play(ConcentrationMemoryPolicy.perfect(), rand), 72, 289);
+    }
+    double perfect = fours.run(ConcentrationSimulator.policy("perfect"), 200, 5L, 2).mean();
+    double none = fours.run(ConcentrationSimulator.policy("random"), 200, 5L, 2).mean();
+    t.checkExpect(perfect < none, true);
+  }
+
+  void testRepeatableAcrossThreads(Tester t) {
+    ConcentrationSimulator sim = new ConcentrationSimulator();
+    ConcentrationSimStats one = sim.run(ConcentrationSimulator.policy("4"), 500, 42L, 1);
+    ConcentrationSimStats four = sim.run(ConcentrationSimulator.policy("4"), 500, 42L, 4);
+    t.checkExpect(one.games, 500L);
+    t.checkExpect(one.sameGames(four), true);
+    t.checkExpect(one.mean(), four.mean());
+  }
+
+  void testMemoryHelps(Tester t) {
+    ConcentrationSimulator sim = new ConcentrationSimulator();
+    double perfect = sim.run(ConcentrationSimulator.policy("perfect"), 400, 7L, 2).mean();
+    double small = sim.run(ConcentrationSimulator.policy("4"), 400, 7L, 2).mean();
+    double none = sim.run(ConcentrationSimulator.policy("random"), 400, 7L, 2).mean();
+    t.checkExpect(perfect < small, true);
+    t.checkExpect(small < none, true);
+  }
+
+  void testStats(Tester t) {
+    ConcentrationSimStats stats = new ConcentrationSimStats();
+    stats.add(4);
+    stats.add(6);
+    stats.add(6);
+    stats.add(8);
+    t.checkInexact(stats.mean(), 6.0, 0.001);
+    t.checkInexact(stats.stddev(), Math.sqrt(2), 0.001);
+    t.checkExpect(stats.percentile(0), 4);
+    t.checkExpect(stats.percentile(0.5), 6);
+    t.checkExpect(stats.percentile(1), 8);
+    t.checkConstructorException(new IllegalArgumentException("Matching 3 of a kind needs a multiple of 3 cards of each value."),
+        "ConcentrationSimulator", 4, 13, 1, 3);
+  }
+}
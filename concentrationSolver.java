@@ -0,0 +1,479 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongToDoubleFunction;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import tester.*;
+
+// The exact expected number of turns a perfect memory needs to clear a board
+// matched in pairs, and the play that achieves it.
+//
+// Between turns a perfect memory only needs to know, for each value still on
+// the board, how many of its cards are left and whether it has seen one of
+// them; it never holds two seen cards of one value, because it would match
+// them. So a state counts the values of each class (2j cards left, seen or
+// not). With one pair of each value that is just (unknown pairs, known
+// singletons).
+//
+// Each turn turns up at least one unseen card, so the states are evaluated in
+// layers by the number of unseen cards, each layer from the two below it and
+// in parallel. Known pairs are matched at once, as part of the turn that found
+// them. The recurrence only mixes one turn's probabilities at a time, so doubles
+// keep it accurate to about 1e-12 however large the board is.
+class ConcentrationSolver {
+  static final byte UNSEEN = 0; // firstChoice: turn up an unseen card first
+  static final int MAGIC = 0x43534F31; // "CSO1", the start of a saved table
+  static final int PARALLEL = 512; // Layers at least this big are evaluated in parallel
+
+  static final ConcurrentHashMap<String, ConcentrationSolver> SOLVED = new ConcurrentHashMap<>();
+
+  final int[] deal; // Cards of each value on a new board
+  final int classes; // Largest j: the most cards of one value, halved
+  final int bits; // Bits of the state for the count of each class
+  final long start; // The state of a new board
+  final long[][] keys; // The states with u unseen cards, sorted
+  final double[][] expected; // Expected turns left from each of them
+  final byte[][] first; // Best first card: UNSEEN, or j to turn up the seen card of a class j value
+  final int[][] second; // Bit j set: after an unseen first card of a new class j value, turn up a seen card
+
+  // Constructor solving a board with the given number of cards of each value
+  ConcentrationSolver(int[] cardsPerValue) {
+    int most = 0;
+    int values = 0;
+    for (int cards : cardsPerValue) {
+      if (cards < 0 || cards % 2 != 0) {
+        throw new IllegalArgumentException("Every value needs an even number of cards.");
+      }
+      most = Math.max(most, cards);
+      values += cards > 0 ? 1 : 0;
+    }
+    this.deal = cardsPerValue.clone();
+    this.classes = most / 2;
+    this.bits = 32 - Integer.numberOfLeadingZeros(values);
+    if (2L * this.classes * this.bits > 63) {
+      throw new IllegalArgumentException("Too many cards of one value to solve.");
+    }
+    long state = 0;
+    int unseen = 0;
+    for (int cards : cardsPerValue) {
+      if (cards > 0) {
+        state = this.add(state, cards / 2, 0);
+        unseen += cards;
+      }
+    }
+    this.start = state;
+    this.keys = new long[unseen + 1][];
+    this.expected = new double[unseen + 1][];
+    this.first = new byte[unseen + 1][];
+    this.second = new int[unseen + 1][];
+    this.discover(unseen);
+    for (int u = 0; u <= unseen; u++) {
+      this.evaluate(u);
+    }
+  }
+
+  // Constructor loading a table saved by write
+  ConcentrationSolver(InputStream stream) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not a Concentration strategy table.");
+    }
+    this.deal = new int[in.readInt()];
+    for (int i = 0; i < this.deal.length; i++) {
+      this.deal[i] = in.readInt();
+    }
+    this.classes = in.readInt();
+    this.bits = in.readInt();
+    this.start = in.readLong();
+    int layers = in.readInt();
+    this.keys = new long[layers][];
+    this.expected = new double[layers][];
+    this.first = new byte[layers][];
+    this.second = new int[layers][];
+    for (int u = 0; u < layers; u++) {
+      int size = in.readInt();
+      this.keys[u] = new long[size];
+      this.expected[u] = new double[size];
+      this.first[u] = new byte[size];
+      this.second[u] = new int[size];
+      for (int i = 0; i < size; i++) {
+        this.keys[u][i] = in.readLong();
+        this.expected[u][i] = in.readDouble();
+        this.first[u][i] = in.readByte();
+        this.second[u][i] = in.readInt();
+      }
+    }
+  }
+
+  // EFFECT: saves the table, so it can be loaded instead of solved again
+  void write(OutputStream stream) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+    out.writeInt(MAGIC);
+    out.writeInt(this.deal.length);
+    for (int cards : this.deal) {
+      out.writeInt(cards);
+    }
+    out.writeInt(this.classes);
+    out.writeInt(this.bits);
+    out.writeLong(this.start);
+    out.writeInt(this.keys.length);
+    for (int u = 0; u < this.keys.length; u++) {
+      out.writeInt(this.keys[u].length);
+      for (int i = 0; i < this.keys[u].length; i++) {
+        out.writeLong(this.keys[u][i]);
+        out.writeDouble(this.expected[u][i]);
+        out.writeByte(this.first[u][i]);
+        out.writeInt(this.second[u][i]);
+      }
+    }
+    out.flush();
+  }
+
+  // A solver for n pairs of different values
+  static ConcentrationSolver pairs(int n) {
+    int[] cards = new int[n];
+    Arrays.fill(cards, 2);
+    return new ConcentrationSolver(cards);
+  }
+
+  // The solver for the cards the board was dealt, shared by every board of the
+  // same deal, or null if it is not matched in pairs or is too big to solve
+  static ConcentrationSolver forBoard(ConcentrationBoard board) {
+    int[] cards = deal(board);
+    return cards == null ? null : SOLVED.computeIfAbsent(Arrays.toString(cards), k -> new ConcentrationSolver(cards));
+  }
+
+  // The cards of each value the board was dealt, in increasing order, or null
+  // if it is not matched in pairs or is too big to solve
+  static int[] deal(ConcentrationBoard board) {
+    if (board.kind != 2) {
+      return null;
+    }
+    int[] cards = new int[ConcentrationBoard.RANKS.length];
+    for (int v = 1; v <= cards.length; v++) {
+      cards[v - 1] = board.valueStart[v + 1] - board.valueStart[v];
+    }
+    Arrays.sort(cards);
+    if (2L * (cards[cards.length - 1] / 2) * (32 - Integer.numberOfLeadingZeros(cards.length)) > 63) {
+      return null;
+    }
+    return cards;
+  }
+
+  // The state with fresh[j - 1] values of 2j cards left and none seen, and
+  // seen[j - 1] values of 2j cards left and one seen
+  long state(int[] fresh, int[] seen) {
+    long state = 0;
+    for (int j = 1; j <= this.classes; j++) {
+      for (int i = 0; j <= fresh.length && i < fresh[j - 1]; i++) {
+        state = this.add(state, j, 0);
+      }
+      for (int i = 0; j <= seen.length && i < seen[j - 1]; i++) {
+        state = this.add(state, j, 1);
+      }
+    }
+    return state;
+  }
+
+  // The number of values of class j (2j cards left), seen or not, in the state
+  int count(long state, int j, int seen) {
+    return (int) (state >>> (this.shift(j, seen))) & ((1 << this.bits) - 1);
+  }
+
+  // Where the count of a class is kept in a state
+  int shift(int j, int seen) {
+    return (2 * (j - 1) + seen) * this.bits;
+  }
+
+  // The state with one more value of class j, or the same state for j = 0,
+  // which is a value matched off the board
+  long add(long state, int j, int seen) {
+    return j == 0 ? state : state + (1L << this.shift(j, seen));
+  }
+
+  // The state with one value fewer of class j
+  long remove(long state, int j, int seen) {
+    return state - (1L << this.shift(j, seen));
+  }
+
+  // The number of cards in the state that have not been seen
+  int unseen(long state) {
+    int unseen = 0;
+    for (int j = 1; j <= this.classes; j++) {
+      unseen += this.count(state, j, 0) * 2 * j + this.count(state, j, 1) * (2 * j - 1);
+    }
+    return unseen;
+  }
+
+  // Was the state found from a new board, so that it has an answer?
+  boolean reaches(long state) {
+    int u = this.unseen(state);
+    return u < this.keys.length && Arrays.binarySearch(this.keys[u], state) >= 0;
+  }
+
+  // The index of the state in its layer
+  int index(long state) {
+    int i = Arrays.binarySearch(this.keys[this.unseen(state)], state);
+    if (i < 0) {
+      throw new IllegalArgumentException("The state cannot be reached from this board.");
+    }
+    return i;
+  }
+
+  // The expected number of turns a perfect memory needs to clear a new board
+  double expectedTurns() {
+    return this.expectedTurns(this.start);
+  }
+
+  // The expected number of turns a perfect memory needs from the state
+  double expectedTurns(long state) {
+    return this.expected[this.unseen(state)][this.index(state)];
+  }
+
+  // The best first card in the state: UNSEEN, or j to turn up the seen card
+  // of a value with 2j cards left
+  int firstChoice(long state) {
+    return this.first[this.unseen(state)][this.index(state)];
+  }
+
+  // After an unseen first card of a value with 2j cards left, none of them
+  // seen before, should the second card be a seen one instead of an unseen one?
+  boolean secondSeen(long state, int j) {
+    return (this.second[this.unseen(state)][this.index(state)] & (1 << j)) != 0;
+  }
+
+  // EFFECT: finds the states reachable from the start, layer by layer
+  void discover(int unseen) {
+    long[][] found = new long[unseen + 1][];
+    found[unseen] = new long[] {this.start};
+    for (int u = unseen; u >= 0; u--) {
+      long[] layer = found[u] == null ? new long[0] : LongStream.of(found[u]).distinct().sorted().toArray();
+      this.keys[u] = layer;
+      long[] successors = this.successors(layer, u);
+      for (int gap = 1; gap <= 2 && u - gap >= 0; gap++) {
+        int v = u - gap;
+        long[] part = LongStream.of(successors).filter(s -> this.unseen(s) == v).toArray();
+        found[v] = found[v] == null ? part : LongStream.concat(LongStream.of(found[v]), LongStream.of(part)).toArray();
+      }
+    }
+  }
+
+  // The states after a turn from each state of the layer with u unseen cards
+  long[] successors(long[] layer, int u) {
+    LongStream states = LongStream.of(layer);
+    if (layer.length >= PARALLEL) {
+      states = states.parallel();
+    }
+    return states.flatMap(state -> {
+      LongStream.Builder after = LongStream.builder();
+      this.turn(state, u, next -> {
+        after.add(next);
+        return 0;
+      }, null);
+      return after.build();
+    }).toArray();
+  }
+
+  // EFFECT: evaluates every state of the layer with u unseen cards
+  void evaluate(int u) {
+    long[] layer = this.keys[u];
+    this.expected[u] = new double[layer.length];
+    this.first[u] = new byte[layer.length];
+    this.second[u] = new int[layer.length];
+    IntStream indices = IntStream.range(0, layer.length);
+    if (layer.length >= PARALLEL) {
+      indices = indices.parallel();
+    }
+    indices.forEach(i -> {
+      int[] choice = new int[2];
+      this.expected[u][i] = this.turn(layer[i], u, next -> this.expected[this.unseen(next)][this.index(next)], choice);
+      this.first[u][i] = (byte) choice[0];
+      this.second[u][i] = choice[1];
+    });
+  }
+
+  // The expected number of turns from the state with u unseen cards, playing
+  // its best turn, given the expected turns of the states after it. EFFECT:
+  // puts the best first card and second-card bits in choice, unless it is null.
+  double turn(long state, int u, LongToDoubleFunction after, int[] choice) {
+    if (u == 0) {
+      return 0;
+    }
+    int seen = 0;
+    for (int j = 1; j <= this.classes; j++) {
+      seen += this.count(state, j, 1);
+    }
+
+    // An unseen card first
+    double best = 0;
+    int secondBits = 0;
+    for (int j = 1; j <= this.classes; j++) {
+      int known = this.count(state, j, 1);
+      if (known > 0) {
+        // Its value was seen: turn that card up too and match them
+        best += (double) known * (2 * j - 1) / u
+            * (1 + after.applyAsDouble(this.add(this.remove(state, j, 1), j - 1, 0)));
+      }
+      int fresh = this.count(state, j, 0);
+      if (fresh > 0) {
+        long rest = this.remove(state, j, 0);
+        double unseenSecond = (double) (2 * j - 1) / (u - 1)
+            * (1 + after.applyAsDouble(this.add(rest, j - 1, 0)))
+            + this.learn(rest, u - 1, this.add(rest, j, 1), after);
+        double value = unseenSecond;
+        if (seen > 0) {
+          // A seen card second learns nothing, but gives nothing away either
+          double seenSecond = 1 + after.applyAsDouble(this.add(rest, j, 1));
+          if (seenSecond < unseenSecond - 1e-12) {
+            value = seenSecond;
+            secondBits |= 1 << j;
+          }
+        }
+        best += (double) fresh * 2 * j / u * value;
+      }
+    }
+
+    // A seen card first, then an unseen one
+    int bestFirst = UNSEEN;
+    for (int j = 1; j <= this.classes && seen > 0; j++) {
+      if (this.count(state, j, 1) > 0) {
+        long rest = this.remove(state, j, 1);
+        double value = (double) (2 * j - 1) / u * (1 + after.applyAsDouble(this.add(rest, j - 1, 0)))
+            + this.learn(rest, u, this.add(rest, j, 1), after);
+        if (value < best - 1e-12) {
+          best = value;
+          bestFirst = j;
+        }
+      }
+    }
+    if (choice != null) {
+      choice[0] = bestFirst;
+      choice[1] = secondBits;
+    }
+    return best;
+  }
+
+  // The expected turns, weighted by their chances, when the second card is one
+  // of u unseen cards of the values in rest and misses the first card. A card
+  // whose value was seen makes a known pair, matched next turn; any other is
+  // remembered. Either way the first card's value is as in kept.
+  double learn(long rest, int u, long kept, LongToDoubleFunction after) {
+    double total = 0;
+    for (int j = 1; j <= this.classes; j++) {
+      int known = this.count(rest, j, 1);
+      if (known > 0) {
+        total += (double) known * (2 * j - 1) / u
+            * (2 + after.applyAsDouble(this.add(this.remove(kept, j, 1), j - 1, 0)));
+      }
+      int fresh = this.count(rest, j, 0);
+      if (fresh > 0) {
+        total += (double) fresh * 2 * j / u
+            * (1 + after.applyAsDouble(this.add(this.remove(kept, j, 0), j, 1)));
+      }
+    }
+    return total;
+  }
+
+  // The number of states the solver evaluated
+  long states() {
+    long states = 0;
+    for (long[] layer : this.keys) {
+      states += layer.length;
+    }
+    return states;
+  }
+
+  // Solves n pairs and prints the expected turns and time taken:
+  // java ConcentrationSolver pairs
+  public static void main(String[] args) {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 26;
+    long start = System.nanoTime();
+    ConcentrationSolver solver = pairs(n);
+    System.out.printf("%d pairs: %.6f turns, %d states, %.1f ms%n", n, solver.expectedTurns(),
+        solver.states(), (System.nanoTime() - start) / 1e6);
+  }
+}
+
+// Examples and tests for the solver
+class ExamplesConcentrationSolver {
+  void testSmallBoards(Tester t) {
+    t.checkInexact(ConcentrationSolver.pairs(1).expectedTurns(), 1.0, 1e-12);
+    // The first turn matches one time in three; otherwise both values are known
+    // and two more turns match them
+    t.checkInexact(ConcentrationSolver.pairs(2).expectedTurns(), 1 / 3.0 * 2 + 2 / 3.0 * 3, 1e-12);
+    // Four cards of one value: any two match
+    t.checkInexact(new ConcentrationSolver(new int[] {4}).expectedTurns(), 2.0, 1e-12);
+    t.checkConstructorException(new IllegalArgumentException("Every value needs an even number of cards."),
+        "ConcentrationSolver", new int[] {2, 3});
+  }
+
+  void testStates(Tester t) {
+    ConcentrationSolver solver = ConcentrationSolver.pairs(3);
+    long state = solver.state(new int[] {1}, new int[] {2});
+    t.checkExpect(solver.count(state, 1, 0), 1);
+    t.checkExpect(solver.count(state, 1, 1), 2);
+    t.checkExpect(solver.unseen(state), 4);
+    // Only unseen cards are left: turn one up
+    t.checkExpect(solver.firstChoice(solver.state(new int[] {3}, new int[] {0})), (int) ConcentrationSolver.UNSEEN);
+    // Two known singletons: matching the first card on sight is worth 1 turn
+    t.checkInexact(solver.expectedTurns(solver.state(new int[] {0}, new int[] {1})), 1.0, 1e-12);
+    t.checkInexact(solver.expectedTurns(solver.state(new int[] {0}, new int[] {2})), 2.0, 1e-12);
+  }
+
+  void testBoundsAndPolicy(Tester t) {
+    // Every turn matches at most one pair and turns up at least one unseen card
+    ConcentrationSolver solver = ConcentrationSolver.pairs(12);
+    boolean anySeen = false;
+    for (long[] layer : solver.keys) {
+      for (long state : layer) {
+        int fresh = solver.count(state, 1, 0);
+        int seen = solver.count(state, 1, 1);
+        t.checkNumRange(solver.expectedTurns(state), fresh + seen - 1e-9, 2.0 * fresh + seen + 1e-9);
+        anySeen |= solver.secondSeen(state, 1) || solver.firstChoice(state) != ConcentrationSolver.UNSEEN;
+      }
+    }
+    // Playing alone, turning up a seen card on purpose never beats an unseen
+    // one, so the usual play is optimal
+    t.checkExpect(anySeen, false);
+  }
+
+  void testAsymptotics(Tester t) {
+    // Optimal play takes about (3 - 2 ln 2) n + 7/8 - 2 ln 2 turns for n pairs
+    for (int n : new int[] {26, 500}) {
+      double approx = (3 - 2 * Math.log(2)) * n + 7.0 / 8 - 2 * Math.log(2);
+      t.checkInexact(ConcentrationSolver.pairs(n).expectedTurns(), approx, 0.01);
+    }
+  }
+
+  void testAgainstSimulator(Tester t) {
+    // The simulated perfect memory never plays a seen card on purpose, so it is
+    // at best optimal, but it comes close. Both boards deal every card of their
+    // decks, so every game has the same cards of each value.
+    for (int decks : new int[] {1, 2}) {
+      double optimal = ConcentrationSolver.forBoard(
+          new ConcentrationBoard(4 * decks, 13, decks, 2, new java.util.Random(decks))).expectedTurns();
+      double simulated = new ConcentrationSimulator(4 * decks, 13, decks, 2)
+          .run(ConcentrationSimulator.policy("perfect"), 20000, 3L, 4).mean() / 2;
+      t.checkNumRange(simulated - optimal, -0.2, 0.5);
+    }
+  }
+
+  void testForBoard(Tester t) {
+    ConcentrationBoard a = new ConcentrationBoard(4, 13, 1, 2, new java.util.Random(1));
+    ConcentrationBoard b = new ConcentrationBoard(4, 13, 1, 2, new java.util.Random(2));
+    ConcentrationSolver solver = ConcentrationSolver.forBoard(a);
+    t.checkExpect(solver == ConcentrationSolver.forBoard(b), true);
+    int[] fours = new int[13];
+    Arrays.fill(fours, 4);
+    t.checkInexact(solver.expectedTurns(), new ConcentrationSolver(fours).expectedTurns(), 1e-12);
+    t.checkExpect(ConcentrationSolver.forBoard(new ConcentrationBoard(6, 12, 2, 4, new java.util.Random())), null);
+    t.checkExpect(ConcentrationSolver.forBoard(new ConcentrationBoard(40, 52, 40, 2, new java.util.Random())), null);
+  }
+}
@@ -0,0 +1,292 @@
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.function.LongSupplier;
+import tester.*;
+
+// A task waiting in a ConcentrationTimerWheel. Timers in the same slot of the
+// wheel are linked together, so one can be taken out in O(1) when cancelled.
+class ConcentrationTimer {
+  final long deadline; // Clock reading, in nanoseconds, the task may run from
+  final Runnable task;
+  ConcentrationTimer prev, next; // Neighbors in the slot
+  int slot; // Slot of the wheel, or -1 once run or cancelled
+  long rounds; // Turns of the wheel left before the timer is due
+
+  // Constructor
+  ConcentrationTimer(long deadline, Runnable task) {
+    this.deadline = deadline;
+    this.task = task;
+    this.slot = -1;
+  }
+
+  // Is the timer still waiting?
+  boolean isPending() {
+    return this.slot >= 0;
+  }
+}
+
+// A hashed timer wheel for delayed game events. Time is cut into ticks, and
+// each tick is hashed to one of a power-of-two number of slots, so a timer due
+// in d ticks goes into slot (now + d) mod size with d / size turns left to wait.
+// Scheduling and cancelling are O(1); each tick only visits its own slot, so the
+// work per tick does not grow with the number of timers in other slots.
+//
+// Timers never run before their deadline, and run at most one tick late when
+// advance is called often enough. One wheel can serve any number of games:
+// schedule and cancel are safe from any thread, and advance can be called from
+// a World's onTick or by the wheel's own thread. Tasks run on whichever thread
+// advances the wheel, so a task for a World only hands its event to that World,
+// which handles it on its own thread (see ConcentrationGame.onTick).
+class ConcentrationTimerWheel implements AutoCloseable {
+  final long tickNanos; // Length of one tick
+  final ConcentrationTimer[] slots; // First timer of each slot
+  final int mask; // Number of slots - 1
+  final int bits; // log2 of the number of slots
+  final LongSupplier clock; // Current time in nanoseconds
+  final long start; // Clock reading at tick 0
+  long tick; // The next tick to process
+  int pending; // Timers waiting
+  Thread driver; // The wheel's own thread, or null
+
+  // Constructor for a wheel of 2^bits slots of the given tick length
+  ConcentrationTimerWheel(long tickNanos, int bits, LongSupplier clock) {
+    if (tickNanos <= 0 || bits < 1 || bits > 24) {
+      throw new IllegalArgumentException("The wheel needs a positive tick and 2^1 to 2^24 slots.");
+    }
+    this.tickNanos = tickNanos;
+    this.bits = bits;
+    this.slots = new ConcentrationTimer[1 << bits];
+    this.mask = (1 << bits) - 1;
+    this.clock = clock;
+    this.start = clock.getAsLong();
+    this.tick = 0;
+  }
+
+  // Constructor for a wheel of 10 ms ticks and 512 slots on the system clock
+  ConcentrationTimerWheel() {
+    this(10000000L, 9, System::nanoTime);
+  }
+
+  // Schedules the task to run once delayNanos have passed
+  synchronized ConcentrationTimer schedule(long delayNanos, Runnable task) {
+    ConcentrationTimer timer = new ConcentrationTimer(this.clock.getAsLong() + Math.max(0L, delayNanos), task);
+    // The first tick that ends at or after the deadline; tick k ends at
+    // start + (k + 1) * tickNanos
+    long due = Math.max(this.tick,
+        Math.floorDiv(timer.deadline - this.start + this.tickNanos - 1, this.tickNanos) - 1);
+    timer.slot = (int) (due & this.mask);
+    timer.rounds = (due - this.tick) >>> this.bits;
+    timer.next = this.slots[timer.slot];
+    if (timer.next != null) {
+      timer.next.prev = timer;
+    }
+    this.slots[timer.slot] = timer;
+    this.pending++;
+    return timer;
+  }
+
+  // EFFECT: stops the timer from running
+  // Returns false if it already ran or was cancelled
+  synchronized boolean cancel(ConcentrationTimer timer) {
+    if (!timer.isPending()) {
+      return false;
+    }
+    this.unlink(timer);
+    return true;
+  }
+
+  // EFFECT: takes the timer out of its slot
+  void unlink(ConcentrationTimer timer) {
+    if (timer.prev != null) {
+      timer.prev.next = timer.next;
+    } else {
+      this.slots[timer.slot] = timer.next;
+    }
+    if (timer.next != null) {
+      timer.next.prev = timer.prev;
+    }
+    timer.prev = null;
+    timer.next = null;
+    timer.slot = -1;
+    this.pending--;
+  }
+
+  // EFFECT: processes every tick that has ended, then runs the timers that came
+  // due, in deadline order. Returns the number of timers run.
+  int advance() {
+    ArrayList<ConcentrationTimer> due = new ArrayList<>();
+    synchronized (this) {
+      long last = Math.floorDiv(this.clock.getAsLong() - this.start, this.tickNanos) - 1;
+      while (this.tick <= last) {
+        if (this.pending == 0) {
+          this.tick = last + 1; // Nothing waits, so skip the idle ticks at once
+          break;
+        }
+        ConcentrationTimer timer = this.slots[(int) (this.tick & this.mask)];
+        while (timer != null) {
+          ConcentrationTimer next = timer.next;
+          if (timer.rounds == 0) {
+            this.unlink(timer);
+            due.add(timer);
+          } else {
+            timer.rounds--;
+          }
+          timer = next;
+        }
+        this.tick++;
+      }
+    }
+    // Tasks run outside the lock, so they can schedule more timers
+    due.sort((a, b) -> Long.compare(a.deadline, b.deadline));
+    for (ConcentrationTimer timer : due) {
+      timer.task.run();
+    }
+    return due.size();
+  }
+
+  // EFFECT: starts a thread that advances the wheel once every tick
+  synchronized void startDriver() {
+    if (this.driver != null) {
+      return;
+    }
+    this.driver = new Thread(() -> {
+      while (!Thread.currentThread().isInterrupted()) {
+        this.advance();
+        try {
+          Thread.sleep(this.tickNanos / 1000000L, (int) (this.tickNanos % 1000000L));
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    }, "concentration-timers");
+    this.driver.setDaemon(true);
+    this.driver.start();
+  }
+
+  // EFFECT: stops the wheel's thread, if it has one
+  public void close() {
+    Thread thread;
+    synchronized (this) {
+      thread = this.driver;
+      this.driver = null;
+    }
+    if (thread != null) {
+      thread.interrupt();
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
+
+// A clock for tests that only moves when told to
+class ConcentrationManualClock implements LongSupplier {
+  long now;
+
+  public long getAsLong() {
+    return this.now;
+  }
+
+  // EFFECT: moves the clock forward
+  void add(long nanos) {
+    this.now += nanos;
+  }
+}
+
+// Examples and tests for the timer wheel
+class ExamplesConcentrationTimers {
+  static final long MS = 1000000L;
+
+  void testNeverEarly(Tester t) {
+    ConcentrationManualClock clock = new ConcentrationManualClock();
+    ConcentrationTimerWheel wheel = new ConcentrationTimerWheel(10 * MS, 3, clock);
+    ArrayList<String> log = new ArrayList<>();
+    wheel.schedule(25 * MS, () -> log.add("b"));
+    wheel.schedule(5 * MS, () -> log.add("a"));
+    wheel.schedule(500 * MS, () -> log.add("c")); // Several turns of an 8-slot wheel
+
+    clock.add(20 * MS);
+    t.checkExpect(wheel.advance(), 1);
+    clock.add(9 * MS);
+    t.checkExpect(wheel.advance(), 0); // b is due at 25 ms, but its tick ends at 30 ms
+    clock.add(1 * MS);
+    t.checkExpect(wheel.advance(), 1);
+    clock.add(460 * MS);
+    t.checkExpect(wheel.advance(), 0);
+    t.checkExpect(wheel.pending, 1);
+    clock.add(10 * MS);
+    t.checkExpect(wheel.advance(), 1);
+    t.checkExpect(log.toString(), "[a, b, c]");
+    t.checkExpect(wheel.pending, 0);
+  }
+
+  void testCancel(Tester t) {
+    ConcentrationManualClock clock = new ConcentrationManualClock();
+    ConcentrationTimerWheel wheel = new ConcentrationTimerWheel(10 * MS, 4, clock);
+    int[] runs = new int[1];
+    ConcentrationTimer a = wheel.schedule(30 * MS, () -> runs[0]++);
+    ConcentrationTimer b = wheel.schedule(30 * MS, () -> runs[0] += 10);
+    t.checkExpect(wheel.cancel(a), true);
+    t.checkExpect(wheel.cancel(a), false);
+    clock.add(30 * MS);
+    t.checkExpect(wheel.advance(), 1);
+    t.checkExpect(runs[0], 10);
+    t.checkExpect(b.isPending(), false);
+    t.checkExpect(wheel.cancel(b), false);
+  }
+
+  void testIdleSkips(Tester t) {
+    // An idle wheel jumps over any number of ticks at once
+    ConcentrationManualClock clock = new ConcentrationManualClock();
+    ConcentrationTimerWheel wheel = new ConcentrationTimerWheel(1 * MS, 4, clock);
+    clock.add(1000000000L * MS);
+    t.checkExpect(wheel.advance(), 0);
+    t.checkExpect(wheel.tick, 1000000000L);
+    int[] runs = new int[1];
+    wheel.schedule(3 * MS, () -> runs[0]++);
+    clock.add(3 * MS);
+    wheel.advance();
+    t.checkExpect(runs[0], 1);
+  }
+
+  void testMillionsOfTimers(Tester t) {
+    ConcentrationManualClock clock = new ConcentrationManualClock();
+    ConcentrationTimerWheel wheel = new ConcentrationTimerWheel(1 * MS, 12, clock);
+    SplittableRandom rand = new SplittableRandom(8);
+    long[] late = new long[1];
+    int[] runs = new int[1];
+    ConcentrationTimer[] timers = new ConcentrationTimer[1000000];
+    for (int i = 0; i < timers.length; i++) {
+      long delay = rand.nextLong(20000 * MS);
+      long deadline = clock.now + delay;
+      timers[i] = wheel.schedule(delay, () -> {
+        runs[0]++;
+        late[0] = Math.max(late[0], clock.now - deadline);
+        t.checkExpect(clock.now >= deadline, true);
+      });
+    }
+    for (int i = 0; i < timers.length; i += 2) {
+      wheel.cancel(timers[i]);
+    }
+    t.checkExpect(wheel.pending, 500000);
+    while (wheel.pending > 0) {
+      clock.add(1 * MS);
+      wheel.advance();
+    }
+    t.checkExpect(runs[0], 500000);
+    t.checkNumRange(late[0], 0L, 1 * MS);
+  }
+
+  void testDriverThread(Tester t) throws InterruptedException {
+    try (ConcentrationTimerWheel wheel = new ConcentrationTimerWheel(1 * MS, 6, System::nanoTime)) {
+      wheel.startDriver();
+      java.util.concurrent.CountDownLatch done = new java.util.concurrent.CountDownLatch(3);
+      for (int i = 0; i < 3; i++) {
+        wheel.schedule(5 * MS, done::countDown);
+      }
+      t.checkExpect(done.await(5, java.util.concurrent.TimeUnit.SECONDS), true);
+    }
+  }
+}
@@ -0,0 +1,266 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import tester.*;
+
+// Replays a stream of player moves against a computer opponent without the
+// interactive prompts. Like the interactive game, a line is a move only if it
+// is exactly "r", "p" or "s" in either case; any other line, such as "paper",
+// a "y" or "n" answer or an empty line, is counted as invalid. Lines end with
+// "\n", "\r\n" or "\r", and a last line without an ending still counts.
+//
+// The input is read through a channel in large blocks. Each byte is classified
+// through a lookup table and fed to a small state machine for the current line,
+// and each round is resolved by indexing a payoff table with
+// player * 3 + computer, adding to counts of every pair of moves.
+class RpsBatch {
+  static final int TIE = 0; // results of a round, for the player
+  static final int WIN = 1;
+  static final int LOSS = 2;
+
+  // RESULT[player * 3 + computer]
+  static final int[] RESULT = {TIE, LOSS, WIN, WIN, TIE, LOSS, LOSS, WIN, TIE};
+
+  static final byte OTHER = -1; // byte classes besides the moves 0, 1 and 2
+  static final byte LF = -2;
+  static final byte CR = -3;
+  static final byte[] MOVE = new byte[256];
+
+  static final int EMPTY = -1; // states of a line besides a lone move 0, 1 or 2
+  static final int NOT_A_MOVE = -2;
+
+  static {
+    java.util.Arrays.fill(MOVE, OTHER);
+    MOVE['\n'] = LF;
+    MOVE['\r'] = CR;
+    MOVE['r'] = 0;
+    MOVE['R'] = 0;
+    MOVE['p'] = 1;
+    MOVE['P'] = 1;
+    MOVE['s'] = 2;
+    MOVE['S'] = 2;
+  }
+
+  final IRpsOpponent opponent;
+  final long[] rounds; // rounds[player * 3 + computer]
+  long invalid; // Lines that were not a move
+
+  // Constructor
+  RpsBatch(IRpsOpponent opponent) {
+    this.opponent = opponent;
+    this.rounds = new long[9];
+  }
+
+  // The opponent with the given name, "random" or "adaptive"
+  static IRpsOpponent opponent(String name, long seed) {
+    if (name.equals("random")) {
+      return new RpsRandomOpponent(new Random(seed));
+    } else if (name.equals("adaptive")) {
+      return new RpsContextTreeOpponent(seed);
+    }
+    throw new IllegalArgumentException("Unknown opponent: " + name);
+  }
+
+  // EFFECT: plays every move in the channel, until it ends
+  void play(ReadableByteChannel in) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+    byte[] bytes = buffer.array();
+    int line = EMPTY; // The current line: EMPTY, one move so far, or NOT_A_MOVE
+    boolean afterCr = false; // Was the last byte a "\r", so a "\n" ends nothing?
+    for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+      for (int i = 0; i < n; i++) {
+        int c = MOVE[bytes[i] & 0xFF];
+        if (c >= 0) {
+          line = line == EMPTY ? c : NOT_A_MOVE;
+        } else if (c == OTHER) {
+          line = NOT_A_MOVE;
+        } else if (c == CR || !afterCr) {
+          this.endLine(line);
+          line = EMPTY;
+        }
+        afterCr = c == CR;
+      }
+      buffer.clear();
+    }
+    if (line != EMPTY) {
+      this.endLine(line);
+    }
+  }
+
+  // EFFECT: plays a round if the line was a lone move, or counts it as invalid
+  void endLine(int line) {
+    if (line >= 0) {
+      int computer = this.opponent.move();
+      this.opponent.observe(line);
+      this.rounds[line * 3 + computer]++;
+    } else {
+      this.invalid++;
+    }
+  }
+
+  // The number of rounds with the given result for the player
+  long count(int result) {
+    long count = 0;
+    for (int i = 0; i < 9; i++) {
+      if (RESULT[i] == result) {
+        count += this.rounds[i];
+      }
+    }
+    return count;
+  }
+
+  // The number of rounds played
+  long total() {
+    long total = 0;
+    for (long count : this.rounds) {
+      total += count;
+    }
+    return total;
+  }
+
+  // EFFECT: writes the totals, and how often each pair of moves came up
+  void report(PrintStream out) {
+    long total = Math.max(1, this.total());
+    out.printf("rounds %d, player wins %d (%.2f%%), losses %d (%.2f%%), ties %d (%.2f%%), invalid lines %d%n",
+        this.total(), this.count(WIN), 100.0 * this.count(WIN) / total,
+        this.count(LOSS), 100.0 * this.count(LOSS) / total,
+        this.count(TIE), 100.0 * this.count(TIE) / total, this.invalid);
+    String names = "rps";
+    for (int player = 0; player < 3; player++) {
+      StringBuilder line = new StringBuilder("player " + names.charAt(player) + ":");
+      for (int computer = 0; computer < 3; computer++) {
+        line.append(" vs ").append(names.charAt(computer)).append(' ').append(this.rounds[player * 3 + computer]);
+      }
+      out.println(line);
+    }
+  }
+
+  // Replays the moves in a file, or standard input for "-", and writes the
+  // totals to standard output or a file:
+  // java RockPaperScissors batch file|- [random|adaptive] [output]
+  static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.out.println("usage: RockPaperScissors batch file|- [random|adaptive] [output]");
+      return;
+    }
+    RpsBatch batch = new RpsBatch(opponent(args.length > 2 ? args[2] : "random", System.nanoTime()));
+    long start = System.nanoTime();
+    try (ReadableByteChannel in = args[1].equals("-") ? Channels.newChannel(System.in)
+        : FileChannel.open(Paths.get(args[1]), StandardOpenOption.READ)) {
+      batch.play(in);
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    if (args.length > 3) {
+      try (PrintStream out = new PrintStream(Files.newOutputStream(Paths.get(args[3])))) {
+        batch.report(out);
+      }
+    } else {
+      batch.report(System.out);
+    }
+    System.out.printf("%.0f rounds per minute%n", batch.total() / seconds * 60);
+  }
+}
+
+// Examples and tests for batch replays
+class ExamplesRpsBatch {
+  // An opponent that always plays the same move
+  IRpsOpponent always(int move) {
+    return new IRpsOpponent() {
+      public int move() {
+        return move;
+      }
+
+      public void observe(int player) {
+      }
+    };
+  }
+
+  void testPayoffTable(Tester t) {
+    // Move (m + 1) % 3 beats move m
+    for (int player = 0; player < 3; player++) {
+      t.checkExpect(RpsBatch.RESULT[player * 3 + player], RpsBatch.TIE);
+      t.checkExpect(RpsBatch.RESULT[((player + 1) % 3) * 3 + player], RpsBatch.WIN);
+      t.checkExpect(RpsBatch.RESULT[player * 3 + (player + 1) % 3], RpsBatch.LOSS);
+    }
+  }
+
+  // Plays the text against an opponent that always plays rock
+  RpsBatch replay(String text) throws IOException {
+    RpsBatch batch = new RpsBatch(this.always(0));
+    batch.play(Channels.newChannel(new java.io.ByteArrayInputStream(text.getBytes())));
+    return batch;
+  }
+
+  void testStream(Tester t) throws IOException {
+    // A logged session: moves, answers and a mistyped move
+    RpsBatch batch = this.replay("r\ny\nP\ny\nx\ns\ny\nS\nn\n");
+    t.checkExpect(batch.total(), 4L);
+    t.checkExpect(batch.count(RpsBatch.WIN), 1L);
+    t.checkExpect(batch.count(RpsBatch.LOSS), 2L);
+    t.checkExpect(batch.count(RpsBatch.TIE), 1L);
+    t.checkExpect(batch.invalid, 5L);
+    t.checkExpect(batch.rounds[2 * 3 + 0], 2L);
+  }
+
+  void testLines(Tester t) throws IOException {
+    // Only a line that is exactly one move plays, as in the interactive game
+    RpsBatch words = this.replay("paper\nscissors\nrock\nrr\n r\np \nr, p\n\np\n");
+    t.checkExpect(words.total(), 1L);
+    t.checkExpect(words.rounds[1 * 3 + 0], 1L);
+    t.checkExpect(words.invalid, 8L);
+
+    // Every line ending, and a last line without one
+    RpsBatch endings = this.replay("r\r\np\rs\n\r\nS");
+    t.checkExpect(endings.total(), 4L);
+    t.checkExpect(endings.rounds[2 * 3 + 0], 2L);
+    t.checkExpect(endings.invalid, 1L);
+    t.checkExpect(this.replay("").total(), 0L);
+    t.checkExpect(this.replay("\n").invalid, 1L);
+  }
+
+  void testFileAndReport(Tester t) throws IOException {
+    // Blocks bigger than the buffer, with "\r\n" endings split across blocks,
+    // from a file, against the adaptive bot
+    Path file = Files.createTempFile("rps", ".txt");
+    int lines = 1 << 20;
+    byte[] moves = new byte[3 * lines];
+    for (int i = 0; i < lines; i++) {
+      moves[3 * i] = (byte) "rps".charAt(i % 3);
+      moves[3 * i + 1] = '\r';
+      moves[3 * i + 2] = '\n';
+    }
+    Files.write(file, moves);
+    RpsBatch batch = new RpsBatch(RpsBatch.opponent("adaptive", 5L));
+    try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+      batch.play(in);
+    }
+    Files.delete(file);
+    t.checkExpect(batch.total(), (long) lines);
+    t.checkExpect(batch.invalid, 0L);
+    t.checkNumRange(batch.count(RpsBatch.LOSS), lines - 100L, lines + 1L);
+
+    java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+    RpsBatch small = new RpsBatch(this.always(1));
+    small.play(Channels.newChannel(new java.io.ByteArrayInputStream("r\nr\ns\n".getBytes())));
+    small.report(new PrintStream(bytes));
+    t.checkExpect(bytes.toString().replace("\r", ""),
+        "rounds 3, player wins 1 (33.33%), losses 2 (66.67%), ties 0 (0.00%), invalid lines 0\n"
+        + "player r: vs r 0 vs p 2 vs s 0\n"
+        + "player p: vs r 0 vs p 0 vs s 0\n"
+        + "player s: vs r 0 vs p 1 vs s 0\n");
+    t.checkException(new IllegalArgumentException("Unknown opponent: rock"), this, "opponent", "rock", 1L);
+  }
+
+  // Looks up an opponent, for checkException
+  IRpsOpponent opponent(String name, long seed) {
+    return RpsBatch.opponent(name, seed);
+  }
+}
@@ -0,0 +1,236 @@
+import java.util.Random;
+import java.util.SplittableRandom;
+import tester.*;
+
+// A computer player of Rock-Paper-Scissors. Moves are 0 (rock), 1 (paper) and
+// 2 (scissors); move (m + 1) % 3 beats move m.
+interface IRpsOpponent {
+  // The computer's move for the next round
+  int move();
+
+  // EFFECT: learns the player's move in the round just played
+  void observe(int player);
+}
+
+// Plays uniformly at random, which nobody can exploit or be exploited by
+class RpsRandomOpponent implements IRpsOpponent {
+  final Random rand;
+
+  RpsRandomOpponent(Random rand) {
+    this.rand = rand;
+  }
+
+  public int move() {
+    return this.rand.nextInt(3);
+  }
+
+  public void observe(int player) {
+  }
+}
+
+// Predicts the player's next move from a context tree over the history of
+// rounds, and plays the move that does best against the prediction.
+//
+// Each round is one of 9 symbols (player's move * 3 + computer's move). Node d
+// of the path for a round stands for the last d rounds, most recent first, and
+// counts the moves the player made after that context. Every context from the
+// empty one to depth rounds back gives a prediction; longer contexts that have
+// been seen often enough weigh more, so the tree adapts to habits of any length
+// such as cycles or "stay after a win, switch after a loss".
+//
+// The tree lives in primitive arrays of a fixed number of nodes: once they are
+// used up, new contexts are not added. Counts are halved when a context has
+// seen enough moves, so old habits fade and nothing overflows over very long
+// sessions. A round costs O(depth) for the prediction and the update.
+class RpsContextTreeOpponent implements IRpsOpponent {
+  static final int SYMBOLS = 9;
+  static final int HALVE_AT = 1 << 10; // Moves a context counts before halving
+
+  final int depth; // Longest context, in rounds
+  final int[] child; // child[node * 9 + symbol], or 0 for none (the root is 0)
+  final int[] counts; // counts[node * 3 + move]: moves the player made after the context
+  final int[] totals; // Moves counted at each node
+  int nodes; // Nodes used
+  final int[] history; // The last depth symbols, history[rounds % depth] the oldest
+  long rounds; // Rounds played
+  final int[] path; // Nodes of the contexts of the coming round, root first
+  int pathLength;
+  final double[] odds; // The predicted chances of the player's next move
+  final SplittableRandom rand; // Breaks ties
+  int last; // The move played this round
+
+  // Constructor for contexts of up to depth rounds, in at most capacity nodes
+  RpsContextTreeOpponent(int depth, int capacity, long seed) {
+    if (depth < 1 || capacity < 1) {
+      throw new IllegalArgumentException("The tree needs a depth and room for its root.");
+    }
+    this.depth = depth;
+    this.child = new int[capacity * SYMBOLS];
+    this.counts = new int[capacity * 3];
+    this.totals = new int[capacity];
+    this.nodes = 1;
+    this.history = new int[depth];
+    this.path = new int[depth + 1];
+    this.odds = new double[3];
+    this.rand = new SplittableRandom(seed);
+  }
+
+  // Constructor for contexts of up to 6 rounds in 2^18 nodes
+  RpsContextTreeOpponent(long seed) {
+    this(6, 1 << 18, seed);
+  }
+
+  // The symbol of the round d rounds back, 1 being the last one
+  int symbol(int d) {
+    return this.history[(int) ((this.rounds - d) % this.depth)];
+  }
+
+  // EFFECT: finds the nodes of the contexts of the coming round, as far as the
+  // tree goes and the history reaches
+  void findPath() {
+    int node = 0;
+    this.path[0] = 0;
+    this.pathLength = 1;
+    for (int d = 1; d <= this.depth && d <= this.rounds; d++) {
+      node = this.child[node * SYMBOLS + this.symbol(d)];
+      if (node == 0) {
+        return;
+      }
+      this.path[this.pathLength++] = node;
+    }
+  }
+
+  // The predicted chances of each move, weighed over the contexts, into odds
+  void predict(double[] odds) {
+    odds[0] = 1;
+    odds[1] = 1;
+    odds[2] = 1;
+    double sum = 3;
+    for (int i = 0; i < this.pathLength; i++) {
+      int node = this.path[i];
+      int total = this.totals[node];
+      if (total == 0) {
+        continue;
+      }
+      // A context weighs more the longer it is and the more it has seen
+      double weight = (i + 1) * (double) total / (total + 2) / total;
+      for (int m = 0; m < 3; m++) {
+        odds[m] += weight * this.counts[node * 3 + m];
+      }
+      sum += weight * total;
+    }
+    for (int m = 0; m < 3; m++) {
+      odds[m] /= sum;
+    }
+  }
+
+  public int move() {
+    this.findPath();
+    double[] odds = this.odds;
+    this.predict(odds);
+    // Move c wins against (c + 2) % 3 and loses to (c + 1) % 3
+    int best = this.rand.nextInt(3);
+    double bestValue = odds[(best + 2) % 3] - odds[(best + 1) % 3];
+    for (int c = 0; c < 3; c++) {
+      double value = odds[(c + 2) % 3] - odds[(c + 1) % 3];
+      if (value > bestValue + 1e-12) {
+        best = c;
+        bestValue = value;
+      }
+    }
+    this.last = best;
+    return best;
+  }
+
+  public void observe(int player) {
+    // Count the move in every context of the round, growing the path one node
+    // deeper while there is room
+    int length = this.pathLength;
+    if (length <= this.depth && length <= this.rounds && this.nodes < this.totals.length) {
+      int slot = this.path[length - 1] * SYMBOLS + this.symbol(length);
+      this.child[slot] = this.nodes++;
+      this.path[length++] = this.child[slot];
+    }
+    for (int i = 0; i < length; i++) {
+      int node = this.path[i];
+      this.counts[node * 3 + player]++;
+      if (++this.totals[node] >= HALVE_AT) {
+        this.totals[node] = 0;
+        for (int m = 0; m < 3; m++) {
+          this.counts[node * 3 + m] >>= 1;
+          this.totals[node] += this.counts[node * 3 + m];
+        }
+      }
+    }
+    this.history[(int) (this.rounds % this.depth)] = player * 3 + this.last;
+    this.rounds++;
+  }
+}
+
+// Examples and tests for the opponents
+class ExamplesRpsOpponents {
+  // Plays rounds of the player's moves against the opponent. Returns the
+  // computer's wins less its losses over the last half of them.
+  int play(IRpsOpponent opponent, int[] moves) {
+    int margin = 0;
+    for (int i = 0; i < moves.length; i++) {
+      int computer = opponent.move();
+      opponent.observe(moves[i]);
+      if (i >= moves.length / 2) {
+        margin += computer == (moves[i] + 1) % 3 ? 1 : computer == (moves[i] + 2) % 3 ? -1 : 0;
+      }
+    }
+    return margin;
+  }
+
+  void testCycles(Tester t) {
+    // r, p, s, r, p, s, ...
+    int[] moves = new int[3000];
+    for (int i = 0; i < moves.length; i++) {
+      moves[i] = i % 3;
+    }
+    t.checkNumRange(this.play(new RpsContextTreeOpponent(1L), moves), 1400, 1501);
+    // r, r, p, s, s, p, ... needs two rounds of context
+    int[] cycle = {0, 0, 1, 2, 2, 1};
+    for (int i = 0; i < moves.length; i++) {
+      moves[i] = cycle[i % cycle.length];
+    }
+    t.checkNumRange(this.play(new RpsContextTreeOpponent(2L), moves), 1400, 1501);
+  }
+
+  void testReactions(Tester t) {
+    // Stay after a win, play what would have beaten the computer otherwise
+    RpsContextTreeOpponent bot = new RpsContextTreeOpponent(3L);
+    SplittableRandom rand = new SplittableRandom(3);
+    int player = rand.nextInt(3);
+    int margin = 0;
+    for (int i = 0; i < 4000; i++) {
+      int computer = bot.move();
+      bot.observe(player);
+      boolean won = player == (computer + 1) % 3;
+      margin += computer == (player + 1) % 3 ? 1 : won ? -1 : 0;
+      player = won ? player : (computer + 1) % 3;
+    }
+    t.checkNumRange(margin, 3000, 4001);
+  }
+
+  void testRandomPlayers(Tester t) {
+    // Nothing to exploit: about as many wins as losses, in bounded memory
+    RpsContextTreeOpponent bot = new RpsContextTreeOpponent(6, 1 << 12, 4L);
+    SplittableRandom rand = new SplittableRandom(4);
+    int[] moves = new int[400000];
+    for (int i = 0; i < moves.length; i++) {
+      moves[i] = rand.nextInt(3);
+    }
+    t.checkNumRange(this.play(bot, moves), -2000, 2000);
+    t.checkExpect(bot.nodes, 1 << 12);
+    for (int node = 0; node < bot.nodes; node++) {
+      t.checkNumRange(bot.totals[node], 0, RpsContextTreeOpponent.HALVE_AT);
+    }
+  }
+
+  void testConstructor(Tester t) {
+    t.checkConstructorException(new IllegalArgumentException("The tree needs a depth and room for its root."),
+        "RpsContextTreeOpponent", 0, 16, 1L);
+  }
+}
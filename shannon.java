@@ -0,0 +1,479 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import tester.*;
+
+// Anything that can say who owns each node of a Shannon game graph
+interface IShannonOwners {
+  // The player who owns the node, or EMPTY
+  int owner(int node);
+}
+
+// The board of a connection game as a graph in compressed sparse row form: the
+// neighbors of node v are targets[offsets[v]] up to targets[offsets[v + 1]].
+// Each player wins by joining one of their start nodes to one of their finish
+// nodes through nodes they own. Nodes can start out owned, or BLOCKED so that
+// nobody can ever claim them.
+class ShannonGraph {
+  static final int EMPTY = BridgItBoard.EMPTY;
+  static final int PINK = BridgItBoard.PINK; // The first player
+  static final int MAGENTA = BridgItBoard.MAGENTA; // The second player
+  static final int BLOCKED = 3; // A node nobody can claim
+
+  final int nodes; // Number of nodes
+  final int[] offsets; // Where each node's neighbors start in targets; nodes + 1 entries
+  final int[] targets; // Neighbors of every node, node by node
+  final byte[] owners; // The owner of every node before any move
+  final byte[] ends; // Bit 2 * (player - 1) marks a start node, the next bit a finish node
+
+  private static final ConcurrentHashMap<Integer, ShannonGraph> BRIDGIT = new ConcurrentHashMap<>();
+
+  // Constructor
+  ShannonGraph(int nodes, int[] offsets, int[] targets, byte[] owners, byte[] ends) {
+    if (offsets.length != nodes + 1 || owners.length != nodes || ends.length != nodes) {
+      throw new IllegalArgumentException("The graph arrays do not match the number of nodes.");
+    }
+    this.nodes = nodes;
+    this.offsets = offsets;
+    this.targets = targets;
+    this.owners = owners;
+    this.ends = ends;
+  }
+
+  // The bit of ends that marks player's start nodes
+  static int startBit(int player) {
+    return 1 << (2 * (player - 1));
+  }
+
+  // The bit of ends that marks player's finish nodes
+  static int finishBit(int player) {
+    return 2 << (2 * (player - 1));
+  }
+
+  // The BridgIt grid: every cell is a node joined to its orthogonal neighbors, the
+  // colored dots start out owned, and white cells on the border are blocked.
+  // The graph is shared by every BridgIt board of the same size.
+  static ShannonGraph bridgIt(int n) {
+    return BRIDGIT.computeIfAbsent(n, ShannonGraph::buildBridgIt);
+  }
+
+  // Builds the BridgIt grid graph of size n
+  private static ShannonGraph buildBridgIt(int n) {
+    BridgItBoard board = new BridgItBoard(n);
+    ShannonGraphBuilder builder = new ShannonGraphBuilder(n * n);
+    for (int row = 0; row < n; row++) {
+      for (int col = 0; col < n; col++) {
+        int cell = board.index(row, col);
+        if (col + 1 < n) {
+          builder.edge(cell, cell + 1);
+        }
+        if (row + 1 < n) {
+          builder.edge(cell, cell + n);
+        }
+        if (board.owner(cell) != EMPTY) {
+          builder.owner(cell, board.owner(cell));
+        } else if (!board.isPlayable(cell)) {
+          builder.owner(cell, BLOCKED);
+        }
+        if (col == 0) {
+          builder.start(PINK, cell);
+        } else if (col == n - 1) {
+          builder.finish(PINK, cell);
+        }
+        if (row == 0) {
+          builder.start(MAGENTA, cell);
+        } else if (row == n - 1) {
+          builder.finish(MAGENTA, cell);
+        }
+      }
+    }
+    return builder.build();
+  }
+
+  // The n x n Hex rhombus: every cell touches six others. Pink joins the left
+  // and right sides, Magenta the top and bottom.
+  static ShannonGraph hex(int n) {
+    ShannonGraphBuilder builder = new ShannonGraphBuilder(n * n);
+    for (int row = 0; row < n; row++) {
+      for (int col = 0; col < n; col++) {
+        int cell = row * n + col;
+        if (col + 1 < n) {
+          builder.edge(cell, cell + 1);
+        }
+        if (row + 1 < n) {
+          builder.edge(cell, cell + n);
+        }
+        if (row + 1 < n && col > 0) {
+          builder.edge(cell, cell + n - 1);
+        }
+        if (col == 0) {
+          builder.start(PINK, cell);
+        } else if (col == n - 1) {
+          builder.finish(PINK, cell);
+        }
+        if (row == 0) {
+          builder.start(MAGENTA, cell);
+        } else if (row == n - 1) {
+          builder.finish(MAGENTA, cell);
+        }
+      }
+    }
+    return builder.build();
+  }
+}
+
+// Collects the edges, owners and ends of a custom ShannonGraph
+class ShannonGraphBuilder {
+  final int nodes;
+  int[] from; // First node of each edge added so far
+  int[] to; // Second node of each edge added so far
+  int edges; // Number of edges added so far
+  final byte[] owners;
+  final byte[] ends;
+
+  // Constructor for a graph of the given number of nodes and no edges
+  ShannonGraphBuilder(int nodes) {
+    this.nodes = nodes;
+    this.from = new int[16];
+    this.to = new int[16];
+    this.edges = 0;
+    this.owners = new byte[nodes];
+    this.ends = new byte[nodes];
+  }
+
+  // EFFECT: throws if the node is not in the graph
+  void check(int node) {
+    if (node < 0 || node >= this.nodes) {
+      throw new IllegalArgumentException("No node " + node + " in the graph.");
+    }
+  }
+
+  // EFFECT: adds an undirected edge between a and b
+  ShannonGraphBuilder edge(int a, int b) {
+    this.check(a);
+    this.check(b);
+    if (this.edges == this.from.length) {
+      this.from = Arrays.copyOf(this.from, 2 * this.edges);
+      this.to = Arrays.copyOf(this.to, 2 * this.edges);
+    }
+    this.from[this.edges] = a;
+    this.to[this.edges] = b;
+    this.edges++;
+    return this;
+  }
+
+  // EFFECT: gives the node to owner (a player or BLOCKED) before the game starts
+  ShannonGraphBuilder owner(int node, int owner) {
+    this.check(node);
+    this.owners[node] = (byte) owner;
+    return this;
+  }
+
+  // EFFECT: makes the node one of player's start nodes
+  ShannonGraphBuilder start(int player, int node) {
+    this.check(node);
+    this.ends[node] |= ShannonGraph.startBit(player);
+    return this;
+  }
+
+  // EFFECT: makes the node one of player's finish nodes
+  ShannonGraphBuilder finish(int player, int node) {
+    this.check(node);
+    this.ends[node] |= ShannonGraph.finishBit(player);
+    return this;
+  }
+
+  // The graph, with each node's neighbors stored together
+  ShannonGraph build() {
+    int[] offsets = new int[this.nodes + 1];
+    for (int e = 0; e < this.edges; e++) {
+      offsets[this.from[e] + 1]++;
+      offsets[this.to[e] + 1]++;
+    }
+    for (int v = 0; v < this.nodes; v++) {
+      offsets[v + 1] += offsets[v];
+    }
+    int[] next = Arrays.copyOf(offsets, this.nodes);
+    int[] targets = new int[2 * this.edges];
+    for (int e = 0; e < this.edges; e++) {
+      targets[next[this.from[e]]++] = this.to[e];
+      targets[next[this.to[e]]++] = this.from[e];
+    }
+    return new ShannonGraph(this.nodes, offsets, targets, this.owners.clone(), this.ends.clone());
+  }
+}
+
+// Tracks which nodes are joined, for win detection that can be undone.
+// Union by rank without path compression keeps every tree O(log n) deep, so
+// each union can be logged and rolled back exactly, most recent first.
+// Each player has a virtual start node and finish node after the graph's own.
+class ShannonConnectivity {
+  final ShannonGraph graph;
+  final int[] parent;
+  final byte[] rank;
+  final int[] undoChild; // Root that was attached under another root
+  final boolean[] undoRankUp; // Did the surviving root's rank go up?
+  int undoCount;
+  final int[] movesUnions; // Number of logged unions made by each claim
+  int moveCount;
+
+  // Constructor for the connections already in the given owners
+  ShannonConnectivity(ShannonGraph graph, IShannonOwners owners) {
+    this.graph = graph;
+    int size = graph.nodes + 4;
+    this.parent = new int[size];
+    this.rank = new byte[size];
+    for (int i = 0; i < size; i++) {
+      this.parent[i] = i;
+    }
+    // Every union joins two sets, so there can never be more than size - 1
+    this.undoChild = new int[size];
+    this.undoRankUp = new boolean[size];
+    this.movesUnions = new int[graph.nodes];
+
+    for (int node = 0; node < graph.nodes; node++) {
+      int owner = owners.owner(node);
+      if (owner == ShannonGraph.PINK || owner == ShannonGraph.MAGENTA) {
+        this.join(owners, node);
+      }
+    }
+    // The starting connections are not undoable
+    this.undoCount = 0;
+  }
+
+  // The virtual node joined to player's start nodes
+  int start(int player) {
+    return this.graph.nodes + 2 * (player - 1);
+  }
+
+  // The virtual node joined to player's finish nodes
+  int finish(int player) {
+    return this.start(player) + 1;
+  }
+
+  // EFFECT: joins a node the owners say was just claimed to its owner's
+  // neighbors and ends, logging the unions so undo can remove them
+  void claim(IShannonOwners owners, int node) {
+    this.movesUnions[this.moveCount] = this.join(owners, node);
+    this.moveCount++;
+  }
+
+  // EFFECT: rolls back the most recent claim
+  void undo() {
+    this.moveCount--;
+    for (int i = this.movesUnions[this.moveCount]; i > 0; i--) {
+      this.undoCount--;
+      int child = this.undoChild[this.undoCount];
+      int root = this.parent[child];
+      this.parent[child] = child;
+      if (this.undoRankUp[this.undoCount]) {
+        this.rank[root]--;
+      }
+    }
+  }
+
+  // EFFECT: unions the node with its owner's neighbors and ends
+  // Returns the number of unions made
+  int join(IShannonOwners owners, int node) {
+    int owner = owners.owner(node);
+    int unions = 0;
+    for (int i = this.graph.offsets[node]; i < this.graph.offsets[node + 1]; i++) {
+      int next = this.graph.targets[i];
+      if (owners.owner(next) == owner) {
+        unions += this.union(node, next);
+      }
+    }
+    if ((this.graph.ends[node] & ShannonGraph.startBit(owner)) != 0) {
+      unions += this.union(node, this.start(owner));
+    }
+    if ((this.graph.ends[node] & ShannonGraph.finishBit(owner)) != 0) {
+      unions += this.union(node, this.finish(owner));
+    }
+    return unions;
+  }
+
+  // EFFECT: joins the sets of a and b, logging the change
+  // Returns 1 if they were separate, 0 if they were already joined
+  int union(int a, int b) {
+    int ra = this.find(a);
+    int rb = this.find(b);
+    if (ra == rb) {
+      return 0;
+    }
+    if (this.rank[ra] > this.rank[rb]) {
+      int swap = ra;
+      ra = rb;
+      rb = swap;
+    }
+    boolean rankUp = this.rank[ra] == this.rank[rb];
+    this.parent[ra] = rb;
+    if (rankUp) {
+      this.rank[rb]++;
+    }
+    this.undoChild[this.undoCount] = ra;
+    this.undoRankUp[this.undoCount] = rankUp;
+    this.undoCount++;
+    return 1;
+  }
+
+  // The root of the set containing the given node
+  int find(int node) {
+    while (this.parent[node] != node) {
+      node = this.parent[node];
+    }
+    return node;
+  }
+
+  // Has player joined their ends?
+  boolean hasConnection(int player) {
+    return this.find(this.start(player)) == this.find(this.finish(player));
+  }
+
+  // The player who has joined their ends, or EMPTY
+  int winner() {
+    if (this.hasConnection(ShannonGraph.PINK)) {
+      return ShannonGraph.PINK;
+    }
+    if (this.hasConnection(ShannonGraph.MAGENTA)) {
+      return ShannonGraph.MAGENTA;
+    }
+    return ShannonGraph.EMPTY;
+  }
+}
+
+// A connection game on any ShannonGraph, with every rule on primitive arrays.
+// Pink moves first and the players alternate.
+class ShannonGame implements IShannonOwners {
+  final ShannonGraph graph;
+  final byte[] owners; // The owner of every node
+  final ShannonConnectivity connectivity;
+  final int[] moves; // Nodes claimed so far, in order
+  int moveCount;
+
+  // Constructor for the starting position of the graph
+  ShannonGame(ShannonGraph graph) {
+    this.graph = graph;
+    this.owners = graph.owners.clone();
+    this.connectivity = new ShannonConnectivity(graph, this);
+    this.moves = new int[graph.nodes];
+    this.moveCount = 0;
+  }
+
+  public int owner(int node) {
+    return this.owners[node];
+  }
+
+  // The player to move
+  int toMove() {
+    return this.moveCount % 2 == 0 ? ShannonGraph.PINK : ShannonGraph.MAGENTA;
+  }
+
+  // EFFECT: writes the nodes that can still be claimed into moves, in order
+  // Returns the number of nodes written
+  int legalMoves(int[] moves) {
+    int count = 0;
+    for (int node = 0; node < this.graph.nodes; node++) {
+      if (this.owners[node] == ShannonGraph.EMPTY) {
+        moves[count] = node;
+        count++;
+      }
+    }
+    return count;
+  }
+
+  // EFFECT: claims the node for the player to move
+  void play(int node) {
+    if (this.owners[node] != ShannonGraph.EMPTY) {
+      throw new IllegalArgumentException("Node " + node + " cannot be claimed.");
+    }
+    this.owners[node] = (byte) this.toMove();
+    this.connectivity.claim(this, node);
+    this.moves[this.moveCount] = node;
+    this.moveCount++;
+  }
+
+  // EFFECT: takes back the last move
+  void undo() {
+    this.moveCount--;
+    this.owners[this.moves[this.moveCount]] = ShannonGraph.EMPTY;
+    this.connectivity.undo();
+  }
+
+  // The player who has joined their ends, or EMPTY
+  int winner() {
+    return this.connectivity.winner();
+  }
+}
+
+// Examples and tests for the Shannon game engine
+class ExamplesShannon {
+  void testBuilder(Tester t) {
+    // A path 0 - 1 - 2 where Pink must join 0 to 2
+    ShannonGraph path = new ShannonGraphBuilder(3).edge(0, 1).edge(1, 2)
+        .start(ShannonGraph.PINK, 0).finish(ShannonGraph.PINK, 2)
+        .owner(0, ShannonGraph.PINK).owner(2, ShannonGraph.PINK).build();
+    t.checkExpect(path.offsets, new int[] { 0, 1, 3, 4 });
+    t.checkExpect(path.targets, new int[] { 1, 0, 2, 1 });
+
+    ShannonGame game = new ShannonGame(path);
+    t.checkExpect(game.legalMoves(new int[3]), 1);
+    game.play(1);
+    t.checkExpect(game.winner(), ShannonGraph.PINK);
+    game.undo();
+    t.checkExpect(game.winner(), ShannonGraph.EMPTY);
+    t.checkException(new IllegalArgumentException("Node 0 cannot be claimed."), game, "play", 0);
+    t.checkException(new IllegalArgumentException("No node 3 in the graph."),
+        new ShannonGraphBuilder(3), "edge", 0, 3);
+  }
+
+  void testBridgItMatchesBoard(Tester t) {
+    SplittableRandom rand = new SplittableRandom(13);
+    for (int n = 3; n <= 11; n += 2) {
+      ShannonGame game = new ShannonGame(ShannonGraph.bridgIt(n));
+      BridgItBoard board = new BridgItBoard(n);
+      int[] moves = new int[n * n];
+      t.checkExpect(game.legalMoves(moves), board.emptyCount());
+      while (board.winner() == BridgItBoard.EMPTY) {
+        int count = game.legalMoves(moves);
+        int cell = moves[rand.nextInt(count)];
+        board.setOwner(cell, game.toMove());
+        game.play(cell);
+        t.checkExpect(game.winner(), board.winner());
+      }
+    }
+  }
+
+  void testHexHasOneWinner(Tester t) {
+    // A full Hex board always has exactly one winner
+    SplittableRandom rand = new SplittableRandom(17);
+    ShannonGame game = new ShannonGame(ShannonGraph.hex(7));
+    int[] moves = new int[49];
+    for (int round = 0; round < 20; round++) {
+      while (game.legalMoves(moves) > 0) {
+        int count = game.legalMoves(moves);
+        game.play(moves[rand.nextInt(count)]);
+      }
+      int winner = game.winner();
+      t.checkExpect(winner != ShannonGraph.EMPTY, true);
+      t.checkExpect(game.connectivity.hasConnection(BridgItBoard.other(winner)), false);
+      while (game.moveCount > 0) {
+        game.undo();
+      }
+      t.checkExpect(game.winner(), ShannonGraph.EMPTY);
+    }
+  }
+
+  void testHexDiagonal(Tester t) {
+    // Magenta's cells down the anti-diagonal touch, so they join top and bottom
+    ShannonGraph hex = ShannonGraph.hex(3);
+    ShannonGame game = new ShannonGame(hex);
+    game.play(0); // Pink
+    game.play(2); // Magenta
+    game.play(1); // Pink
+    game.play(4); // Magenta
+    game.play(3); // Pink
+    t.checkExpect(game.winner(), ShannonGraph.EMPTY);
+    game.play(6); // Magenta
+    t.checkExpect(game.winner(), ShannonGraph.MAGENTA);
+  }
+}